@@ -9,6 +9,8 @@ import net.md_5.bungee.api.plugin.Command;
 /**
  * Network backup command for BungeeCord proxy
  * Usage: /networkbackup [server|all] [world|full]
+ *        /networkbackup cancel [session|server]
+ *        /networkbackup status [server]
  */
 public class NetworkBackupCommand extends Command {
     
@@ -60,6 +62,20 @@ public class NetworkBackupCommand extends Command {
                 coordinator.startNetworkBackup(sender, false, backupType);
                 break;
             
+            case "cancel":
+                if (args.length < 2) {
+                    coordinator.cancelNetworkBackup(sender, null);
+                } else if (plugin.getProxy().getServerInfo(args[1]) != null) {
+                    coordinator.cancelServerBackup(sender, args[1]);
+                } else {
+                    coordinator.cancelNetworkBackup(sender, args[1]);
+                }
+                break;
+            
+            case "status":
+                coordinator.requestStatus(sender, args.length >= 2 ? args[1] : null);
+                break;
+            
             case "help":
                 sendHelp(sender);
                 break;
@@ -81,6 +97,9 @@ public class NetworkBackupCommand extends Command {
         sender.sendMessage(ChatColor.YELLOW + "/networkbackup <server>" + ChatColor.GRAY + " - Backup specific server");
         sender.sendMessage(ChatColor.YELLOW + "/networkbackup <target> world" + ChatColor.GRAY + " - World backup only");
         sender.sendMessage(ChatColor.YELLOW + "/networkbackup <target> full" + ChatColor.GRAY + " - Full server backup");
+        sender.sendMessage(ChatColor.YELLOW + "/networkbackup cancel [session]" + ChatColor.GRAY + " - Cancel network backups");
+        sender.sendMessage(ChatColor.YELLOW + "/networkbackup cancel <server>" + ChatColor.GRAY + " - Cancel any backup on a server");
+        sender.sendMessage(ChatColor.YELLOW + "/networkbackup status [server]" + ChatColor.GRAY + " - Show backup progress");
         sender.sendMessage("");
         sender.sendMessage(ChatColor.GRAY + "Examples:");
         sender.sendMessage(ChatColor.WHITE + "  /networkbackup" + ChatColor.GRAY + " - Backup all servers one by one");
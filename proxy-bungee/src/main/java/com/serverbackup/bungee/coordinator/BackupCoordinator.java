@@ -8,10 +8,12 @@ import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.connection.Server;
 import net.md_5.bungee.api.event.PluginMessageEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
 
+import java.io.ByteArrayInputStream;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -22,6 +24,8 @@ public class BackupCoordinator implements Listener {
     
     private final ServerBackupBungee plugin;
     private final Map<String, BackupSession> activeSessions;
+    /** Who asked for a status or a single-server cancel, by request ID */
+    private final Map<String, CommandSender> pendingRequests;
     private final ScheduledExecutorService scheduler;
     
     private static final String CHANNEL_REQUEST = "serverbackup:request";
@@ -30,6 +34,7 @@ public class BackupCoordinator implements Listener {
     public BackupCoordinator(ServerBackupBungee plugin) {
         this.plugin = plugin;
         this.activeSessions = new ConcurrentHashMap<>();
+        this.pendingRequests = new ConcurrentHashMap<>();
         this.scheduler = Executors.newScheduledThreadPool(2);
     }
     
@@ -111,6 +116,7 @@ public class BackupCoordinator implements Listener {
         sender.sendMessage(ChatColor.YELLOW + "Starting backup for server: " + ChatColor.WHITE + serverName);
         sender.sendMessage(ChatColor.GRAY + "Session: " + sessionId);
         
+        session.markRequested(serverName);
         sendBackupRequest(server, sessionId, backupType);
         
         // Timeout after 5 minutes
@@ -126,6 +132,9 @@ public class BackupCoordinator implements Listener {
      * Execute backups one server at a time
      */
     private void executeSequentialBackup(BackupSession session, List<String> servers, String backupType, int index) {
+        if (session.isCancelled()) {
+            return; // The servers not asked yet were recorded as cancelled
+        }
         if (index >= servers.size()) {
             session.complete();
             activeSessions.remove(session.getSessionId());
@@ -141,6 +150,9 @@ public class BackupCoordinator implements Listener {
             return;
         }
         
+        if (!session.markRequested(serverName)) {
+            return;
+        }
         session.getSender().sendMessage(ChatColor.AQUA + "→ " + serverName + ChatColor.GRAY + " - Starting...");
         sendBackupRequest(server, session.getSessionId(), backupType);
         
@@ -159,6 +171,7 @@ public class BackupCoordinator implements Listener {
         for (String serverName : servers) {
             ServerInfo server = plugin.getProxy().getServerInfo(serverName);
             if (server != null) {
+                session.markRequested(serverName);
                 session.getSender().sendMessage(ChatColor.AQUA + "→ " + serverName + ChatColor.GRAY + " - Starting...");
                 sendBackupRequest(server, session.getSessionId(), backupType);
             } else {
@@ -175,6 +188,110 @@ public class BackupCoordinator implements Listener {
         }, 60, TimeUnit.SECONDS);
     }
     
+    /**
+     * Cancel network backups started from this proxy: one session, or every
+     * active session if sessionId is null. Servers not asked yet are skipped,
+     * the others are sent a CancelRequest for the session.
+     */
+    public void cancelNetworkBackup(CommandSender sender, String sessionId) {
+        List<BackupSession> sessions = new ArrayList<>();
+        if (sessionId == null) {
+            sessions.addAll(activeSessions.values());
+        } else {
+            BackupSession session = activeSessions.get(sessionId);
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        
+        if (sessions.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + (sessionId == null
+                ? "No network backup is running." : "No active backup session: " + sessionId));
+            return;
+        }
+        
+        for (BackupSession session : sessions) {
+            sender.sendMessage(ChatColor.YELLOW + "Cancelling session " + ChatColor.WHITE + session.getSessionId());
+            for (String serverName : session.cancel()) {
+                ServerInfo server = plugin.getProxy().getServerInfo(serverName);
+                if (server != null) {
+                    sendCancelRequest(server, session.getSessionId(), false);
+                }
+            }
+            if (session.isComplete()) {
+                session.complete();
+                activeSessions.remove(session.getSessionId());
+            }
+        }
+    }
+    
+    /**
+     * Cancel whatever backup is running on one server, including backups
+     * not started by the proxy
+     */
+    public void cancelServerBackup(CommandSender sender, String serverName) {
+        ServerInfo server = plugin.getProxy().getServerInfo(serverName);
+        if (server == null) {
+            sender.sendMessage(ChatColor.RED + "Server not found: " + serverName);
+            return;
+        }
+        
+        String requestId = trackRequest(sender);
+        sender.sendMessage(ChatColor.YELLOW + "Cancelling the running backup on: " + ChatColor.WHITE + serverName);
+        sendCancelRequest(server, requestId, true);
+    }
+    
+    /**
+     * Ask one server, or every server if serverName is null, for its backup status
+     */
+    public void requestStatus(CommandSender sender, String serverName) {
+        List<ServerInfo> servers = new ArrayList<>();
+        if (serverName == null) {
+            servers.addAll(plugin.getProxy().getServers().values());
+        } else if (plugin.getProxy().getServerInfo(serverName) != null) {
+            servers.add(plugin.getProxy().getServerInfo(serverName));
+        }
+        
+        if (servers.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + (serverName == null
+                ? "No backend servers found!" : "Server not found: " + serverName));
+            return;
+        }
+        
+        String requestId = trackRequest(sender);
+        sender.sendMessage(ChatColor.GOLD + "Backup status:");
+        for (ServerInfo server : servers) {
+            ByteArrayDataOutput out = ByteStreams.newDataOutput();
+            out.writeUTF("StatusRequest");
+            out.writeUTF(requestId);
+            server.sendData(CHANNEL_REQUEST, out.toByteArray());
+        }
+    }
+    
+    /**
+     * Remember who sent a request, so that the replies reach them
+     */
+    private String trackRequest(CommandSender sender) {
+        String requestId = UUID.randomUUID().toString().substring(0, 8);
+        pendingRequests.put(requestId, sender);
+        scheduler.schedule(() -> pendingRequests.remove(requestId), 30, TimeUnit.SECONDS);
+        return requestId;
+    }
+    
+    /**
+     * Send cancel request to backend server
+     *
+     * @param anyBackup Cancel whatever backup is running, not only the one with this request ID
+     */
+    private void sendCancelRequest(ServerInfo server, String requestId, boolean anyBackup) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("CancelRequest");
+        out.writeUTF(requestId);
+        out.writeBoolean(anyBackup);
+        
+        server.sendData(CHANNEL_REQUEST, out.toByteArray());
+    }
+    
     /**
      * Send backup request to backend server
      */
@@ -196,7 +313,8 @@ public class BackupCoordinator implements Listener {
             return;
         }
         
-        ByteArrayDataInput in = ByteStreams.newDataInput(event.getData());
+        ByteArrayInputStream bytes = new ByteArrayInputStream(event.getData());
+        ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
         String subChannel = in.readUTF();
         
         if (subChannel.equals("BackupResponse")) {
@@ -232,7 +350,72 @@ public class BackupCoordinator implements Listener {
                     activeSessions.remove(sessionId);
                 }
             }
+        } else if (subChannel.equals("CancelResponse")) {
+            String requestId = in.readUTF();
+            String serverName = sourceName(event, in.readUTF());
+            boolean cancelled = in.readBoolean();
+            
+            BackupSession session = activeSessions.get(requestId);
+            CommandSender sender = session != null ? session.getSender() : pendingRequests.get(requestId);
+            if (sender == null) {
+                return;
+            }
+            if (cancelled) {
+                sender.sendMessage(ChatColor.YELLOW + "⊘ " + serverName + ChatColor.GRAY + " - Cancelling...");
+            } else {
+                sender.sendMessage(ChatColor.GRAY + "⊘ " + serverName + " - Nothing to cancel");
+            }
+        } else if (subChannel.equals("StatusResponse")) {
+            String requestId = in.readUTF();
+            String serverName = sourceName(event, in.readUTF());
+            boolean apiAvailable = in.readBoolean();
+            boolean running = in.readBoolean();
+            int backupCount = in.readInt();
+            
+            CommandSender sender = pendingRequests.get(requestId);
+            if (sender == null) {
+                return;
+            }
+            if (!apiAvailable) {
+                sender.sendMessage(ChatColor.RED + "✗ " + serverName + ChatColor.GRAY + " - Public API disabled");
+            } else if (!running) {
+                sender.sendMessage(ChatColor.GREEN + "● " + serverName + ChatColor.GRAY + " - Idle, " + backupCount + " backups");
+            } else if (bytes.available() > 0) {
+                // Progress fields, sent by servers that report progress
+                double percent = in.readDouble();
+                long filesDone = in.readLong();
+                long bytesRead = in.readLong();
+                long estimatedBytes = in.readLong();
+                long etaMillis = in.readLong();
+                sender.sendMessage(ChatColor.AQUA + "▶ " + serverName + ChatColor.GRAY + " - "
+                    + formatProgress(percent, filesDone, bytesRead, estimatedBytes, etaMillis));
+            } else {
+                sender.sendMessage(ChatColor.AQUA + "▶ " + serverName + ChatColor.GRAY + " - Backup running");
+            }
+        }
+    }
+    
+    /**
+     * Name of the server a message came from as the proxy knows it
+     */
+    private static String sourceName(PluginMessageEvent event, String reportedName) {
+        return event.getSender() instanceof Server server ? server.getInfo().getName() : reportedName;
+    }
+    
+    private static String formatProgress(double percent, long filesDone, long bytesRead, long estimatedBytes, long etaMillis) {
+        StringBuilder text = new StringBuilder("Backup running");
+        if (percent >= 0) {
+            text.append(String.format(" %.1f%%", percent));
+        }
+        text.append(" (").append(filesDone).append(" files, ").append(bytesRead / 1024 / 1024).append("MB");
+        if (estimatedBytes >= 0) {
+            text.append(" of ").append(estimatedBytes / 1024 / 1024).append("MB");
+        }
+        text.append(")");
+        if (etaMillis >= 0) {
+            text.append(", ETA ").append(etaMillis / 1000).append("s");
         }
+        return text.toString();
     }
     
     /**
@@ -243,13 +426,16 @@ public class BackupCoordinator implements Listener {
         private final List<String> servers;
         private final CommandSender sender;
         private final Map<String, BackupResult> results;
+        private final Set<String> requested;
         private final long startTime;
+        private volatile boolean cancelled;
         
         public BackupSession(String sessionId, List<String> servers, CommandSender sender) {
             this.sessionId = sessionId;
             this.servers = servers;
             this.sender = sender;
             this.results = new ConcurrentHashMap<>();
+            this.requested = ConcurrentHashMap.newKeySet();
             this.startTime = System.currentTimeMillis();
         }
         
@@ -261,6 +447,39 @@ public class BackupCoordinator implements Listener {
             return results.size() >= servers.size();
         }
         
+        /**
+         * Note that a server was sent its backup request
+         *
+         * @return false if the session was cancelled and the server must not be asked
+         */
+        public synchronized boolean markRequested(String server) {
+            if (cancelled) {
+                return false;
+            }
+            requested.add(server);
+            return true;
+        }
+        
+        /**
+         * Stop asking further servers and record them as cancelled
+         *
+         * @return Servers already asked, whose backups need a CancelRequest
+         */
+        public synchronized List<String> cancel() {
+            cancelled = true;
+            List<String> asked = new ArrayList<>();
+            for (String server : servers) {
+                if (requested.contains(server)) {
+                    asked.add(server);
+                } else {
+                    results.putIfAbsent(server, new BackupResult(false, "Cancelled before start", 0, 0));
+                }
+            }
+            return asked;
+        }
+        
+        public boolean isCancelled() { return cancelled; }
+        
         public void complete() {
             long totalDuration = System.currentTimeMillis() - startTime;
             int successCount = (int) results.values().stream().filter(r -> r.success).count();
@@ -10,6 +10,8 @@ import net.kyori.adventure.text.format.NamedTextColor;
 /**
  * Network backup command for Velocity proxy
  * Usage: /networkbackup [server|all] [world|full]
+ *        /networkbackup cancel [session|server]
+ *        /networkbackup status [server]
  */
 public class NetworkBackupCommand implements SimpleCommand {
     
@@ -63,6 +65,20 @@ public class NetworkBackupCommand implements SimpleCommand {
                 coordinator.startNetworkBackup(source, false, backupType);
                 break;
             
+            case "cancel":
+                if (args.length < 2) {
+                    coordinator.cancelNetworkBackup(source, null);
+                } else if (plugin.getServer().getServer(args[1]).isPresent()) {
+                    coordinator.cancelServerBackup(source, args[1]);
+                } else {
+                    coordinator.cancelNetworkBackup(source, args[1]);
+                }
+                break;
+            
+            case "status":
+                coordinator.requestStatus(source, args.length >= 2 ? args[1] : null);
+                break;
+            
             case "help":
                 sendHelp(source);
                 break;
@@ -95,6 +111,12 @@ public class NetworkBackupCommand implements SimpleCommand {
             .append(Component.text(" - World backup only", NamedTextColor.GRAY)));
         source.sendMessage(Component.text("/networkbackup <target> full", NamedTextColor.YELLOW)
             .append(Component.text(" - Full server backup", NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("/networkbackup cancel [session]", NamedTextColor.YELLOW)
+            .append(Component.text(" - Cancel network backups", NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("/networkbackup cancel <server>", NamedTextColor.YELLOW)
+            .append(Component.text(" - Cancel any backup on a server", NamedTextColor.GRAY)));
+        source.sendMessage(Component.text("/networkbackup status [server]", NamedTextColor.YELLOW)
+            .append(Component.text(" - Show backup progress", NamedTextColor.GRAY)));
         source.sendMessage(Component.empty());
         source.sendMessage(Component.text("Examples:", NamedTextColor.GRAY));
         source.sendMessage(Component.text("  /networkbackup", NamedTextColor.WHITE)
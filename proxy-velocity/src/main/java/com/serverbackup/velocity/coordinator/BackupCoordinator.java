@@ -14,6 +14,7 @@ import com.velocitypowered.api.proxy.server.RegisteredServer;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.io.ByteArrayInputStream;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -24,6 +25,8 @@ public class BackupCoordinator {
     
     private final ServerBackupVelocity plugin;
     private final Map<String, BackupSession> activeSessions;
+    /** Who asked for a status or a single-server cancel, by request ID */
+    private final Map<String, CommandSource> pendingRequests;
     private final ScheduledExecutorService scheduler;
     
     private static final MinecraftChannelIdentifier CHANNEL_REQUEST = 
@@ -34,6 +37,7 @@ public class BackupCoordinator {
     public BackupCoordinator(ServerBackupVelocity plugin) {
         this.plugin = plugin;
         this.activeSessions = new ConcurrentHashMap<>();
+        this.pendingRequests = new ConcurrentHashMap<>();
         this.scheduler = Executors.newScheduledThreadPool(2);
     }
     
@@ -119,6 +123,7 @@ public class BackupCoordinator {
             .append(Component.text(serverName, NamedTextColor.WHITE)));
         source.sendMessage(Component.text("Session: " + sessionId, NamedTextColor.GRAY));
         
+        session.markRequested(serverName);
         sendBackupRequest(serverOpt.get(), sessionId, backupType);
         
         // Timeout after 5 minutes
@@ -134,6 +139,9 @@ public class BackupCoordinator {
      * Execute backups sequentially
      */
     private void executeSequentialBackup(BackupSession session, List<String> servers, String backupType, int index) {
+        if (session.isCancelled()) {
+            return; // The servers not asked yet were recorded as cancelled
+        }
         if (index >= servers.size()) {
             session.complete();
             activeSessions.remove(session.getSessionId());
@@ -149,6 +157,9 @@ public class BackupCoordinator {
             return;
         }
         
+        if (!session.markRequested(serverName)) {
+            return;
+        }
         session.getSource().sendMessage(Component.text("→ " + serverName, NamedTextColor.AQUA)
             .append(Component.text(" - Starting...", NamedTextColor.GRAY)));
         sendBackupRequest(serverOpt.get(), session.getSessionId(), backupType);
@@ -168,6 +179,7 @@ public class BackupCoordinator {
         for (String serverName : servers) {
             Optional<RegisteredServer> serverOpt = plugin.getServer().getServer(serverName);
             if (serverOpt.isPresent()) {
+                session.markRequested(serverName);
                 session.getSource().sendMessage(Component.text("→ " + serverName, NamedTextColor.AQUA)
                     .append(Component.text(" - Starting...", NamedTextColor.GRAY)));
                 sendBackupRequest(serverOpt.get(), session.getSessionId(), backupType);
@@ -185,6 +197,110 @@ public class BackupCoordinator {
         }, 60, TimeUnit.SECONDS);
     }
     
+    /**
+     * Cancel network backups started from this proxy: one session, or every
+     * active session if sessionId is null. Servers not asked yet are skipped,
+     * the others are sent a CancelRequest for the session.
+     */
+    public void cancelNetworkBackup(CommandSource source, String sessionId) {
+        List<BackupSession> sessions = new ArrayList<>();
+        if (sessionId == null) {
+            sessions.addAll(activeSessions.values());
+        } else {
+            BackupSession session = activeSessions.get(sessionId);
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        
+        if (sessions.isEmpty()) {
+            source.sendMessage(Component.text(sessionId == null
+                ? "No network backup is running." : "No active backup session: " + sessionId, NamedTextColor.YELLOW));
+            return;
+        }
+        
+        for (BackupSession session : sessions) {
+            source.sendMessage(Component.text("Cancelling session ", NamedTextColor.YELLOW)
+                .append(Component.text(session.getSessionId(), NamedTextColor.WHITE)));
+            for (String serverName : session.cancel()) {
+                plugin.getServer().getServer(serverName)
+                    .ifPresent(server -> sendCancelRequest(server, session.getSessionId(), false));
+            }
+            if (session.isComplete()) {
+                session.complete();
+                activeSessions.remove(session.getSessionId());
+            }
+        }
+    }
+    
+    /**
+     * Cancel whatever backup is running on one server, including backups
+     * not started by the proxy
+     */
+    public void cancelServerBackup(CommandSource source, String serverName) {
+        Optional<RegisteredServer> serverOpt = plugin.getServer().getServer(serverName);
+        if (serverOpt.isEmpty()) {
+            source.sendMessage(Component.text("Server not found: " + serverName, NamedTextColor.RED));
+            return;
+        }
+        
+        String requestId = trackRequest(source);
+        source.sendMessage(Component.text("Cancelling the running backup on: ", NamedTextColor.YELLOW)
+            .append(Component.text(serverName, NamedTextColor.WHITE)));
+        sendCancelRequest(serverOpt.get(), requestId, true);
+    }
+    
+    /**
+     * Ask one server, or every server if serverName is null, for its backup status
+     */
+    public void requestStatus(CommandSource source, String serverName) {
+        List<RegisteredServer> servers = new ArrayList<>();
+        if (serverName == null) {
+            servers.addAll(plugin.getServer().getAllServers());
+        } else {
+            plugin.getServer().getServer(serverName).ifPresent(servers::add);
+        }
+        
+        if (servers.isEmpty()) {
+            source.sendMessage(Component.text(serverName == null
+                ? "No backend servers found!" : "Server not found: " + serverName, NamedTextColor.RED));
+            return;
+        }
+        
+        String requestId = trackRequest(source);
+        source.sendMessage(Component.text("Backup status:", NamedTextColor.GOLD));
+        for (RegisteredServer server : servers) {
+            ByteArrayDataOutput out = ByteStreams.newDataOutput();
+            out.writeUTF("StatusRequest");
+            out.writeUTF(requestId);
+            server.sendPluginMessage(CHANNEL_REQUEST, out.toByteArray());
+        }
+    }
+    
+    /**
+     * Remember who sent a request, so that the replies reach them
+     */
+    private String trackRequest(CommandSource source) {
+        String requestId = UUID.randomUUID().toString().substring(0, 8);
+        pendingRequests.put(requestId, source);
+        scheduler.schedule(() -> pendingRequests.remove(requestId), 30, TimeUnit.SECONDS);
+        return requestId;
+    }
+    
+    /**
+     * Send cancel request to backend server
+     *
+     * @param anyBackup Cancel whatever backup is running, not only the one with this request ID
+     */
+    private void sendCancelRequest(RegisteredServer server, String requestId, boolean anyBackup) {
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("CancelRequest");
+        out.writeUTF(requestId);
+        out.writeBoolean(anyBackup);
+        
+        server.sendPluginMessage(CHANNEL_REQUEST, out.toByteArray());
+    }
+    
     /**
      * Send backup request to backend server
      */
@@ -210,7 +326,9 @@ public class BackupCoordinator {
             return;
         }
         
-        ByteArrayDataInput in = ByteStreams.newDataInput(event.getData());
+        ServerConnection connection = (ServerConnection) event.getSource();
+        ByteArrayInputStream bytes = new ByteArrayInputStream(event.getData());
+        ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
         String subChannel = in.readUTF();
         
         if (subChannel.equals("BackupResponse")) {
@@ -245,7 +363,72 @@ public class BackupCoordinator {
                     activeSessions.remove(sessionId);
                 }
             }
+        } else if (subChannel.equals("CancelResponse")) {
+            String requestId = in.readUTF();
+            in.readUTF(); // Name the backend reports; the proxy's own name for it is used instead
+            String serverName = connection.getServerInfo().getName();
+            boolean cancelled = in.readBoolean();
+            
+            BackupSession session = activeSessions.get(requestId);
+            CommandSource source = session != null ? session.getSource() : pendingRequests.get(requestId);
+            if (source == null) {
+                return;
+            }
+            if (cancelled) {
+                source.sendMessage(Component.text("⊘ " + serverName, NamedTextColor.YELLOW)
+                    .append(Component.text(" - Cancelling...", NamedTextColor.GRAY)));
+            } else {
+                source.sendMessage(Component.text("⊘ " + serverName + " - Nothing to cancel", NamedTextColor.GRAY));
+            }
+        } else if (subChannel.equals("StatusResponse")) {
+            String requestId = in.readUTF();
+            in.readUTF(); // Name the backend reports
+            String serverName = connection.getServerInfo().getName();
+            boolean apiAvailable = in.readBoolean();
+            boolean running = in.readBoolean();
+            int backupCount = in.readInt();
+            
+            CommandSource source = pendingRequests.get(requestId);
+            if (source == null) {
+                return;
+            }
+            if (!apiAvailable) {
+                source.sendMessage(Component.text("✗ " + serverName, NamedTextColor.RED)
+                    .append(Component.text(" - Public API disabled", NamedTextColor.GRAY)));
+            } else if (!running) {
+                source.sendMessage(Component.text("● " + serverName, NamedTextColor.GREEN)
+                    .append(Component.text(" - Idle, " + backupCount + " backups", NamedTextColor.GRAY)));
+            } else if (bytes.available() > 0) {
+                // Progress fields, sent by servers that report progress
+                double percent = in.readDouble();
+                long filesDone = in.readLong();
+                long bytesRead = in.readLong();
+                long estimatedBytes = in.readLong();
+                long etaMillis = in.readLong();
+                source.sendMessage(Component.text("▶ " + serverName, NamedTextColor.AQUA)
+                    .append(Component.text(" - " + formatProgress(percent, filesDone, bytesRead, estimatedBytes, etaMillis),
+                        NamedTextColor.GRAY)));
+            } else {
+                source.sendMessage(Component.text("▶ " + serverName, NamedTextColor.AQUA)
+                    .append(Component.text(" - Backup running", NamedTextColor.GRAY)));
+            }
+        }
+    }
+    
+    private static String formatProgress(double percent, long filesDone, long bytesRead, long estimatedBytes, long etaMillis) {
+        StringBuilder text = new StringBuilder("Backup running");
+        if (percent >= 0) {
+            text.append(String.format(" %.1f%%", percent));
+        }
+        text.append(" (").append(filesDone).append(" files, ").append(bytesRead / 1024 / 1024).append("MB");
+        if (estimatedBytes >= 0) {
+            text.append(" of ").append(estimatedBytes / 1024 / 1024).append("MB");
+        }
+        text.append(")");
+        if (etaMillis >= 0) {
+            text.append(", ETA ").append(etaMillis / 1000).append("s");
         }
+        return text.toString();
     }
     
     /**
@@ -256,13 +439,16 @@ public class BackupCoordinator {
         private final List<String> servers;
         private final CommandSource source;
         private final Map<String, BackupResult> results;
+        private final Set<String> requested;
         private final long startTime;
+        private volatile boolean cancelled;
         
         public BackupSession(String sessionId, List<String> servers, CommandSource source) {
             this.sessionId = sessionId;
             this.servers = servers;
             this.source = source;
             this.results = new ConcurrentHashMap<>();
+            this.requested = ConcurrentHashMap.newKeySet();
             this.startTime = System.currentTimeMillis();
         }
         
@@ -274,6 +460,39 @@ public class BackupCoordinator {
             return results.size() >= servers.size();
         }
         
+        /**
+         * Note that a server was sent its backup request
+         *
+         * @return false if the session was cancelled and the server must not be asked
+         */
+        public synchronized boolean markRequested(String server) {
+            if (cancelled) {
+                return false;
+            }
+            requested.add(server);
+            return true;
+        }
+        
+        /**
+         * Stop asking further servers and record them as cancelled
+         *
+         * @return Servers already asked, whose backups need a CancelRequest
+         */
+        public synchronized List<String> cancel() {
+            cancelled = true;
+            List<String> asked = new ArrayList<>();
+            for (String server : servers) {
+                if (requested.contains(server)) {
+                    asked.add(server);
+                } else {
+                    results.putIfAbsent(server, new BackupResult(false, "Cancelled before start", 0, 0));
+                }
+            }
+            return asked;
+        }
+        
+        public boolean isCancelled() { return cancelled; }
+        
         public void complete() {
             long totalDuration = System.currentTimeMillis() - startTime;
             int successCount = (int) results.values().stream().filter(r -> r.success).count();
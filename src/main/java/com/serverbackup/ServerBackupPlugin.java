@@ -67,6 +67,12 @@ public class ServerBackupPlugin extends JavaPlugin {
             getLogger().info("Auto-backup is disabled. Use /backup command to create backups manually.");
         }
         
+        // Recompress fast-tier backups while the server is idle (two-tier mode)
+        backupService.startIdleRecompression();
+        
+        // Remove staged copies of backups interrupted by a crash (two-phase mode)
+        backupService.cleanStagingArea();
+        
         // Log feature status
         logFeatureStatus();
         
@@ -82,6 +88,7 @@ public class ServerBackupPlugin extends JavaPlugin {
         
         // Unregister PlaceholderAPI expansion
         if (placeholderExpansion != null) {
+            placeholderExpansion.stopRefreshing();
             placeholderExpansion.unregister();
         }
         
@@ -90,6 +97,11 @@ public class ServerBackupPlugin extends JavaPlugin {
             networkListener.unregister();
         }
         
+        // Stop backup worker threads
+        if (backupService != null) {
+            backupService.shutdown();
+        }
+        
         getLogger().info("ServerBackupPlugin has been disabled!");
     }
     
@@ -137,6 +149,7 @@ public class ServerBackupPlugin extends JavaPlugin {
             if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
                 placeholderExpansion = new ServerBackupExpansion(this);
                 if (placeholderExpansion.register()) {
+                    placeholderExpansion.startRefreshing();
                     getLogger().info("PlaceholderAPI expansion registered!");
                     getLogger().info("  Available placeholders: %serverbackup_*");
                 } else {
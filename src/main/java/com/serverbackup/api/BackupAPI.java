@@ -6,7 +6,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Main API interface for ServerBackupPlugin
@@ -56,6 +58,25 @@ public interface BackupAPI {
         return createBackup(BackupOptions.builder().build());
     }
     
+    /**
+     * Create a new backup and get a handle that can cancel it
+     * 
+     * @param options Backup configuration options
+     * @return Job handle; its result completes when the backup is done
+     */
+    @NotNull
+    BackupJob createBackupJob(@NotNull BackupOptions options);
+    
+    /**
+     * Cancel a running backup. It stops at the next file, turns auto-save
+     * back on and deletes the incomplete backup.
+     * 
+     * @param sessionId Session ID of the backup (see {@link BackupProgress#getSessionId()})
+     * @param reason Why it is cancelled
+     * @return true if cancelled now, false if no such backup is running or it was cancelled before
+     */
+    boolean cancelBackup(@NotNull UUID sessionId, @NotNull String reason);
+    
     /**
      * List all available backups
      * 
@@ -77,7 +98,8 @@ public interface BackupAPI {
      * Delete a backup by filename
      * 
      * @param backupName Name of the backup file (e.g., "backup-2025-12-07_12-30-00.zip")
-     * @return true if backup was deleted successfully
+     * @return true if backup was deleted successfully; false as well while
+     *         incremental backups still need files stored in it
      */
     boolean deleteBackup(@NotNull String backupName);
     
@@ -85,7 +107,8 @@ public interface BackupAPI {
      * Delete a backup by file reference
      * 
      * @param backupFile The backup file to delete
-     * @return true if backup was deleted successfully
+     * @return true if backup was deleted successfully; false as well while
+     *         incremental backups still need files stored in it
      */
     boolean deleteBackup(@NotNull File backupFile);
     
@@ -112,6 +135,49 @@ public interface BackupAPI {
      */
     int getActiveBackupCount();
     
+    /**
+     * Get the progress of the backup currently running
+     * 
+     * @return Progress or null if no backup is running
+     */
+    @Nullable
+    BackupProgress getProgress();
+    
+    /**
+     * Get the progress of a backup by its session ID
+     * 
+     * @param sessionId Session ID of the backup
+     * @return Progress or null if no such backup ran in the last few minutes
+     */
+    @Nullable
+    BackupProgress getProgress(@NotNull UUID sessionId);
+    
+    /**
+     * Get a stream of the phase changes and progress of a backup
+     * 
+     * Each subscriber first gets the phase the backup is in, then every phase
+     * change and, while it keeps requesting, a progress update about twice a
+     * second (features.public-api.progress-interval-ms). The last event is
+     * {@link BackupProgressEvent.Done}, followed by onComplete. Progress
+     * updates are never queued: a subscriber that requests slowly gets the
+     * latest progress each time, and never slows the backup down. Events are
+     * delivered on a virtual thread of their own, not the server thread.
+     * 
+     * <pre>
+     * api.getProgressEvents(job.getSessionId()).subscribe(new Flow.Subscriber&lt;&gt;() {
+     *     public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+     *     public void onNext(BackupProgressEvent event) { getLogger().info(event.toString()); }
+     *     public void onError(Throwable error) { }
+     *     public void onComplete() { }
+     * });
+     * </pre>
+     * 
+     * @param sessionId Session ID of the backup
+     * @return Publisher, or null if no such backup ran in the last few minutes
+     */
+    @Nullable
+    Flow.Publisher<BackupProgressEvent> getProgressEvents(@NotNull UUID sessionId);
+    
     /**
      * Get the last successful backup result
      * 
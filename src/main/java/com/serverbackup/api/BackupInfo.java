@@ -5,6 +5,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -19,6 +21,11 @@ public class BackupInfo {
     private final Instant createdAt;
     private final Set<String> worldsIncluded;
     private final boolean compressed;
+    private final String compressionCodec;
+    private final String parentBackup;
+    private final int fileCount;
+    private final long durationMillis;
+    private final Map<String, String> metadata;
     
     public BackupInfo(@NotNull File backupFile, 
                       @NotNull String name,
@@ -27,6 +34,29 @@ public class BackupInfo {
                       @NotNull Instant createdAt,
                       @NotNull Set<String> worldsIncluded,
                       boolean compressed) {
+        this(backupFile, name, type, size, createdAt, worldsIncluded, compressed, null, null, -1, -1,
+            Collections.emptyMap());
+    }
+    
+    /**
+     * @param compressionCodec Codec of a ZIP backup, or null
+     * @param parentBackup Parent of an incremental backup, or null
+     * @param fileCount Number of files in the backup, -1 if unknown
+     * @param durationMillis How long the backup took, -1 if unknown
+     * @param metadata Metadata the backup was created with
+     */
+    public BackupInfo(@NotNull File backupFile,
+                      @NotNull String name,
+                      @NotNull BackupType type,
+                      long size,
+                      @NotNull Instant createdAt,
+                      @NotNull Set<String> worldsIncluded,
+                      boolean compressed,
+                      @Nullable String compressionCodec,
+                      @Nullable String parentBackup,
+                      int fileCount,
+                      long durationMillis,
+                      @NotNull Map<String, String> metadata) {
         this.backupFile = backupFile;
         this.name = name;
         this.type = type;
@@ -34,6 +64,11 @@ public class BackupInfo {
         this.createdAt = createdAt;
         this.worldsIncluded = worldsIncluded;
         this.compressed = compressed;
+        this.compressionCodec = compressionCodec;
+        this.parentBackup = parentBackup;
+        this.fileCount = fileCount;
+        this.durationMillis = durationMillis;
+        this.metadata = metadata;
     }
     
     @NotNull
@@ -69,6 +104,44 @@ public class BackupInfo {
         return compressed;
     }
     
+    /**
+     * Codec the backup is compressed with, null if unknown or not a ZIP backup
+     */
+    @Nullable
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
+    
+    /**
+     * Backup an incremental backup is based on, null for full backups
+     */
+    @Nullable
+    public String getParentBackup() {
+        return parentBackup;
+    }
+    
+    /**
+     * Number of files in the backup, -1 if unknown
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+    
+    /**
+     * How long creating the backup took in milliseconds, -1 if unknown
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+    
+    /**
+     * Metadata passed in {@link BackupOptions} when the backup was created
+     */
+    @NotNull
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+    
     public String getFormattedSize() {
         if (size <= 0) return "0 B";
         final String[] units = new String[] { "B", "KB", "MB", "GB", "TB" };
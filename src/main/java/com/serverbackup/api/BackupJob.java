@@ -0,0 +1,63 @@
+package com.serverbackup.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Handle to a backup started through {@link BackupAPI#createBackupJob(BackupOptions)}
+ *
+ * Cancelling is cooperative: the backup stops at the next file or block,
+ * turns auto-save back on and deletes what it wrote so far. The result then
+ * completes as failed, with a {@link com.serverbackup.util.BackupCancelledException}
+ * as its error.
+ */
+public interface BackupJob {
+    
+    /**
+     * Get the session ID of the backup
+     * 
+     * @return Session ID, or null if the backup was rejected before it started
+     */
+    @Nullable
+    UUID getSessionId();
+    
+    /**
+     * Get the result, completed when the backup has finished, failed or was cancelled
+     */
+    @NotNull
+    CompletableFuture<BackupResult> getResult();
+    
+    /**
+     * Get the current progress
+     * 
+     * @return Progress, or null if the backup never started or finished a while ago
+     */
+    @Nullable
+    BackupProgress getProgress();
+    
+    /**
+     * Get a stream of the backup's phase changes and progress, see
+     * {@link BackupAPI#getProgressEvents(UUID)}
+     * 
+     * @return Publisher, or null if the backup was rejected before it started
+     */
+    @Nullable
+    Flow.Publisher<BackupProgressEvent> getProgressEvents();
+    
+    /**
+     * Ask the backup to stop
+     * 
+     * @param reason Why it is cancelled, reported in the result
+     * @return true if cancelled now, false if it already finished or was cancelled before
+     */
+    boolean cancel(@NotNull String reason);
+    
+    /**
+     * Check whether cancellation was requested
+     */
+    boolean isCancelled();
+}
@@ -15,8 +15,10 @@ import java.util.*;
  *     .addWorld("world")
  *     .addWorld("world_nether")
  *     .setCompression(true)
+ *     .setCompressionCodec("zstd")
  *     .setAsync(true)
  *     .setNotifyPlayers(false)
+ *     .setIncremental(true)
  *     .build();
  * </pre>
  */
@@ -26,9 +28,13 @@ public class BackupOptions {
     private final Set<String> worldNames;
     private final boolean includePlugins;
     private final boolean compression;
+    private final String compressionCodec;
+    private final Integer compressionLevel;
     private final boolean async;
     private final boolean notifyPlayers;
     private final String customName;
+    private final boolean incremental;
+    private final String parentBackup;
     private final Map<String, Object> metadata;
     
     private BackupOptions(Builder builder) {
@@ -36,9 +42,13 @@ public class BackupOptions {
         this.worldNames = Collections.unmodifiableSet(builder.worldNames);
         this.includePlugins = builder.includePlugins;
         this.compression = builder.compression;
+        this.compressionCodec = builder.compressionCodec;
+        this.compressionLevel = builder.compressionLevel;
         this.async = builder.async;
         this.notifyPlayers = builder.notifyPlayers;
         this.customName = builder.customName;
+        this.incremental = builder.incremental;
+        this.parentBackup = builder.parentBackup;
         this.metadata = Collections.unmodifiableMap(builder.metadata);
     }
     
@@ -46,9 +56,13 @@ public class BackupOptions {
     public Set<String> getWorldNames() { return worldNames; }
     public boolean includePlugins() { return includePlugins; }
     public boolean isCompression() { return compression; }
+    public String getCompressionCodec() { return compressionCodec; }
+    public Integer getCompressionLevel() { return compressionLevel; }
     public boolean isAsync() { return async; }
     public boolean isNotifyPlayers() { return notifyPlayers; }
     public String getCustomName() { return customName; }
+    public boolean isIncremental() { return incremental; }
+    public String getParentBackup() { return parentBackup; }
     public Map<String, Object> getMetadata() { return metadata; }
     
     @NotNull
@@ -61,9 +75,13 @@ public class BackupOptions {
         private Set<String> worldNames = new HashSet<>();
         private boolean includePlugins = false;
         private boolean compression = true;
+        private String compressionCodec = null;
+        private Integer compressionLevel = null;
         private boolean async = true;
         private boolean notifyPlayers = true;
         private String customName = null;
+        private boolean incremental = false;
+        private String parentBackup = null;
         private Map<String, Object> metadata = new HashMap<>();
         
         /**
@@ -124,6 +142,26 @@ public class BackupOptions {
             return this;
         }
         
+        /**
+         * Choose the compression codec for ZIP backups (optional)
+         * If not set, backup.compression-codec from config.yml is used
+         * @param compressionCodec Codec name: "deflate", "zstd" or "lz4"
+         */
+        public Builder setCompressionCodec(String compressionCodec) {
+            this.compressionCodec = compressionCodec;
+            return this;
+        }
+        
+        /**
+         * Set the compression level for the chosen codec (optional)
+         * If not set, backup.compression-level from config.yml is used
+         * @param compressionLevel Codec level, -1 for the codec's default, 0 to store everything
+         */
+        public Builder setCompressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+        
         /**
          * Run backup asynchronously (recommended)
          * @param async true for async execution
@@ -152,6 +190,27 @@ public class BackupOptions {
             return this;
         }
         
+        /**
+         * Store only files that changed since a parent backup (ZIP backups only).
+         * Without an explicit parent the newest indexed backup is used; if there is
+         * none, a full backup is taken instead.
+         * @param incremental true for an incremental backup
+         */
+        public Builder setIncremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+        
+        /**
+         * Base an incremental backup on a specific backup (implies incremental)
+         * @param parentBackup Parent backup file name (e.g., "backup-2025-12-07_12-30-00.zip")
+         */
+        public Builder setParentBackup(String parentBackup) {
+            this.parentBackup = parentBackup;
+            this.incremental = parentBackup != null || this.incremental;
+            return this;
+        }
+        
         /**
          * Add custom metadata to the backup
          * @param key Metadata key
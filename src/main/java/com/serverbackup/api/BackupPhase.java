@@ -0,0 +1,49 @@
+package com.serverbackup.api;
+
+/**
+ * Steps a backup goes through, in order
+ */
+public enum BackupPhase {
+    
+    /**
+     * Waiting for the worlds to be saved
+     */
+    SAVING("saving"),
+    
+    /**
+     * Measuring the folders to back up, and copying them into the staging
+     * area if two-phase backups are enabled
+     */
+    SCANNING("scanning"),
+    
+    /**
+     * Writing the backup: compressing into a ZIP, chunking into the
+     * repository, or copying into a backup folder
+     */
+    COMPRESSING("compressing"),
+    
+    /**
+     * Transferring the backup to remote storage. Backups stored locally skip it.
+     */
+    UPLOADING("uploading"),
+    
+    /**
+     * Checking the written backup. Backups that are not verified skip it.
+     */
+    VERIFYING("verifying"),
+    
+    /**
+     * Finished, failed or cancelled
+     */
+    DONE("done");
+    
+    private final String name;
+    
+    BackupPhase(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,127 @@
+package com.serverbackup.api;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Progress of a running backup at the moment it was requested
+ *
+ * Totals are estimated before the backup starts writing, from the previous
+ * backup of the same worlds or from the file sizes on disk, so the percentage
+ * and ETA are approximate. Estimates that are not known yet are -1.
+ */
+public class BackupProgress {
+    
+    private final UUID sessionId;
+    private final String type;
+    private final long startTime;
+    private final long filesDone;
+    private final long estimatedFiles;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long estimatedBytes;
+    private final long bytesPerSecond;
+    private final long etaMillis;
+    private final double percent;
+    
+    public BackupProgress(UUID sessionId, String type, long startTime, long filesDone, long estimatedFiles,
+                          long bytesRead, long bytesWritten, long estimatedBytes, long bytesPerSecond,
+                          long etaMillis, double percent) {
+        this.sessionId = sessionId;
+        this.type = type;
+        this.startTime = startTime;
+        this.filesDone = filesDone;
+        this.estimatedFiles = estimatedFiles;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.estimatedBytes = estimatedBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.etaMillis = etaMillis;
+        this.percent = percent;
+    }
+    
+    /**
+     * Get the session of the backup
+     */
+    public UUID getSessionId() {
+        return sessionId;
+    }
+    
+    /**
+     * Get the backup type name ("world" or "full")
+     */
+    public String getType() {
+        return type;
+    }
+    
+    /**
+     * Get when the backup started, in epoch milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    /**
+     * Get the number of files written so far
+     */
+    public long getFilesDone() {
+        return filesDone;
+    }
+    
+    /**
+     * Get the expected number of files, -1 if unknown
+     */
+    public long getEstimatedFiles() {
+        return estimatedFiles;
+    }
+    
+    /**
+     * Get the bytes of world and plugin data processed so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    /**
+     * Get the bytes added to the backup so far (after compression and deduplication)
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    /**
+     * Get the expected bytes of data to process, -1 if unknown
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+    
+    /**
+     * Get the current processing speed in bytes per second
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+    
+    /**
+     * Get the estimated time left in milliseconds, -1 if unknown
+     */
+    public long getEtaMillis() {
+        return etaMillis;
+    }
+    
+    /**
+     * Get the share of the expected data processed (0-100), -1 if unknown
+     */
+    public double getPercent() {
+        return percent;
+    }
+    
+    @NotNull
+    @Override
+    public String toString() {
+        return String.format("%s backup %.1f%%: %d/%d files, %d/%d bytes, %d bytes/s, ETA %d ms",
+            type, percent, filesDone, estimatedFiles, bytesRead, estimatedBytes, bytesPerSecond, etaMillis);
+    }
+}
@@ -0,0 +1,121 @@
+package com.serverbackup.api;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Event published by {@link BackupAPI#getProgressEvents(java.util.UUID)}
+ *
+ * Every event carries the phase the backup is in and a snapshot of its
+ * progress. The subclasses tell what happened: the backup entered a new
+ * {@link PhaseChange phase}, made {@link Update progress}, or is
+ * {@link Done done}, which is always the last event.
+ */
+public abstract class BackupProgressEvent {
+    
+    private final BackupPhase phase;
+    private final BackupProgress progress;
+    
+    BackupProgressEvent(BackupPhase phase, BackupProgress progress) {
+        this.phase = phase;
+        this.progress = progress;
+    }
+    
+    /**
+     * Get the phase the backup is in
+     */
+    @NotNull
+    public BackupPhase getPhase() {
+        return phase;
+    }
+    
+    /**
+     * Get the progress when the event was created
+     */
+    @NotNull
+    public BackupProgress getProgress() {
+        return progress;
+    }
+    
+    /**
+     * The backup entered a phase. The first event of every subscription is
+     * one, for the phase the backup is in when subscribing.
+     */
+    public static final class PhaseChange extends BackupProgressEvent {
+        private final BackupPhase previous;
+        
+        public PhaseChange(BackupPhase previous, BackupPhase phase, BackupProgress progress) {
+            super(phase, progress);
+            this.previous = previous;
+        }
+        
+        /**
+         * Get the phase before, or null for the first event of a subscription
+         */
+        @Nullable
+        public BackupPhase getPreviousPhase() {
+            return previous;
+        }
+        
+        @NotNull
+        @Override
+        public String toString() {
+            return "Phase " + getPhase().getName() + ": " + getProgress();
+        }
+    }
+    
+    /**
+     * The backup processed more data. Updates are not queued: a subscriber
+     * that requests the next event gets the progress at that moment.
+     */
+    public static final class Update extends BackupProgressEvent {
+        
+        public Update(BackupPhase phase, BackupProgress progress) {
+            super(phase, progress);
+        }
+        
+        @NotNull
+        @Override
+        public String toString() {
+            return "Progress " + getProgress();
+        }
+    }
+    
+    /**
+     * The backup finished, failed or was cancelled
+     */
+    public static final class Done extends BackupProgressEvent {
+        private final boolean success;
+        private final boolean cancelled;
+        private final String error;
+        
+        public Done(BackupProgress progress, boolean success, boolean cancelled, String error) {
+            super(BackupPhase.DONE, progress);
+            this.success = success;
+            this.cancelled = cancelled;
+            this.error = error;
+        }
+        
+        public boolean isSuccess() {
+            return success;
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        /**
+         * Get why the backup failed or was cancelled, or null if it succeeded
+         */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+        
+        @NotNull
+        @Override
+        public String toString() {
+            return success ? "Done: " + getProgress() : (cancelled ? "Cancelled: " : "Failed: ") + error;
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class BackupResult {
     private final long fileSize;
     private final Throwable error;
     private final Map<String, Object> metadata;
+    private final TickStatistics tickStatistics;
     
     private BackupResult(Builder builder) {
         this.sessionId = builder.sessionId;
@@ -35,6 +36,7 @@ public class BackupResult {
         this.fileSize = builder.fileSize;
         this.error = builder.error;
         this.metadata = builder.metadata;
+        this.tickStatistics = builder.tickStatistics;
     }
     
     /**
@@ -120,6 +122,15 @@ public class BackupResult {
         return metadata;
     }
     
+    /**
+     * Get the server tick times measured while the backup ran
+     * (null if the backup did not get far enough to be measured)
+     */
+    @Nullable
+    public TickStatistics getTickStatistics() {
+        return tickStatistics;
+    }
+    
     @NotNull
     public static Builder builder() {
         return new Builder();
@@ -135,6 +146,7 @@ public class BackupResult {
         private long fileSize = 0;
         private Throwable error = null;
         private Map<String, Object> metadata = Map.of();
+        private TickStatistics tickStatistics = null;
         
         public Builder setSessionId(@NotNull UUID sessionId) {
             this.sessionId = sessionId;
@@ -181,6 +193,11 @@ public class BackupResult {
             return this;
         }
         
+        public Builder setTickStatistics(@Nullable TickStatistics tickStatistics) {
+            this.tickStatistics = tickStatistics;
+            return this;
+        }
+        
         @NotNull
         public BackupResult build() {
             return new BackupResult(this);
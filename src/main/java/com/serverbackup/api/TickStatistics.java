@@ -0,0 +1,77 @@
+package com.serverbackup.api;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Server tick times measured while a backup was running
+ *
+ * All times are in milliseconds per tick (MSPT). A server keeping up with
+ * 20 TPS stays below 50 ms; ticks above that are felt as lag.
+ */
+public class TickStatistics {
+    
+    private final int samples;
+    private final double mean;
+    private final double median;
+    private final double p95;
+    private final double p99;
+    private final double max;
+    
+    public TickStatistics(int samples, double mean, double median, double p95, double p99, double max) {
+        this.samples = samples;
+        this.mean = mean;
+        this.median = median;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+    
+    /**
+     * Get the number of ticks measured
+     */
+    public int getSamples() {
+        return samples;
+    }
+    
+    /**
+     * Get the average tick time
+     */
+    public double getMean() {
+        return mean;
+    }
+    
+    /**
+     * Get the median tick time
+     */
+    public double getMedian() {
+        return median;
+    }
+    
+    /**
+     * Get the 95th percentile tick time
+     */
+    public double getP95() {
+        return p95;
+    }
+    
+    /**
+     * Get the 99th percentile tick time
+     */
+    public double getP99() {
+        return p99;
+    }
+    
+    /**
+     * Get the longest tick
+     */
+    public double getMax() {
+        return max;
+    }
+    
+    @NotNull
+    @Override
+    public String toString() {
+        return String.format("%d ticks, mean %.1f ms, median %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+            samples, mean, median, p95, p99, max);
+    }
+}
@@ -0,0 +1,151 @@
+package com.serverbackup.archive;
+
+import com.serverbackup.archive.codec.CompressionCodec;
+import com.serverbackup.util.IoLimiter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Re-encodes a finished ZIP backup with another codec
+ *
+ * Used to move backups taken with a fast codec to a high-ratio one while the
+ * server is idle. The new archive is written to a separate file and checked
+ * entry by entry before the caller may swap it in; the original is never
+ * modified. Entry names, timestamps and CRCs stay the same, so file indexes of
+ * incremental backups remain valid.
+ */
+public class ArchiveRecompressor {
+    
+    /** Entries up to this size are re-encoded in memory, larger ones streamed */
+    private static final long IN_MEMORY_LIMIT = 32L * 1024 * 1024;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    
+    private final CompressionCodec codec;
+    private final int level;
+    private final CompressionPolicy policy;
+    private final BooleanSupplier keepGoing;
+    private final IoLimiter limiter;
+    
+    /**
+     * @param codec Codec to re-encode with
+     * @param level Codec level (-1 for the codec's default)
+     * @param keepGoing Checked before every entry; returning false abandons the run
+     * @param limiter Bandwidth caps for reading the source and writing the copy
+     */
+    public ArchiveRecompressor(CompressionCodec codec, int level, BooleanSupplier keepGoing, IoLimiter limiter) {
+        this.codec = codec;
+        this.level = codec.normalizeLevel(level);
+        this.policy = new CompressionPolicy(this.level != 0);
+        this.keepGoing = keepGoing;
+        this.limiter = limiter;
+    }
+    
+    /**
+     * Write a re-encoded copy of an archive and verify it
+     *
+     * @param source Archive to read
+     * @param target File to write the new archive to; deleted again if the run is abandoned or fails
+     * @return true if target now holds a complete, verified copy; false if abandoned
+     * @throws ZipException if the source archive is damaged
+     */
+    public boolean recompress(File source, File target) throws IOException {
+        boolean complete = false;
+        try {
+            try (ZipArchiveInput in = new ZipArchiveInput(source);
+                 ZipArchiveOutput out = new ZipArchiveOutput(target, limiter)) {
+                in.setIoLimiter(limiter);
+                out.setComment(ParallelZipWriter.COMMENT_PREFIX + codec.getName() + " level=" + level);
+                for (ZipArchiveInput.Entry entry : in.getEntries()) {
+                    if (!keepGoing.getAsBoolean()) {
+                        return false;
+                    }
+                    if (entry.getSize() <= IN_MEMORY_LIMIT) {
+                        copyInMemory(in, entry, out);
+                    } else {
+                        copyStreaming(in, entry, out);
+                    }
+                }
+                out.finish();
+            }
+            try (ZipArchiveInput check = new ZipArchiveInput(target)) {
+                check.setIoLimiter(limiter);
+                check.verify();
+            }
+            complete = true;
+            return true;
+        } finally {
+            if (!complete) {
+                target.delete();
+            }
+        }
+    }
+    
+    private void copyInMemory(ZipArchiveInput in, ZipArchiveInput.Entry entry, ZipArchiveOutput out) throws IOException {
+        byte[] data;
+        try (InputStream stream = in.getInputStream(entry)) {
+            data = stream.readAllBytes();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        checkIntegrity(entry, data.length, crc.getValue());
+        
+        if (policy.shouldCompress(entry.getName(), data, data.length)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(32, data.length / 2));
+            try (OutputStream compressed = codec.compress(buffer, level)) {
+                compressed.write(data);
+            }
+            if (buffer.size() < data.length) {
+                byte[] bytes = buffer.toByteArray();
+                out.writeEntry(entry.getName(), codec.getZipMethod(), entry.getCrc(), data.length,
+                    entry.getLastModified(), bytes, bytes.length);
+                return;
+            }
+        }
+        out.writeEntry(entry.getName(), ZipArchiveOutput.METHOD_STORED, entry.getCrc(), data.length,
+            entry.getLastModified(), data, data.length);
+    }
+    
+    /**
+     * Stream a large entry, deciding on compression from its first bytes
+     */
+    private void copyStreaming(ZipArchiveInput in, ZipArchiveInput.Entry entry, ZipArchiveOutput out) throws IOException {
+        try (InputStream stream = in.getInputStream(entry)) {
+            byte[] sample = stream.readNBytes(SAMPLE_SIZE);
+            boolean compress = policy.shouldCompress(entry.getName(), sample, sample.length);
+            
+            OutputStream entryOut = out.beginStreamingEntry(entry.getName(),
+                compress ? codec.getZipMethod() : ZipArchiveOutput.METHOD_STORED, entry.getLastModified(), entry.getSize());
+            CRC32 crc = new CRC32();
+            long size = sample.length;
+            crc.update(sample);
+            // Closing the codec stream finishes its frame; closing entryOut is a no-op
+            try (OutputStream target = compress ? codec.compress(entryOut, level) : entryOut) {
+                target.write(sample);
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = stream.read(chunk)) > 0) {
+                    crc.update(chunk, 0, read);
+                    target.write(chunk, 0, read);
+                    size += read;
+                }
+            }
+            checkIntegrity(entry, size, crc.getValue());
+            out.closeStreamingEntry(crc.getValue(), size);
+        }
+    }
+    
+    private static void checkIntegrity(ZipArchiveInput.Entry entry, long size, long crc) throws ZipException {
+        if (size != entry.getSize() || crc != entry.getCrc()) {
+            throw new ZipException(entry.getName() + " is damaged (CRC or size mismatch), not recompressing");
+        }
+    }
+}
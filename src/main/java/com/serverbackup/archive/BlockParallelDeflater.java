@@ -0,0 +1,167 @@
+package com.serverbackup.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates one large stream using several threads (pigz-style)
+ *
+ * The input is cut into fixed-size blocks which are compressed concurrently. Each
+ * block is primed with the last 32 KB of the previous block as a preset dictionary
+ * and ended with a sync flush, so the compressed blocks simply concatenate into a
+ * single standard raw DEFLATE stream. Only the final block sets the end marker.
+ * Reading, CRC calculation and output stay on the calling thread and in order.
+ */
+public class BlockParallelDeflater {
+    
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    
+    private final ExecutorService executor;
+    private final int level;
+    private final int blockSize;
+    private final int maxInFlight;
+    
+    /**
+     * @param executor Pool that compresses the blocks
+     * @param level Deflate level (0-9, or -1 for default)
+     * @param blockSize Uncompressed bytes per block
+     * @param maxInFlight Maximum blocks read ahead of the output
+     */
+    public BlockParallelDeflater(ExecutorService executor, int level, int blockSize, int maxInFlight) {
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxInFlight = Math.max(2, maxInFlight);
+    }
+    
+    /**
+     * Compress everything from in and write the raw DEFLATE stream to out
+     *
+     * @return CRC-32 and length of the uncompressed data
+     */
+    public Result deflate(InputStream in, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        long total = 0;
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        
+        byte[] previous = null;
+        byte[] current = readBlock(in);
+        try {
+            if (current == null) {
+                // Empty input still needs a valid (final, empty) deflate stream
+                out.write(compressBlock(new byte[0], null, true));
+                return new Result(crc.getValue(), 0);
+            }
+            
+            while (current != null) {
+                byte[] next = readBlock(in);
+                crc.update(current);
+                total += current.length;
+                
+                byte[] block = current;
+                byte[] dictionary = previous != null ? tail(previous) : null;
+                boolean last = next == null;
+                inFlight.addLast(executor.submit(() -> compressBlock(block, dictionary, last)));
+                
+                while (inFlight.size() >= maxInFlight) {
+                    out.write(await(inFlight.removeFirst()));
+                }
+                
+                previous = current;
+                current = next;
+            }
+            
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.removeFirst()));
+            }
+        } finally {
+            for (Future<byte[]> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        return new Result(crc.getValue(), total);
+    }
+    
+    private byte[] compressBlock(byte[] data, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] chunk = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(chunk);
+                    buffer.write(chunk, 0, n);
+                }
+            } else {
+                // SYNC_FLUSH ends the block on a byte boundary without the final-block bit
+                int n;
+                do {
+                    n = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                    buffer.write(chunk, 0, n);
+                } while (n == chunk.length);
+            }
+            return buffer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = in.readNBytes(blockSize);
+        if (block.length == 0) {
+            return null;
+        }
+        return block;
+    }
+    
+    private static byte[] tail(byte[] data) {
+        if (data.length <= DICTIONARY_SIZE) {
+            return data;
+        }
+        return Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length);
+    }
+    
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing block", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Block compression failed", e.getCause());
+        }
+    }
+    
+    /**
+     * CRC and uncompressed length of a deflated stream
+     */
+    public static class Result {
+        private final long crc;
+        private final long size;
+        
+        public Result(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+        
+        public long getCrc() { return crc; }
+        public long getSize() { return size; }
+    }
+}
@@ -0,0 +1,143 @@
+package com.serverbackup.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides per file whether compressing is worth the CPU time
+ *
+ * Much of a world is already compressed: region chunks are zlib streams, level.dat
+ * and player data are gzipped NBT, plugin jars are ZIPs. Compressing those again
+ * costs a lot of CPU for a few percent. Known formats are classified by extension;
+ * everything else (including region files, whose chunks may also be stored with
+ * LZ4 or uncompressed) is judged by deflating a small sample at the fastest level.
+ * The sample is a cheap estimate that holds for every codec: data deflate cannot
+ * shrink does not shrink meaningfully with zstd or LZ4 either.
+ */
+public class CompressionPolicy {
+    
+    /** Formats that are compressed already */
+    private static final Set<String> INCOMPRESSIBLE = Set.of(
+        "jar", "zip", "gz", "tgz", "xz", "bz2", "zst", "lz4", "7z", "rar",
+        "png", "jpg", "jpeg", "gif", "webp", "ogg", "mp3",
+        "dat", "dat_old", "nbt", "mcc", "schem", "schematic", "litematic");
+    
+    /** Text formats that always shrink well */
+    private static final Set<String> COMPRESSIBLE = Set.of(
+        "json", "yml", "yaml", "txt", "log", "properties", "toml", "conf", "cfg", "csv", "xml", "sk", "js");
+    
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    
+    /** Region files start with two 4 KB tables that compress well; sample the chunks after them */
+    private static final int REGION_HEADER = 8192;
+    
+    /** Deflated sample must be at most this fraction of the input */
+    private static final double MAX_SAMPLE_RATIO = 0.9;
+    
+    private final boolean enabled;
+    
+    /**
+     * @param enabled false to store everything (compression level 0)
+     */
+    public CompressionPolicy(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * File type used for classification and reporting: the lower-case extension,
+     * or "(none)" for files without one
+     */
+    public static String typeOf(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) {
+            return "(none)";
+        }
+        return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Decide for data held in memory
+     */
+    public boolean shouldCompress(String path, byte[] data, int length) {
+        Boolean known = classify(path);
+        if (known != null) {
+            return known;
+        }
+        int start = sampleStart(path, length);
+        return isCompressible(data, start, Math.min(SAMPLE_SIZE, length - start));
+    }
+    
+    /**
+     * Decide for a file on disk by reading a sample of it
+     */
+    public boolean shouldCompress(String path, File file) throws IOException {
+        Boolean known = classify(path);
+        if (known != null) {
+            return known;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            int start = sampleStart(path, length);
+            byte[] sample = new byte[(int) Math.min(SAMPLE_SIZE, length - start)];
+            in.seek(start);
+            in.readFully(sample);
+            return isCompressible(sample, 0, sample.length);
+        }
+    }
+    
+    private Boolean classify(String path) {
+        if (!enabled) {
+            return false;
+        }
+        String type = typeOf(path);
+        if (INCOMPRESSIBLE.contains(type)) {
+            return false;
+        }
+        if (COMPRESSIBLE.contains(type)) {
+            return true;
+        }
+        return null;
+    }
+    
+    /**
+     * Sample from the middle of the file, past the region header for region files
+     */
+    private static int sampleStart(String path, long length) {
+        if (length <= SAMPLE_SIZE) {
+            return 0;
+        }
+        if (typeOf(path).equals("mca") && length >= REGION_HEADER + SAMPLE_SIZE) {
+            return (int) Math.max(REGION_HEADER, Math.min(length / 2, Integer.MAX_VALUE) - SAMPLE_SIZE / 2);
+        }
+        return (int) Math.min((length - SAMPLE_SIZE) / 2, Integer.MAX_VALUE - SAMPLE_SIZE);
+    }
+    
+    private static boolean isCompressible(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return false;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            int limit = (int) (length * MAX_SAMPLE_RATIO);
+            byte[] out = new byte[Math.max(limit, 1)];
+            int produced = 0;
+            while (!deflater.finished() && produced < limit) {
+                produced += deflater.deflate(out, produced, limit - produced);
+            }
+            return deflater.finished();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.serverbackup.archive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per file type totals of what went into an archive and how well it compressed
+ */
+public class CompressionReport {
+    
+    private final Map<String, TypeStats> types = new HashMap<>();
+    
+    /**
+     * Totals for one file type
+     */
+    public static class TypeStats {
+        private final String type;
+        private int files;
+        private int storedFiles;
+        private long rawBytes;
+        private long archivedBytes;
+        
+        TypeStats(String type) {
+            this.type = type;
+        }
+        
+        public String getType() { return type; }
+        public int getFiles() { return files; }
+        
+        /**
+         * Files written uncompressed (STORED)
+         */
+        public int getStoredFiles() { return storedFiles; }
+        
+        public long getRawBytes() { return rawBytes; }
+        public long getArchivedBytes() { return archivedBytes; }
+        
+        /**
+         * Archived size as a fraction of the original size
+         */
+        public double getRatio() {
+            return rawBytes > 0 ? (double) archivedBytes / rawBytes : 1.0;
+        }
+    }
+    
+    void record(String type, boolean stored, long rawBytes, long archivedBytes) {
+        TypeStats stats = types.computeIfAbsent(type, TypeStats::new);
+        stats.files++;
+        if (stored) {
+            stats.storedFiles++;
+        }
+        stats.rawBytes += rawBytes;
+        stats.archivedBytes += archivedBytes;
+    }
+    
+    /**
+     * All file types, largest original size first
+     */
+    public List<TypeStats> getTypes() {
+        List<TypeStats> sorted = new ArrayList<>(types.values());
+        sorted.sort((a, b) -> Long.compare(b.rawBytes, a.rawBytes));
+        return Collections.unmodifiableList(sorted);
+    }
+    
+    /**
+     * One line per type, e.g. ".mca: 120 files, 95.2% (120 stored)"
+     *
+     * @param maxTypes Number of (largest) types to include
+     */
+    public List<String> describe(int maxTypes) {
+        List<String> lines = new ArrayList<>();
+        for (TypeStats stats : getTypes()) {
+            if (lines.size() == maxTypes) {
+                break;
+            }
+            String label = stats.type.startsWith("(") ? stats.type : "." + stats.type;
+            lines.add(String.format("%s: %d files, %d -> %d bytes (%.1f%%, %d stored)",
+                label, stats.files, stats.rawBytes, stats.archivedBytes,
+                stats.getRatio() * 100, stats.storedFiles));
+        }
+        return lines;
+    }
+}
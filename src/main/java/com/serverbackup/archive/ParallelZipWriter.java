@@ -0,0 +1,598 @@
+package com.serverbackup.archive;
+
+import com.serverbackup.archive.codec.CompressionCodec;
+import com.serverbackup.archive.codec.CompressionCodecs;
+import com.serverbackup.incremental.FileIndex;
+import com.serverbackup.incremental.RegionDelta;
+import com.serverbackup.util.CancellationSignal;
+import com.serverbackup.util.IoLimiter;
+import com.serverbackup.util.ProgressTracker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Writes a ZIP archive while compressing entries concurrently
+ *
+ * Files are compressed into memory on the supplied executor and appended to the
+ * archive by the calling thread in whatever order they finish. Files larger than
+ * the in-memory limit are split into blocks that are deflated concurrently and
+ * stitched back into a single entry (see {@link BlockParallelDeflater}), so one
+ * huge database file no longer bounds the backup time. Buffered output is bounded
+ * so a world full of region files cannot exhaust the heap.
+ *
+ * Files that will not shrink (see {@link CompressionPolicy}) are written as
+ * STORED entries; the rest are compressed with the configured {@link CompressionCodec}
+ * and level. Only deflate is split into blocks; zstd and LZ4 stream large files
+ * on the calling thread, which they are fast enough for. The codec is recorded in
+ * the archive comment. What each file type compressed to is collected in a
+ * {@link CompressionReport}.
+ */
+public class ParallelZipWriter implements Closeable {
+    
+    /** Files up to this size are compressed in memory by a worker */
+    private static final long IN_MEMORY_LIMIT = 32L * 1024 * 1024;
+    
+    /** Upper bound on uncompressed bytes held by in-flight entries */
+    private static final long MAX_BUFFERED_BYTES = 256L * 1024 * 1024;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    /** Start of the archive comment, followed by the codec name and level */
+    public static final String COMMENT_PREFIX = "ServerBackup codec=";
+    
+    private final ZipArchiveOutput archive;
+    private final CompletionService<CompressedEntry> completion;
+    private final Set<Future<CompressedEntry>> pending = new HashSet<>();
+    private final Semaphore bufferBudget;
+    private final BlockParallelDeflater blockDeflater;
+    private final Logger logger;
+    private final IoLimiter limiter;
+    private final CompressionCodec codec;
+    private final int level;
+    private final CompressionPolicy policy;
+    private final CompressionReport report = new CompressionReport();
+    private FileIndex.Builder index = null;
+    private ProgressTracker progress = null;
+    private CancellationSignal cancellation = null;
+    private int outstanding = 0;
+    private int storedFiles = 0;
+    private int unchangedFiles = 0;
+    private int deltaFiles = 0;
+    
+    /**
+     * @param target Archive file to create
+     * @param executor Pool that performs the compression work
+     * @param parallelism Number of threads in the pool
+     * @param level Deflate level for compressible files (0-9, or -1 for default; 0 stores everything)
+     * @param logger Logger for skipped files
+     */
+    public ParallelZipWriter(File target, ExecutorService executor, int parallelism, int level, Logger logger) throws IOException {
+        this(target, executor, parallelism, CompressionCodecs.DEFLATE, level, IoLimiter.UNLIMITED, logger);
+    }
+    
+    /**
+     * @param target Archive file to create
+     * @param executor Pool that performs the compression work
+     * @param parallelism Number of threads in the pool
+     * @param codec Codec for compressible files
+     * @param level Codec level (-1 for the codec's default; 0 stores everything)
+     * @param limiter Bandwidth caps for reading source files and writing the archive
+     * @param logger Logger for skipped files
+     */
+    public ParallelZipWriter(File target, ExecutorService executor, int parallelism, CompressionCodec codec,
+                             int level, IoLimiter limiter, Logger logger) throws IOException {
+        this.codec = codec;
+        this.level = codec.normalizeLevel(level);
+        this.limiter = limiter;
+        this.archive = new ZipArchiveOutput(target, limiter);
+        this.archive.setComment(COMMENT_PREFIX + codec.getName() + " level=" + this.level);
+        this.completion = new ExecutorCompletionService<>(executor);
+        this.bufferBudget = new Semaphore(toKilobytes(MAX_BUFFERED_BYTES));
+        this.blockDeflater = codec.getZipMethod() == ZipArchiveOutput.METHOD_DEFLATED
+            ? new BlockParallelDeflater(executor, this.level, BlockParallelDeflater.DEFAULT_BLOCK_SIZE, parallelism * 2)
+            : null;
+        this.policy = new CompressionPolicy(this.level != 0);
+        this.logger = logger;
+    }
+    
+    /**
+     * Codec name recorded in an archive comment written by this class
+     * 
+     * @return Codec name, or "deflate" for archives from before codecs were selectable
+     */
+    public static String codecOf(String comment) {
+        if (comment == null || !comment.startsWith(COMMENT_PREFIX)) {
+            return CompressionCodecs.DEFLATE.getName();
+        }
+        String rest = comment.substring(COMMENT_PREFIX.length());
+        int space = rest.indexOf(' ');
+        return space < 0 ? rest : rest.substring(0, space);
+    }
+    
+    /**
+     * Record every file into the given index. If the index has a parent, files
+     * that did not change since the parent backup are left out of the archive.
+     */
+    public void setIndex(FileIndex.Builder index) {
+        this.index = index;
+    }
+    
+    /**
+     * Number of files written into the archive
+     */
+    public int getStoredFiles() {
+        return storedFiles;
+    }
+    
+    /**
+     * Number of files skipped because the parent backup already holds them
+     */
+    public int getUnchangedFiles() {
+        return unchangedFiles;
+    }
+    
+    /**
+     * Number of region files stored as chunk deltas (included in stored files)
+     */
+    public int getDeltaFiles() {
+        return deltaFiles;
+    }
+    
+    /**
+     * Original and archived size per file type of everything written so far
+     */
+    public CompressionReport getCompressionReport() {
+        return report;
+    }
+    
+    /**
+     * Report every file added (or skipped as unchanged) to this tracker
+     */
+    public void setProgress(ProgressTracker progress) {
+        this.progress = progress;
+    }
+    
+    /**
+     * Stop with a {@link com.serverbackup.util.BackupCancelledException} once
+     * this signal is cancelled, checked before every file and every block read
+     * from a large file
+     */
+    public void setCancellation(CancellationSignal cancellation) {
+        this.cancellation = cancellation;
+    }
+    
+    /**
+     * Add every file below a folder
+     *
+     * @param folder Folder on disk
+     * @param parentPath Path prefix inside the archive
+     */
+    public void addFolder(File folder, String parentPath) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addFolder(file, parentPath + "/" + file.getName());
+            } else {
+                addFile(file, parentPath + "/" + file.getName());
+            }
+        }
+    }
+    
+    /**
+     * Add a single file under the given entry name
+     */
+    public void addFile(File file, String entryName) throws IOException {
+        checkCancelled();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        
+        FileIndex.FileState previous = null;
+        if (index != null && index.getParent() != null) {
+            previous = index.getParent().get(entryName);
+            if (previous != null && previous.matches(size, lastModified)) {
+                index.unchanged(entryName, size, lastModified, previous);
+                unchangedFiles++;
+                reportProgress(size, 0);
+                return;
+            }
+        }
+        
+        if (size > IN_MEMORY_LIMIT) {
+            writeStreaming(file, entryName);
+            return;
+        }
+        
+        int permits = Math.max(1, toKilobytes(size));
+        while (!bufferBudget.tryAcquire(permits)) {
+            if (!writeCompleted(true)) {
+                // Nothing in flight yet the budget is exhausted: cannot happen unless
+                // permits were leaked, so fall back to a blocking acquire
+                bufferBudget.acquireUninterruptibly(permits);
+                break;
+            }
+        }
+        
+        FileIndex.FileState parentState = previous;
+        if (index != null && RegionDelta.isRegionFile(entryName)) {
+            pending.add(completion.submit(() -> compressRegion(file, entryName, permits, parentState)));
+        } else {
+            pending.add(completion.submit(() -> compress(file, entryName, permits, parentState)));
+        }
+        outstanding++;
+        
+        // Opportunistically flush whatever has finished so far
+        while (writeCompleted(false)) {
+            // keep draining
+        }
+    }
+    
+    /**
+     * Add a small generated entry (stored uncompressed) from memory
+     */
+    public void addEntry(String entryName, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        archive.writeEntry(entryName, ZipArchiveOutput.METHOD_STORED, crc.getValue(), content.length,
+            System.currentTimeMillis(), content, content.length);
+    }
+    
+    /**
+     * Wait for all workers and write the central directory
+     */
+    public void finish() throws IOException {
+        while (outstanding > 0) {
+            writeCompleted(true);
+        }
+        archive.finish();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (Future<CompressedEntry> future : pending) {
+            future.cancel(true);
+        }
+        archive.close();
+    }
+    
+    /**
+     * Write one finished entry to the archive
+     *
+     * @param block Wait for a worker to finish if none is ready
+     * @return true if an entry was consumed
+     */
+    private boolean writeCompleted(boolean block) throws IOException {
+        if (outstanding == 0) return false;
+        
+        Future<CompressedEntry> future;
+        try {
+            future = block ? completion.poll(1, TimeUnit.SECONDS) : completion.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression", e);
+        }
+        if (future == null) {
+            return block;
+        }
+        
+        outstanding--;
+        pending.remove(future);
+        CompressedEntry entry;
+        try {
+            entry = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Compression failed", cause);
+        }
+        
+        try {
+            if (entry.unchanged) {
+                index.unchanged(entry.path, entry.fileSize, entry.lastModified, entry.previous);
+                unchangedFiles++;
+            } else if (entry.data != null) {
+                archive.writeEntry(entry.name, entry.method, entry.crc, entry.size,
+                    entry.lastModified, entry.data, entry.length);
+                report.record(CompressionPolicy.typeOf(entry.path), entry.method == ZipArchiveOutput.METHOD_STORED,
+                    entry.size, entry.length);
+                if (index != null) {
+                    index.stored(entry.path, entry.fileSize, entry.lastModified, entry.hash,
+                        entry.chunkDelta, entry.chunkTimestamps);
+                }
+                storedFiles++;
+                if (entry.chunkDelta) {
+                    deltaFiles++;
+                }
+            }
+            reportProgress(entry.fileSize, entry.unchanged ? 0 : entry.length);
+        } finally {
+            bufferBudget.release(entry.permits);
+        }
+        return true;
+    }
+    
+    /**
+     * Worker task: read a file into memory and compress it if worthwhile
+     *
+     * @param previous State in the parent backup, if the file existed there. When
+     *                 the content hash still matches, the data is dropped again.
+     */
+    private CompressedEntry compress(File file, String entryName, int permits,
+                                     FileIndex.FileState previous) throws IOException {
+        checkCancelled();
+        CompressedEntry entry = new CompressedEntry(entryName, permits);
+        entry.lastModified = file.lastModified();
+        
+        byte[] content;
+        try {
+            limiter.acquireRead(file.length());
+            content = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            if (isLocked(e)) {
+                logger.warning("Skipping locked file: " + file.getName());
+                return entry;
+            }
+            throw e;
+        }
+        
+        CRC32C hash = new CRC32C();
+        hash.update(content);
+        entry.hash = hash.getValue();
+        entry.fileSize = content.length;
+        if (previous != null && previous.getSize() == content.length && previous.getHash() == entry.hash) {
+            // Touched but identical content: the parent already holds it
+            entry.unchanged = true;
+            entry.previous = previous;
+            return entry;
+        }
+        
+        encode(entry, content);
+        return entry;
+    }
+    
+    /**
+     * Worker task for region files when an index is kept
+     *
+     * Records the chunk timestamp table and, if the parent backup has one too,
+     * stores only the chunks saved since then as a {@link RegionDelta}.
+     */
+    private CompressedEntry compressRegion(File file, String entryName, int permits,
+                                           FileIndex.FileState previous) throws IOException {
+        checkCancelled();
+        CompressedEntry entry = new CompressedEntry(entryName, permits);
+        entry.lastModified = file.lastModified();
+        
+        byte[] region;
+        try {
+            limiter.acquireRead(file.length());
+            region = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            if (isLocked(e)) {
+                logger.warning("Skipping locked file: " + file.getName());
+                return entry;
+            }
+            throw e;
+        }
+        
+        CRC32C hash = new CRC32C();
+        hash.update(region);
+        entry.hash = hash.getValue();
+        entry.fileSize = region.length;
+        if (previous != null && previous.getSize() == region.length && previous.getHash() == entry.hash) {
+            entry.unchanged = true;
+            entry.previous = previous;
+            return entry;
+        }
+        entry.chunkTimestamps = RegionDelta.readTimestamps(region, region.length);
+        
+        byte[] payload = region;
+        if (previous != null && previous.getChunkTimestamps() != null && entry.chunkTimestamps != null) {
+            byte[] delta = RegionDelta.encode(region, previous.getChunkTimestamps());
+            // Only worth it when most chunks are untouched
+            if (delta != null && delta.length < region.length / 4 * 3) {
+                payload = delta;
+                entry.name = entryName + RegionDelta.ENTRY_SUFFIX;
+                entry.chunkDelta = true;
+            }
+        }
+        
+        encode(entry, payload);
+        return entry;
+    }
+    
+    /**
+     * Fill in the archive data of an entry: compressed if the policy expects it to
+     * shrink and it actually did, STORED otherwise
+     */
+    private void encode(CompressedEntry entry, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        entry.crc = crc.getValue();
+        entry.size = payload.length;
+        
+        if (policy.shouldCompress(entry.name, payload, payload.length)) {
+            ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream(Math.max(32, payload.length / 2));
+            try (OutputStream out = codec.compress(buffer, level)) {
+                out.write(payload);
+            }
+            if (buffer.size() < payload.length) {
+                entry.method = codec.getZipMethod();
+                entry.data = buffer.buffer();
+                entry.length = buffer.size();
+                return;
+            }
+        }
+        
+        entry.method = ZipArchiveOutput.METHOD_STORED;
+        entry.data = payload;
+        entry.length = payload.length;
+    }
+    
+    /**
+     * Write a large file directly into the archive: deflated block-parallel,
+     * streamed through the codec, or copied as a STORED entry if it will not shrink
+     */
+    private void writeStreaming(File file, String entryName) throws IOException {
+        InputStream in;
+        boolean compress;
+        try {
+            in = cancellable(limiter.throttle(new FileInputStream(file)));
+            compress = policy.shouldCompress(entryName, file);
+        } catch (IOException e) {
+            if (isLocked(e)) {
+                logger.warning("Skipping locked file: " + file.getName());
+                return;
+            }
+            throw e;
+        }
+        
+        long lastModified = file.lastModified();
+        long start = archive.getBytesWritten();
+        CRC32C hash = new CRC32C();
+        try (InputStream input = new CheckedInputStream(new BufferedInputStream(in, BUFFER_SIZE), hash)) {
+            long crc;
+            long size;
+            if (compress && blockDeflater != null) {
+                OutputStream entryOut = archive.beginStreamingEntry(entryName, ZipArchiveOutput.METHOD_DEFLATED,
+                    lastModified, file.length());
+                BlockParallelDeflater.Result result = blockDeflater.deflate(input, entryOut);
+                crc = result.getCrc();
+                size = result.getSize();
+            } else {
+                OutputStream entryOut = archive.beginStreamingEntry(entryName,
+                    compress ? codec.getZipMethod() : ZipArchiveOutput.METHOD_STORED, lastModified, file.length());
+                CRC32 checksum = new CRC32();
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                size = 0;
+                // Closing the codec stream finishes its frame; closing entryOut is a no-op
+                try (OutputStream out = compress ? codec.compress(entryOut, level) : entryOut) {
+                    while ((read = input.read(chunk)) > 0) {
+                        checksum.update(chunk, 0, read);
+                        out.write(chunk, 0, read);
+                        size += read;
+                    }
+                }
+                crc = checksum.getValue();
+            }
+            archive.closeStreamingEntry(crc, size);
+            report.record(CompressionPolicy.typeOf(entryName), !compress, size, archive.getBytesWritten() - start);
+            if (index != null) {
+                index.stored(entryName, size, lastModified, hash.getValue());
+            }
+            storedFiles++;
+            reportProgress(size, archive.getBytesWritten() - start);
+        }
+    }
+    
+    private void checkCancelled() throws IOException {
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
+    }
+    
+    /**
+     * Stream that checks for cancellation before every read, so a large file
+     * stops within one block
+     */
+    private InputStream cancellable(InputStream in) {
+        if (cancellation == null) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                checkCancelled();
+                return super.read();
+            }
+            
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                checkCancelled();
+                return super.read(buffer, offset, length);
+            }
+        };
+    }
+    
+    private void reportProgress(long read, long written) {
+        if (progress != null) {
+            progress.fileDone(read, written);
+        }
+    }
+    
+    private static boolean isLocked(IOException e) {
+        return e.getMessage() != null && e.getMessage().contains("locked");
+    }
+    
+    private static int toKilobytes(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, (bytes + 1023) / 1024);
+    }
+    
+    /**
+     * Result of compressing one file on a worker
+     */
+    private static class CompressedEntry {
+        final String path;
+        final int permits;
+        String name;
+        int method;
+        long crc;
+        long hash;
+        long size;
+        long fileSize;
+        boolean chunkDelta;
+        int[] chunkTimestamps;
+        long lastModified;
+        byte[] data;
+        int length;
+        boolean unchanged;
+        FileIndex.FileState previous;
+        
+        CompressedEntry(String path, int permits) {
+            this.path = path;
+            this.name = path;
+            this.permits = permits;
+        }
+    }
+    
+    /**
+     * ByteArrayOutputStream that hands out its buffer without copying
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+        
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
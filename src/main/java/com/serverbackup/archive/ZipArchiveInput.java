@@ -0,0 +1,376 @@
+package com.serverbackup.archive;
+
+import com.serverbackup.archive.codec.CompressionCodec;
+import com.serverbackup.archive.codec.CompressionCodecs;
+import com.serverbackup.util.IoLimiter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Low-level ZIP container reader, the counterpart of {@link ZipArchiveOutput}
+ *
+ * ZipFile only understands STORED and DEFLATED entries. This reader decodes every
+ * entry with the codec registered for its compression method, so archives written
+ * with zstd or LZ4 can be restored and verified. Entry streams read the file with
+ * positional reads and may be used from several threads at once.
+ */
+public class ZipArchiveInput implements Closeable {
+    
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final File file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String comment = "";
+    private volatile IoLimiter limiter = IoLimiter.UNLIMITED;
+    
+    public ZipArchiveInput(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Read only the archive comment, without loading the central directory
+     */
+    public static String readComment(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer tail = readTail(channel);
+            int eocd = findEndRecord(tail);
+            return readCommentAt(tail, eocd);
+        }
+    }
+    
+    /**
+     * Charge reads of entry data (and files written by {@link #extractTo}) to these caps
+     */
+    public void setIoLimiter(IoLimiter limiter) {
+        this.limiter = limiter;
+    }
+    
+    public String getComment() {
+        return comment;
+    }
+    
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+    
+    /**
+     * @return Entry with this name, or null if the archive has none
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+    
+    /**
+     * Open the decompressed content of an entry
+     *
+     * @throws ZipException if the entry uses a compression method no codec is registered for
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = new BufferedInputStream(new RangeInputStream(dataStart(entry), entry.compressedSize), BUFFER_SIZE);
+        if (entry.method == ZipArchiveOutput.METHOD_STORED) {
+            return raw;
+        }
+        CompressionCodec codec = CompressionCodecs.byZipMethod(entry.method);
+        if (codec == null) {
+            raw.close();
+            throw new ZipException(entry.name + " uses unknown compression method " + entry.method);
+        }
+        return codec.decompress(raw);
+    }
+    
+    /**
+     * Decompress every entry and compare its size and CRC-32 with the central directory
+     *
+     * @return Number of entries checked
+     * @throws ZipException naming the first entry that is damaged
+     */
+    public int verify() throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (Entry entry : entries.values()) {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (InputStream in = getInputStream(entry)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            } catch (ZipException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new ZipException(entry.name + " cannot be decompressed: " + e.getMessage());
+            }
+            if (size != entry.size || crc.getValue() != entry.crc) {
+                throw new ZipException(entry.name + " is damaged (CRC or size mismatch)");
+            }
+        }
+        return entries.size();
+    }
+    
+    /**
+     * Write every file entry into a folder
+     *
+     * @return Number of files written
+     */
+    public int extractTo(File target) throws IOException {
+        String targetRoot = target.getCanonicalPath() + File.separator;
+        int extracted = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.name.endsWith("/")) continue;
+            File out = new File(target, entry.name);
+            if (!out.getCanonicalPath().startsWith(targetRoot)) {
+                throw new IOException("Refusing to extract outside target folder: " + entry.name);
+            }
+            out.getParentFile().mkdirs();
+            try (InputStream in = getInputStream(entry);
+                 OutputStream os = limiter.throttle(Files.newOutputStream(out.toPath()))) {
+                in.transferTo(os);
+            }
+            if (entry.lastModified > 0) {
+                out.setLastModified(entry.lastModified);
+            }
+            extracted++;
+        }
+        return extracted;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private void readCentralDirectory() throws IOException {
+        ByteBuffer tail = readTail(channel);
+        int eocd = findEndRecord(tail);
+        comment = readCommentAt(tail, eocd);
+        
+        long count = tail.getShort(eocd + 10) & 0xFFFF;
+        long centralSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long centralStart = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+        
+        if (count == ZIP64_MAGIC_COUNT || centralSize == ZIP64_MAGIC || centralStart == ZIP64_MAGIC) {
+            // Without a locator the values are genuine (e.g. exactly 65535 entries)
+            int locator = eocd - 20;
+            if (locator >= 0 && tail.getInt(locator) == 0x07064b50) {
+                long zip64End = tail.getLong(locator + 8);
+                ByteBuffer record = read(zip64End, 56);
+                if (record.getInt(0) != 0x06064b50) {
+                    throw new ZipException("Corrupt ZIP64 end record in " + file.getName());
+                }
+                count = record.getLong(32);
+                centralSize = record.getLong(40);
+                centralStart = record.getLong(48);
+            }
+        }
+        
+        if (centralSize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large in " + file.getName());
+        }
+        ByteBuffer central = read(centralStart, (int) centralSize);
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (central.getInt(pos) != 0x02014b50) {
+                throw new ZipException("Corrupt central directory in " + file.getName());
+            }
+            int method = central.getShort(pos + 10) & 0xFFFF;
+            long dosTime = central.getInt(pos + 12) & ZIP64_MAGIC;
+            long crc = central.getInt(pos + 16) & ZIP64_MAGIC;
+            long compressedSize = central.getInt(pos + 20) & ZIP64_MAGIC;
+            long size = central.getInt(pos + 24) & ZIP64_MAGIC;
+            int nameLength = central.getShort(pos + 28) & 0xFFFF;
+            int extraLength = central.getShort(pos + 30) & 0xFFFF;
+            int commentLength = central.getShort(pos + 32) & 0xFFFF;
+            long headerOffset = central.getInt(pos + 42) & ZIP64_MAGIC;
+            
+            byte[] name = new byte[nameLength];
+            central.get(pos + 46, name);
+            
+            // ZIP64 extra field: only the values that overflowed are present, in this order
+            int extra = pos + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = central.getShort(extra) & 0xFFFF;
+                int length = central.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    if (size == ZIP64_MAGIC) { size = central.getLong(field); field += 8; }
+                    if (compressedSize == ZIP64_MAGIC) { compressedSize = central.getLong(field); field += 8; }
+                    if (headerOffset == ZIP64_MAGIC) { headerOffset = central.getLong(field); }
+                }
+                extra += 4 + length;
+            }
+            
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), method, crc, size,
+                compressedSize, headerOffset, fromDosTime(dosTime));
+            entries.put(entry.name, entry);
+            pos = extraEnd + commentLength;
+        }
+    }
+    
+    /**
+     * Offset of the entry data, after its local header
+     */
+    private long dataStart(Entry entry) throws IOException {
+        if (entry.dataStart < 0) {
+            ByteBuffer header = read(entry.headerOffset, 30);
+            if (header.getInt(0) != 0x04034b50) {
+                throw new ZipException("Corrupt local header for " + entry.name + " in " + file.getName());
+            }
+            entry.dataStart = entry.headerOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        }
+        return entry.dataStart;
+    }
+    
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, position);
+        return buffer;
+    }
+    
+    private static ByteBuffer readTail(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int length = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT);
+        ByteBuffer tail = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, size - length);
+        return tail;
+    }
+    
+    private static int findEndRecord(ByteBuffer tail) throws ZipException {
+        for (int pos = tail.capacity() - EOCD_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) == 0x06054b50 && pos + EOCD_SIZE + (tail.getShort(pos + 20) & 0xFFFF) == tail.capacity()) {
+                return pos;
+            }
+        }
+        throw new ZipException("Not a ZIP archive (no end of central directory record)");
+    }
+    
+    private static String readCommentAt(ByteBuffer tail, int eocd) {
+        byte[] bytes = new byte[tail.getShort(eocd + 20) & 0xFFFF];
+        tail.get(eocd + EOCD_SIZE, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of ZIP archive");
+            }
+        }
+        buffer.flip();
+    }
+    
+    private static long fromDosTime(long dosTime) {
+        try {
+            return java.time.LocalDateTime.of(
+                (int) ((dosTime >> 25) & 0x7F) + 1980,
+                (int) ((dosTime >> 21) & 0x0F),
+                (int) ((dosTime >> 16) & 0x1F),
+                (int) ((dosTime >> 11) & 0x1F),
+                (int) ((dosTime >> 5) & 0x3F),
+                (int) ((dosTime << 1) & 0x3E))
+                .atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (java.time.DateTimeException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * One entry of the central directory
+     */
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final long headerOffset;
+        private final long lastModified;
+        private volatile long dataStart = -1;
+        
+        Entry(String name, int method, long crc, long size, long compressedSize, long headerOffset, long lastModified) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.headerOffset = headerOffset;
+            this.lastModified = lastModified;
+        }
+        
+        public String getName() { return name; }
+        public int getMethod() { return method; }
+        public long getCrc() { return crc; }
+        public long getSize() { return size; }
+        public long getCompressedSize() { return compressedSize; }
+        public long getLastModified() { return lastModified; }
+    }
+    
+    /**
+     * Stream over a byte range of the archive using positional reads
+     */
+    private class RangeInputStream extends InputStream {
+        private long position;
+        private final long end;
+        
+        RangeInputStream(long start, long length) {
+            this.position = start;
+            this.end = start + length;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int wanted = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, wanted), position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of ZIP archive");
+            }
+            limiter.acquireRead(read);
+            position += read;
+            return read;
+        }
+        
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
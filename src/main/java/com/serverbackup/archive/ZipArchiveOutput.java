@@ -0,0 +1,402 @@
+package com.serverbackup.archive;
+
+import com.serverbackup.util.IoLimiter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Low-level ZIP container writer
+ *
+ * Unlike ZipOutputStream this accepts entries whose data is already compressed,
+ * which lets compression happen on worker threads while a single thread appends
+ * finished entries to the file. ZIP64 records are written whenever sizes, offsets
+ * or the entry count outgrow the classic format.
+ */
+public class ZipArchiveOutput implements Closeable {
+    
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+    
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    
+    private final FileOutputStream file;
+    private final OutputStream out;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private long offset = 0;
+    private String comment = "";
+    private CentralEntry streaming = null;
+    private boolean finished = false;
+    
+    public ZipArchiveOutput(File file) throws IOException {
+        this(file, IoLimiter.UNLIMITED);
+    }
+    
+    /**
+     * @param limiter Write bandwidth cap the archive data is charged to
+     */
+    public ZipArchiveOutput(File file, IoLimiter limiter) throws IOException {
+        this.file = new FileOutputStream(file);
+        this.out = new BufferedOutputStream(limiter.throttle(this.file), 1 << 16);
+    }
+    
+    /**
+     * Set the archive comment written into the end of central directory record
+     */
+    public void setComment(String comment) {
+        this.comment = comment != null ? comment : "";
+    }
+    
+    /**
+     * Append an entry whose data has already been compressed
+     *
+     * @param name Entry name (forward slashes)
+     * @param method METHOD_STORED, METHOD_DEFLATED (raw deflate, no zlib header) or a codec's method id
+     * @param crc CRC-32 of the uncompressed data
+     * @param size Uncompressed size
+     * @param lastModified Modification time (epoch millis)
+     * @param data Compressed bytes
+     * @param length Number of valid bytes in data
+     */
+    public void writeEntry(String name, int method, long crc, long size, long lastModified,
+                           byte[] data, int length) throws IOException {
+        ensureIdle();
+        CentralEntry entry = new CentralEntry(name, method, lastModified, offset);
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = length;
+        entry.localZip64 = size >= ZIP64_MAGIC || length >= ZIP64_MAGIC;
+        writeLocalHeader(entry);
+        writeBytes(data, 0, length);
+        entries.add(entry);
+    }
+    
+    /**
+     * Start an entry whose compressed size is not known yet
+     *
+     * The caller writes compressed bytes to the returned stream and then calls
+     * {@link #closeStreamingEntry(long, long)}. A data descriptor follows deflated
+     * data. STORED entries get their local header patched in place instead, since
+     * many readers cannot handle STORED entries with a data descriptor.
+     *
+     * @param expectedSize Best guess of the uncompressed size, used to decide on ZIP64
+     */
+    public OutputStream beginStreamingEntry(String name, int method, long lastModified, long expectedSize) throws IOException {
+        ensureIdle();
+        CentralEntry entry = new CentralEntry(name, method, lastModified, offset);
+        if (method != METHOD_STORED) {
+            entry.flags |= FLAG_DATA_DESCRIPTOR;
+        }
+        // Leave headroom: incompressible data can grow slightly when deflated
+        entry.localZip64 = expectedSize >= ZIP64_MAGIC - (ZIP64_MAGIC >> 4);
+        writeLocalHeader(entry);
+        entry.dataStart = offset;
+        streaming = entry;
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writeByte(b);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeBytes(b, off, len);
+            }
+        };
+    }
+    
+    /**
+     * Finish the entry started with {@link #beginStreamingEntry}
+     *
+     * @param crc CRC-32 of the uncompressed data
+     * @param size Uncompressed size
+     */
+    public void closeStreamingEntry(long crc, long size) throws IOException {
+        if (streaming == null) {
+            throw new IllegalStateException("No streaming entry open");
+        }
+        CentralEntry entry = streaming;
+        streaming = null;
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = offset - entry.dataStart;
+        
+        if ((entry.flags & FLAG_DATA_DESCRIPTOR) == 0) {
+            patchLocalHeader(entry);
+            entries.add(entry);
+            return;
+        }
+        
+        boolean zip64Descriptor = entry.localZip64 || size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        writeInt(0x08074b50L);
+        writeInt(crc);
+        if (zip64Descriptor) {
+            writeLong(entry.compressedSize);
+            writeLong(size);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(size);
+        }
+        entries.add(entry);
+    }
+    
+    /**
+     * Number of entries written so far
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+    
+    /**
+     * Bytes written to the archive so far
+     */
+    public long getBytesWritten() {
+        return offset;
+    }
+    
+    /**
+     * Write the central directory and end records
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        ensureIdle();
+        finished = true;
+        
+        long centralStart = offset;
+        for (CentralEntry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long centralSize = offset - centralStart;
+        
+        boolean zip64 = entries.size() >= ZIP64_MAGIC_COUNT || centralStart >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndStart = offset;
+            // ZIP64 end of central directory record
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries.size());
+            writeLong(entries.size());
+            writeLong(centralSize);
+            writeLong(centralStart);
+            // ZIP64 end of central directory locator
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64EndStart);
+            writeInt(1);
+        }
+        
+        byte[] commentBytes = comment.getBytes(StandardCharsets.UTF_8);
+        int count = Math.min(entries.size(), ZIP64_MAGIC_COUNT);
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(count);
+        writeShort(count);
+        writeInt(Math.min(centralSize, ZIP64_MAGIC));
+        writeInt(Math.min(centralStart, ZIP64_MAGIC));
+        writeShort(commentBytes.length);
+        writeBytes(commentBytes, 0, commentBytes.length);
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            if (streaming == null) {
+                finish();
+            }
+        } finally {
+            out.close();
+        }
+    }
+    
+    private void ensureIdle() {
+        if (finished) {
+            throw new IllegalStateException("Archive already finished");
+        }
+        if (streaming != null) {
+            throw new IllegalStateException("Streaming entry still open: " + streaming.name);
+        }
+    }
+    
+    private void writeLocalHeader(CentralEntry entry) throws IOException {
+        boolean known = (entry.flags & FLAG_DATA_DESCRIPTOR) == 0;
+        writeInt(0x04034b50L);
+        writeShort(entry.versionNeeded());
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(known ? entry.crc : 0);
+        if (entry.localZip64) {
+            writeInt(ZIP64_MAGIC);
+            writeInt(ZIP64_MAGIC);
+        } else {
+            writeInt(known ? entry.compressedSize : 0);
+            writeInt(known ? entry.size : 0);
+        }
+        writeShort(entry.nameBytes.length);
+        writeShort(entry.localZip64 ? 20 : 0);
+        writeBytes(entry.nameBytes, 0, entry.nameBytes.length);
+        if (entry.localZip64) {
+            writeShort(0x0001);
+            writeShort(16);
+            writeLong(known ? entry.size : 0);
+            writeLong(known ? entry.compressedSize : 0);
+        }
+    }
+    
+    /**
+     * Fill in CRC and sizes of a local header written before they were known
+     */
+    private void patchLocalHeader(CentralEntry entry) throws IOException {
+        if (!entry.localZip64 && (entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC)) {
+            throw new IOException("Entry grew past 4 GB while being written: " + entry.name);
+        }
+        out.flush();
+        ByteBuffer crc = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        crc.putInt((int) entry.crc).flip();
+        file.getChannel().write(crc, entry.headerOffset + 14);
+        
+        if (entry.localZip64) {
+            ByteBuffer sizes = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            sizes.putLong(entry.size).putLong(entry.compressedSize).flip();
+            file.getChannel().write(sizes, entry.headerOffset + 30 + entry.nameBytes.length + 4);
+        } else {
+            ByteBuffer sizes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            sizes.putInt((int) entry.compressedSize).putInt((int) entry.size).flip();
+            file.getChannel().write(sizes, entry.headerOffset + 18);
+        }
+    }
+    
+    private void writeCentralHeader(CentralEntry entry) throws IOException {
+        boolean sizeOverflow = entry.size >= ZIP64_MAGIC;
+        boolean compressedOverflow = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = entry.headerOffset >= ZIP64_MAGIC;
+        int extraLength = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        
+        writeInt(0x02014b50L);
+        writeShort(45);
+        writeShort(entry.versionNeeded());
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(compressedOverflow ? ZIP64_MAGIC : entry.compressedSize);
+        writeInt(sizeOverflow ? ZIP64_MAGIC : entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(extraLength > 0 ? extraLength + 4 : 0);
+        writeShort(0); // comment length
+        writeShort(0); // disk number
+        writeShort(0); // internal attributes
+        writeInt(0);   // external attributes
+        writeInt(offsetOverflow ? ZIP64_MAGIC : entry.headerOffset);
+        writeBytes(entry.nameBytes, 0, entry.nameBytes.length);
+        if (extraLength > 0) {
+            writeShort(0x0001);
+            writeShort(extraLength);
+            if (sizeOverflow) writeLong(entry.size);
+            if (compressedOverflow) writeLong(entry.compressedSize);
+            if (offsetOverflow) writeLong(entry.headerOffset);
+        }
+    }
+    
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+        offset += 2;
+    }
+    
+    private void writeInt(long value) throws IOException {
+        out.write((int) (value & 0xFF));
+        out.write((int) ((value >>> 8) & 0xFF));
+        out.write((int) ((value >>> 16) & 0xFF));
+        out.write((int) ((value >>> 24) & 0xFF));
+        offset += 4;
+    }
+    
+    private void writeLong(long value) throws IOException {
+        writeInt(value & ZIP64_MAGIC);
+        writeInt(value >>> 32);
+    }
+    
+    private void writeByte(int b) throws IOException {
+        out.write(b);
+        offset++;
+    }
+    
+    private void writeBytes(byte[] data, int off, int len) throws IOException {
+        out.write(data, off, len);
+        offset += len;
+    }
+    
+    /**
+     * Convert epoch millis to the packed MS-DOS date/time used by ZIP headers
+     */
+    static long toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        int year = time.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+            | ((long) time.getMonthValue() << 21)
+            | ((long) time.getDayOfMonth() << 16)
+            | ((long) time.getHour() << 11)
+            | ((long) time.getMinute() << 5)
+            | (time.getSecond() >> 1);
+    }
+    
+    /**
+     * Bookkeeping for one entry's central directory record
+     */
+    private static class CentralEntry {
+        final String name;
+        final byte[] nameBytes;
+        final int method;
+        final long dosTime;
+        final long headerOffset;
+        int flags = FLAG_UTF8;
+        long crc;
+        long size;
+        long compressedSize;
+        long dataStart;
+        boolean localZip64;
+        
+        CentralEntry(String name, int method, long lastModified, long headerOffset) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.dosTime = toDosTime(lastModified);
+            this.headerOffset = headerOffset;
+        }
+        
+        int versionNeeded() {
+            if (localZip64 || size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC || headerOffset >= ZIP64_MAGIC) {
+                return 45;
+            }
+            if (method == METHOD_STORED) {
+                return 10;
+            }
+            // 6.3 introduced the newer methods such as zstd
+            return method == METHOD_DEFLATED ? 20 : 63;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.serverbackup.archive.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression algorithm that can be used for ZIP backup entries
+ *
+ * Each codec owns a ZIP compression method id. The id is written into every
+ * entry header, so restore and verify pick the decoder per entry and an archive
+ * stays readable whatever the configured codec is at the time. New codecs are
+ * made available with {@link CompressionCodecs#register(CompressionCodec)}.
+ */
+public interface CompressionCodec {
+    
+    /**
+     * Name used in config.yml and BackupOptions (lower case, e.g. "zstd")
+     */
+    String getName();
+    
+    /**
+     * ZIP compression method id written into the entry headers
+     */
+    int getZipMethod();
+    
+    /**
+     * Map a configured level onto one this codec accepts
+     *
+     * -1 selects the codec's default and 0 is kept as is: it means "store
+     * everything" for every codec. Other values are clamped to the codec's range.
+     */
+    int normalizeLevel(int level);
+    
+    /**
+     * Whether the codec can be used on this server (native libraries loaded)
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+    
+    /**
+     * Wrap a stream so that bytes written to it are compressed into {@code out}
+     *
+     * Closing the returned stream finishes the compressed data and closes {@code out}.
+     *
+     * @param level Level as returned by {@link #normalizeLevel(int)}, never 0
+     */
+    OutputStream compress(OutputStream out, int level) throws IOException;
+    
+    /**
+     * Wrap a stream of compressed data so that reading it yields the original bytes
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
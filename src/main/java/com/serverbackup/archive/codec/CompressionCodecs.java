@@ -0,0 +1,71 @@
+package com.serverbackup.archive.codec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the available compression codecs, by name and by ZIP method id
+ */
+public final class CompressionCodecs {
+    
+    public static final CompressionCodec DEFLATE = new DeflateCodec();
+    public static final CompressionCodec ZSTD = new ZstdCodec();
+    public static final CompressionCodec LZ4 = new Lz4Codec();
+    
+    private static final Map<String, CompressionCodec> BY_NAME = new ConcurrentHashMap<>();
+    private static final Map<Integer, CompressionCodec> BY_METHOD = new ConcurrentHashMap<>();
+    
+    static {
+        register(DEFLATE);
+        register(ZSTD);
+        register(LZ4);
+    }
+    
+    private CompressionCodecs() {
+    }
+    
+    /**
+     * Make a codec selectable by name and readable in restore and verify
+     *
+     * @throws IllegalArgumentException if the name or method id is already taken by another codec
+     */
+    public static void register(CompressionCodec codec) {
+        String name = codec.getName().toLowerCase(Locale.ROOT);
+        CompressionCodec byName = BY_NAME.putIfAbsent(name, codec);
+        if (byName != null && byName != codec) {
+            throw new IllegalArgumentException("Codec name already registered: " + name);
+        }
+        CompressionCodec byMethod = BY_METHOD.putIfAbsent(codec.getZipMethod(), codec);
+        if (byMethod != null && byMethod != codec) {
+            BY_NAME.remove(name, codec);
+            throw new IllegalArgumentException("ZIP method " + codec.getZipMethod() + " already used by " + byMethod.getName());
+        }
+    }
+    
+    /**
+     * @return Codec with this name (case insensitive), or null if unknown
+     */
+    public static CompressionCodec byName(String name) {
+        return name == null ? null : BY_NAME.get(name.trim().toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * @return Codec writing this ZIP method id, or null if unknown
+     */
+    public static CompressionCodec byZipMethod(int method) {
+        return BY_METHOD.get(method);
+    }
+    
+    /**
+     * Names of all registered codecs
+     */
+    public static Collection<String> getNames() {
+        List<String> names = new ArrayList<>(BY_NAME.keySet());
+        names.sort(null);
+        return names;
+    }
+}
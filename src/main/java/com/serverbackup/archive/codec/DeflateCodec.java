@@ -0,0 +1,67 @@
+package com.serverbackup.archive.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Raw deflate (ZIP method 8), readable by every ZIP tool
+ */
+public class DeflateCodec implements CompressionCodec {
+    
+    public static final int ZIP_METHOD = 8;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+    
+    @Override
+    public int getZipMethod() {
+        return ZIP_METHOD;
+    }
+    
+    @Override
+    public int normalizeLevel(int level) {
+        if (level < 0) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        return Math.min(level, Deflater.BEST_COMPRESSION);
+    }
+    
+    @Override
+    public OutputStream compress(OutputStream out, int level) {
+        Deflater deflater = new Deflater(level, true);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+    
+    @Override
+    public InputStream decompress(InputStream in) {
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.serverbackup.archive.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LZ4 frames through lz4-java, for servers where backup CPU time matters more
+ * than archive size
+ *
+ * Levels 1 and 2 use the fast compressor, 3 to 17 the high compression one.
+ * The ZIP application note assigns no method id to LZ4, so these archives can
+ * only be unpacked with /backuprestore extract.
+ */
+public class Lz4Codec implements CompressionCodec {
+    
+    /** Private method id ("L4"), outside the range the application note uses */
+    public static final int ZIP_METHOD = 0x4C34;
+    
+    private static final int FAST_LEVEL = 1;
+    private static final int MIN_HIGH_LEVEL = 3;
+    private static final int MAX_LEVEL = 17;
+    
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+    
+    @Override
+    public int getZipMethod() {
+        return ZIP_METHOD;
+    }
+    
+    @Override
+    public int normalizeLevel(int level) {
+        if (level < 0) {
+            return FAST_LEVEL;
+        }
+        return Math.min(level, MAX_LEVEL);
+    }
+    
+    @Override
+    public boolean isAvailable() {
+        try {
+            LZ4Factory.fastestInstance();
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+    
+    @Override
+    public OutputStream compress(OutputStream out, int level) throws IOException {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        LZ4Compressor compressor = level >= MIN_HIGH_LEVEL ? factory.highCompressor(level) : factory.fastCompressor();
+        return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB, -1L, compressor,
+            XXHashFactory.fastestInstance().hash32(), LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+    }
+    
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new LZ4FrameInputStream(in);
+    }
+}
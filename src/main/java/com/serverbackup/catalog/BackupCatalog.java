@@ -0,0 +1,353 @@
+package com.serverbackup.catalog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * In-memory list of all backups, so listing them does not scan the backup
+ * directory every time
+ *
+ * The catalog is kept in the ".catalog" file of the backup directory as an
+ * append-only log: a "+modified size name" line when a backup is added or
+ * changed, a "-name" line when it is removed. The log is replayed on startup
+ * and rewritten once it holds many more lines than there are backups.
+ *
+ * Backups added or removed outside the plugin are picked up by a reconcile
+ * that compares file names only. It runs on startup, and afterwards whenever
+ * the backup or snapshot directory's modification time changed, but at least
+ * once every {@link #RECONCILE_INTERVAL_MILLIS}. Known backups are not
+ * stat'ed again, so a reconcile costs one directory listing.
+ *
+ * Each backup's size is kept as well. For ZIPs it is the file size; for
+ * folder backups it is the combined size of their files, computed once when
+ * the backup is written. A folder whose modification time differs from the one
+ * recorded with its size counts as unknown, and so does a folder the reconcile
+ * found; the caller walks it once and records the result with
+ * {@link #add(File, long)}. Files changed deep inside a folder are not
+ * noticed; {@link #forgetFolderSizes()} has every folder measured again.
+ */
+public class BackupCatalog {
+    
+    public static final String CATALOG_FILE = ".catalog";
+    
+    /** Size of a backup that has not been measured yet */
+    public static final long UNKNOWN_SIZE = -1;
+    
+    /** Longest time the catalog trusts the directory modification times alone */
+    private static final long RECONCILE_INTERVAL_MILLIS = 60_000;
+    
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator
+        .comparingLong((Entry entry) -> entry.modified).reversed()
+        .thenComparing(entry -> entry.file.getName());
+    
+    private final File backupDirectory;
+    private final File snapshotDirectory;
+    private final String snapshotExtension;
+    private final Path file;
+    private final Logger logger;
+    
+    private final Map<String, Entry> byName = new HashMap<>();
+    private final TreeSet<Entry> ordered = new TreeSet<>(NEWEST_FIRST);
+    private List<File> listed;
+    private long totalSize;
+    private int logLines;
+    
+    private long backupDirectoryModified = -1;
+    private long snapshotDirectoryModified = -1;
+    private long reconciledAt;
+    
+    /**
+     * @param backupDirectory Folder holding ZIP and folder backups
+     * @param snapshotDirectory Folder holding repository snapshots
+     * @param snapshotExtension File extension of snapshots
+     */
+    public BackupCatalog(File backupDirectory, File snapshotDirectory, String snapshotExtension, Logger logger) {
+        this.backupDirectory = backupDirectory;
+        this.snapshotDirectory = snapshotDirectory;
+        this.snapshotExtension = snapshotExtension;
+        this.file = new File(backupDirectory, CATALOG_FILE).toPath();
+        this.logger = logger;
+        load();
+        reconcile();
+    }
+    
+    /**
+     * All backups, newest first. The list is shared and must not be modified.
+     */
+    public synchronized List<File> list() {
+        reconcileIfChanged();
+        if (listed == null) {
+            List<File> files = new ArrayList<>(ordered.size());
+            for (Entry entry : ordered) {
+                files.add(entry.file);
+            }
+            listed = Collections.unmodifiableList(files);
+        }
+        return listed;
+    }
+    
+    public synchronized int size() {
+        reconcileIfChanged();
+        return byName.size();
+    }
+    
+    /**
+     * Newest backup, or null if there is none
+     */
+    public synchronized File getLatest() {
+        reconcileIfChanged();
+        return ordered.isEmpty() ? null : ordered.first().file;
+    }
+    
+    /**
+     * Combined size of all ZIP and folder backups as recorded (snapshots share
+     * their data and are not counted, nor are folders not measured yet)
+     */
+    public synchronized long getTotalSize() {
+        reconcileIfChanged();
+        return totalSize;
+    }
+    
+    /**
+     * Recorded size of a backup
+     *
+     * @return Size, or {@link #UNKNOWN_SIZE} if the backup is not in the catalog,
+     *         was not measured yet, or is a folder that changed since
+     */
+    public synchronized long getSize(File backup) {
+        Entry entry = byName.get(backup.getName());
+        if (entry == null || (backup.isDirectory() && backup.lastModified() != entry.modified)) {
+            return UNKNOWN_SIZE;
+        }
+        return entry.size;
+    }
+    
+    /**
+     * Add a finished backup, or record that it changed (e.g. was recompressed).
+     * Folder backups are added with an unknown size.
+     *
+     * @param backup Backup file or folder, or a snapshot file
+     */
+    public synchronized void add(File backup) {
+        add(backup, backup.isDirectory() ? UNKNOWN_SIZE : backup.length());
+    }
+    
+    /**
+     * Add a backup or update it with a known size
+     *
+     * @param size Bytes the backup takes up, or {@link #UNKNOWN_SIZE}
+     */
+    public synchronized void add(File backup, long size) {
+        if (!backup.exists() || !accepts(backup)) {
+            return;
+        }
+        Entry entry = put(backup, backup.lastModified(), size);
+        append("+" + entry.modified + "\t" + entry.size + "\t" + entry.file.getName());
+    }
+    
+    /**
+     * Mark the sizes of all folder backups as unknown, so that they are
+     * measured again on the next size query
+     */
+    public synchronized void forgetFolderSizes() {
+        for (Entry entry : new ArrayList<>(ordered)) {
+            if (entry.size != UNKNOWN_SIZE && !entry.file.getParentFile().equals(snapshotDirectory)
+                    && entry.file.isDirectory()) {
+                put(entry.file, entry.modified, UNKNOWN_SIZE);
+            }
+        }
+    }
+    
+    /**
+     * Forget a deleted backup
+     */
+    public synchronized void remove(String backupName) {
+        if (drop(backupName)) {
+            append("-" + backupName);
+        }
+    }
+    
+    /**
+     * Compare the catalog with the backup and snapshot folders and pick up
+     * backups that were added or removed outside the plugin
+     */
+    public synchronized void reconcile() {
+        backupDirectoryModified = backupDirectory.lastModified();
+        snapshotDirectoryModified = snapshotDirectory.lastModified();
+        reconciledAt = System.currentTimeMillis();
+        
+        Set<String> present = new HashSet<>();
+        String[] backups = backupDirectory.list();
+        if (backups != null) {
+            for (String name : backups) {
+                // Only names not yet known need a stat
+                if (name.startsWith("backup-") && (name.endsWith(".zip") || byName.containsKey(name)
+                        || new File(backupDirectory, name).isDirectory())) {
+                    present.add(name);
+                }
+            }
+        }
+        String[] snapshots = snapshotDirectory.list();
+        if (snapshots != null) {
+            for (String name : snapshots) {
+                if (name.endsWith(snapshotExtension)) {
+                    present.add(name);
+                }
+            }
+        }
+        
+        int changes = 0;
+        for (String name : new ArrayList<>(byName.keySet())) {
+            if (!present.contains(name)) {
+                drop(name);
+                append("-" + name);
+                changes++;
+            }
+        }
+        for (String name : present) {
+            if (!byName.containsKey(name)) {
+                add(name.endsWith(snapshotExtension) ? new File(snapshotDirectory, name) : new File(backupDirectory, name));
+                changes++;
+            }
+        }
+        if (changes > 0) {
+            logger.fine("Backup catalog reconciled: " + changes + " backups added or removed on disk");
+        }
+        if (logLines > 64 && logLines > byName.size() * 2) {
+            compact();
+        }
+    }
+    
+    private void reconcileIfChanged() {
+        if (backupDirectory.lastModified() != backupDirectoryModified
+                || snapshotDirectory.lastModified() != snapshotDirectoryModified
+                || System.currentTimeMillis() - reconciledAt > RECONCILE_INTERVAL_MILLIS) {
+            reconcile();
+        }
+    }
+    
+    private boolean accepts(File backup) {
+        String name = backup.getName();
+        if (backup.getParentFile().equals(snapshotDirectory)) {
+            return name.endsWith(snapshotExtension);
+        }
+        return name.startsWith("backup-") && (name.endsWith(".zip") || backup.isDirectory());
+    }
+    
+    private Entry put(File backup, long modified, long size) {
+        drop(backup.getName());
+        Entry entry = new Entry(backup, modified, size);
+        byName.put(backup.getName(), entry);
+        ordered.add(entry);
+        if (!backup.getParentFile().equals(snapshotDirectory) && size > 0) {
+            totalSize += size;
+        }
+        listed = null;
+        return entry;
+    }
+    
+    private boolean drop(String backupName) {
+        Entry entry = byName.remove(backupName);
+        if (entry == null) {
+            return false;
+        }
+        ordered.remove(entry);
+        if (!entry.file.getParentFile().equals(snapshotDirectory) && entry.size > 0) {
+            totalSize -= entry.size;
+        }
+        listed = null;
+        return true;
+    }
+    
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logLines++;
+                if (line.startsWith("-")) {
+                    drop(line.substring(1));
+                    continue;
+                }
+                String[] parts = line.substring(1).split("\t", 3);
+                if (!line.startsWith("+") || parts.length != 3) {
+                    continue; // torn last line after a crash
+                }
+                try {
+                    String name = parts[2];
+                    File backup = name.endsWith(snapshotExtension)
+                        ? new File(snapshotDirectory, name) : new File(backupDirectory, name);
+                    put(backup, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    // ignore damaged lines, the reconcile restores the backup if it exists
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read " + CATALOG_FILE + ", rebuilding it: " + e.getMessage());
+        }
+    }
+    
+    private void append(String line) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(line);
+            writer.newLine();
+            logLines++;
+        } catch (IOException e) {
+            logger.warning("Failed to update " + CATALOG_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Rewrite the log with one line per backup
+     */
+    private void compact() {
+        Path temp = file.resolveSibling(CATALOG_FILE + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                // Oldest first, like a log written from scratch
+                for (Entry entry : ordered.descendingSet()) {
+                    writer.write("+" + entry.modified + "\t" + entry.size + "\t" + entry.file.getName());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logLines = byName.size();
+            // The rename changed the directory, which is not a change made outside the plugin
+            backupDirectoryModified = backupDirectory.lastModified();
+        } catch (IOException e) {
+            logger.warning("Failed to compact " + CATALOG_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    private static final class Entry {
+        private final File file;
+        private final long modified;
+        private final long size;
+        
+        Entry(File file, long modified, long size) {
+            this.file = file;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
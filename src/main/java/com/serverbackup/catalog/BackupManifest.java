@@ -0,0 +1,336 @@
+package com.serverbackup.catalog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a backup holds and how it was made, written once the backup is complete
+ *
+ * The header (type, format, worlds, codec, parent backup, timings, sizes and
+ * user metadata) comes first so backups can be listed without reading the file
+ * table behind it. File hashes are the CRC-32C the incremental index records for
+ * ZIP backups; folder backups and snapshots do not hash files while writing
+ * them and store 0.
+ */
+public class BackupManifest {
+    
+    private static final int MAGIC = 0x53424D46; // "SBMF"
+    private static final int VERSION = 1;
+    
+    public static final String FORMAT_ZIP = "zip";
+    public static final String FORMAT_FOLDER = "folder";
+    public static final String FORMAT_SNAPSHOT = "snapshot";
+    
+    private final String backupName;
+    private final String type;
+    private final String format;
+    private final long startedAt;
+    private final long finishedAt;
+    private final Set<String> worlds;
+    private final boolean includesPlugins;
+    private final String codec;
+    private final int level;
+    private final String parentName;
+    private final long totalSize;
+    private final long storedSize;
+    private final int fileCount;
+    private final Map<String, String> metadata;
+    private final List<FileEntry> files;
+    
+    private BackupManifest(String backupName, String type, String format, long startedAt, long finishedAt,
+                           Set<String> worlds, boolean includesPlugins, String codec, int level, String parentName,
+                           long totalSize, long storedSize, int fileCount, Map<String, String> metadata,
+                           List<FileEntry> files) {
+        this.backupName = backupName;
+        this.type = type;
+        this.format = format;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.worlds = worlds;
+        this.includesPlugins = includesPlugins;
+        this.codec = codec;
+        this.level = level;
+        this.parentName = parentName;
+        this.totalSize = totalSize;
+        this.storedSize = storedSize;
+        this.fileCount = fileCount;
+        this.metadata = metadata;
+        this.files = files;
+    }
+    
+    public String getBackupName() { return backupName; }
+    
+    /**
+     * Backup type name ("world" or "full")
+     */
+    public String getType() { return type; }
+    
+    /**
+     * One of {@link #FORMAT_ZIP}, {@link #FORMAT_FOLDER} or {@link #FORMAT_SNAPSHOT}
+     */
+    public String getFormat() { return format; }
+    
+    public long getStartedAt() { return startedAt; }
+    public long getFinishedAt() { return finishedAt; }
+    
+    public long getDurationMillis() {
+        return finishedAt - startedAt;
+    }
+    
+    /**
+     * Worlds actually stored in the backup
+     */
+    public Set<String> getWorlds() { return worlds; }
+    
+    public boolean includesPlugins() { return includesPlugins; }
+    
+    /**
+     * Codec of a ZIP backup, or null for other formats
+     */
+    public String getCodec() { return codec; }
+    
+    /**
+     * Codec level, -1 for the codec's default
+     */
+    public int getLevel() { return level; }
+    
+    /**
+     * Parent of an incremental backup, or null
+     */
+    public String getParentName() { return parentName; }
+    
+    /**
+     * Combined size of all files in the backup, uncompressed
+     */
+    public long getTotalSize() { return totalSize; }
+    
+    /**
+     * Disk space the backup took when written (archive size, copied bytes, or
+     * new repository data for snapshots)
+     */
+    public long getStoredSize() { return storedSize; }
+    
+    public int getFileCount() { return fileCount; }
+    
+    public Map<String, String> getMetadata() { return metadata; }
+    
+    /**
+     * File table; empty if only the header was read
+     */
+    public List<FileEntry> getFiles() { return files; }
+    
+    /**
+     * Same manifest for an archive that has been recompressed
+     */
+    public BackupManifest withArchive(String codec, int level, long storedSize) {
+        return new BackupManifest(backupName, type, format, startedAt, finishedAt, worlds, includesPlugins,
+            codec, level, parentName, totalSize, storedSize, fileCount, metadata, files);
+    }
+    
+    /**
+     * Header without the file table
+     */
+    BackupManifest header() {
+        return new BackupManifest(backupName, type, format, startedAt, finishedAt, worlds, includesPlugins,
+            codec, level, parentName, totalSize, storedSize, fileCount, metadata, Collections.emptyList());
+    }
+    
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(backupName);
+        out.writeUTF(type);
+        out.writeUTF(format);
+        out.writeLong(startedAt);
+        out.writeLong(finishedAt);
+        out.writeInt(worlds.size());
+        for (String world : worlds) {
+            out.writeUTF(world);
+        }
+        out.writeBoolean(includesPlugins);
+        out.writeUTF(codec != null ? codec : "");
+        out.writeInt(level);
+        out.writeUTF(parentName != null ? parentName : "");
+        out.writeLong(totalSize);
+        out.writeLong(storedSize);
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeInt(fileCount);
+        for (FileEntry file : files) {
+            out.writeUTF(file.getPath());
+            out.writeLong(file.getSize());
+            out.writeLong(file.getHash());
+        }
+    }
+    
+    /**
+     * Read a manifest; with headerOnly the file table is skipped
+     */
+    static BackupManifest read(DataInputStream in, boolean headerOnly) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a backup manifest");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported backup manifest version: " + version);
+        }
+        String backupName = in.readUTF();
+        String type = in.readUTF();
+        String format = in.readUTF();
+        long startedAt = in.readLong();
+        long finishedAt = in.readLong();
+        int worldCount = in.readInt();
+        Set<String> worlds = new LinkedHashSet<>();
+        for (int i = 0; i < worldCount; i++) {
+            worlds.add(in.readUTF());
+        }
+        boolean includesPlugins = in.readBoolean();
+        String codec = in.readUTF();
+        int level = in.readInt();
+        String parent = in.readUTF();
+        long totalSize = in.readLong();
+        long storedSize = in.readLong();
+        int metadataCount = in.readInt();
+        Map<String, String> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < metadataCount; i++) {
+            metadata.put(in.readUTF(), in.readUTF());
+        }
+        int fileCount = in.readInt();
+        List<FileEntry> files;
+        if (headerOnly) {
+            files = Collections.emptyList();
+        } else {
+            files = new ArrayList<>(fileCount);
+            for (int i = 0; i < fileCount; i++) {
+                files.add(new FileEntry(in.readUTF(), in.readLong(), in.readLong()));
+            }
+        }
+        return new BackupManifest(backupName, type, format, startedAt, finishedAt,
+            Collections.unmodifiableSet(worlds), includesPlugins, codec.isEmpty() ? null : codec, level,
+            parent.isEmpty() ? null : parent, totalSize, storedSize, fileCount,
+            Collections.unmodifiableMap(metadata), Collections.unmodifiableList(files));
+    }
+    
+    /**
+     * Start the manifest of a backup being written
+     *
+     * @param startedAt When the backup started, in epoch milliseconds
+     */
+    public static Builder builder(String backupName, String type, String format, long startedAt) {
+        return new Builder(backupName, type, format, startedAt);
+    }
+    
+    /**
+     * One file in the backup
+     */
+    public static class FileEntry {
+        private final String path;
+        private final long size;
+        private final long hash;
+        
+        public FileEntry(String path, long size, long hash) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+        }
+        
+        /**
+         * Path inside the backup, '/'-separated
+         */
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        
+        /**
+         * CRC-32C of the content, 0 if not recorded
+         */
+        public long getHash() { return hash; }
+    }
+    
+    public static class Builder {
+        private final String backupName;
+        private final String type;
+        private final String format;
+        private final long startedAt;
+        private final Set<String> worlds = new LinkedHashSet<>();
+        private boolean includesPlugins;
+        private String codec;
+        private int level = -1;
+        private String parentName;
+        private long storedSize;
+        private final Map<String, String> metadata = new LinkedHashMap<>();
+        private final List<FileEntry> files = new ArrayList<>();
+        
+        private Builder(String backupName, String type, String format, long startedAt) {
+            this.backupName = backupName;
+            this.type = type;
+            this.format = format;
+            this.startedAt = startedAt;
+        }
+        
+        public Builder addWorld(String world) {
+            worlds.add(world);
+            return this;
+        }
+        
+        public Builder setIncludesPlugins(boolean includesPlugins) {
+            this.includesPlugins = includesPlugins;
+            return this;
+        }
+        
+        public Builder setCodec(String codec, int level) {
+            this.codec = codec;
+            this.level = level;
+            return this;
+        }
+        
+        public Builder setParentName(String parentName) {
+            this.parentName = parentName;
+            return this;
+        }
+        
+        public Builder setStoredSize(long storedSize) {
+            this.storedSize = storedSize;
+            return this;
+        }
+        
+        /**
+         * Add user metadata; values are stored as their string form
+         */
+        public Builder addMetadata(Map<String, ?> metadata) {
+            for (Map.Entry<String, ?> entry : metadata.entrySet()) {
+                this.metadata.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            return this;
+        }
+        
+        public Builder addFile(String path, long size, long hash) {
+            files.add(new FileEntry(path, size, hash));
+            return this;
+        }
+        
+        /**
+         * Finish the manifest, taking the current time as the end of the backup
+         */
+        public BackupManifest build() {
+            long totalSize = 0;
+            for (FileEntry file : files) {
+                totalSize += file.getSize();
+            }
+            return new BackupManifest(backupName, type, format, startedAt, System.currentTimeMillis(),
+                Collections.unmodifiableSet(new LinkedHashSet<>(worlds)), includesPlugins, codec, level, parentName,
+                totalSize, storedSize, files.size(), Collections.unmodifiableMap(new LinkedHashMap<>(metadata)),
+                Collections.unmodifiableList(new ArrayList<>(files)));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.serverbackup.catalog;
+
+/**
+ * Storage tier of a ZIP backup in two-tier mode
+ */
+public enum BackupTier {
+    /** Written with the fast codec, waiting to be recompressed */
+    FAST,
+    /** Written with (or recompressed to) the final codec */
+    FINAL
+}
@@ -0,0 +1,121 @@
+package com.serverbackup.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists {@link BackupManifest}s in the ".manifest" folder of the backup directory
+ *
+ * Headers are cached once read, so listing backups repeatedly only touches the
+ * disk for backups it has not seen yet. Missing manifests are cached too (as
+ * absent) until a manifest for that backup is saved.
+ */
+public class ManifestStore {
+    
+    public static final String MANIFEST_FOLDER = ".manifest";
+    private static final String EXTENSION = ".mf";
+    
+    /** Cache value for backups without a readable manifest */
+    private static final BackupManifest NONE = BackupManifest.builder("", "", "", 0).build();
+    
+    private final File directory;
+    private final Logger logger;
+    private final Map<String, BackupManifest> headers = new ConcurrentHashMap<>();
+    
+    public ManifestStore(File backupDirectory, Logger logger) {
+        this.directory = new File(backupDirectory, MANIFEST_FOLDER);
+        this.logger = logger;
+    }
+    
+    /**
+     * Write a manifest atomically (temp file + rename)
+     */
+    public void save(BackupManifest manifest) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create manifest folder: " + directory);
+        }
+        Path target = fileFor(manifest.getBackupName()).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)))) {
+            manifest.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        headers.put(manifest.getBackupName(), manifest.header());
+    }
+    
+    /**
+     * Load the full manifest of a backup, including its file table
+     *
+     * @return Manifest or null if the backup has none (or it is unreadable)
+     */
+    public BackupManifest load(String backupName) {
+        return read(backupName, false);
+    }
+    
+    /**
+     * Header of a backup's manifest, from the cache if it was read before
+     *
+     * @return Header or null if the backup has no readable manifest
+     */
+    public BackupManifest loadHeader(String backupName) {
+        BackupManifest header = headers.computeIfAbsent(backupName, name -> {
+            BackupManifest read = read(name, true);
+            return read != null ? read : NONE;
+        });
+        return header != NONE ? header : null;
+    }
+    
+    /**
+     * Record that an archive was rewritten with another codec
+     */
+    public void updateArchive(String backupName, String codec, int level, long storedSize) {
+        BackupManifest manifest = load(backupName);
+        if (manifest == null) {
+            return;
+        }
+        try {
+            save(manifest.withArchive(codec, level, storedSize));
+        } catch (IOException e) {
+            logger.warning("Failed to update manifest of " + backupName + ": " + e.getMessage());
+        }
+    }
+    
+    public void delete(String backupName) {
+        headers.remove(backupName);
+        File file = fileFor(backupName);
+        if (file.exists() && !file.delete()) {
+            logger.warning("Could not delete backup manifest: " + file.getName());
+        }
+    }
+    
+    private BackupManifest read(String backupName, boolean headerOnly) {
+        File file = fileFor(backupName);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file.toPath()), 64 * 1024)))) {
+            return BackupManifest.read(in, headerOnly);
+        } catch (IOException e) {
+            logger.warning("Could not read backup manifest " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private File fileFor(String backupName) {
+        return new File(directory, backupName + EXTENSION);
+    }
+}
@@ -0,0 +1,115 @@
+package com.serverbackup.catalog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Records which backups are still in the fast tier
+ *
+ * Kept in the ".tiers" file of the backup directory, one "name=tier" line per
+ * backup in the order they were taken. Backups without an entry are final.
+ */
+public class TierCatalog {
+    
+    public static final String CATALOG_FILE = ".tiers";
+    
+    private final Path file;
+    private final Logger logger;
+    private final Map<String, BackupTier> tiers = new LinkedHashMap<>();
+    
+    public TierCatalog(File backupDirectory, Logger logger) {
+        this.file = new File(backupDirectory, CATALOG_FILE).toPath();
+        this.logger = logger;
+        load();
+    }
+    
+    /**
+     * Tier of a backup, FINAL for backups the catalog does not know
+     */
+    public synchronized BackupTier getTier(String backupName) {
+        return tiers.getOrDefault(backupName, BackupTier.FINAL);
+    }
+    
+    /**
+     * Record the tier of a backup
+     */
+    public synchronized void setTier(String backupName, BackupTier tier) throws IOException {
+        BackupTier previous = tier == BackupTier.FINAL ? tiers.remove(backupName) : tiers.put(backupName, tier);
+        if (previous != tier) {
+            save();
+        }
+    }
+    
+    /**
+     * Forget a deleted backup
+     */
+    public synchronized void remove(String backupName) {
+        if (tiers.remove(backupName) != null) {
+            try {
+                save();
+            } catch (IOException e) {
+                logger.warning("Failed to update " + CATALOG_FILE + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Backups waiting to be recompressed, oldest first
+     */
+    public synchronized List<String> getPending() {
+        List<String> pending = new ArrayList<>();
+        for (Map.Entry<String, BackupTier> entry : tiers.entrySet()) {
+            if (entry.getValue() == BackupTier.FAST) {
+                pending.add(entry.getKey());
+            }
+        }
+        return pending;
+    }
+    
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('=');
+                if (separator <= 0) continue;
+                try {
+                    tiers.put(line.substring(0, separator),
+                        BackupTier.valueOf(line.substring(separator + 1).trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Ignoring unknown tier in " + CATALOG_FILE + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read " + CATALOG_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Write the catalog atomically (temp file + rename)
+     */
+    private void save() throws IOException {
+        Path temp = file.resolveSibling(CATALOG_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, BackupTier> entry : tiers.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue().name().toLowerCase(Locale.ROOT));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,13 +1,18 @@
 package com.serverbackup.commands;
 
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.execution.StageExecutor;
 import com.serverbackup.integrations.luckperms.LuckPermsIntegration;
 import com.serverbackup.service.BackupService;
+import com.serverbackup.util.BackupSessionManager;
+import com.serverbackup.util.ProgressTracker;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.List;
+
 public class BackupCommand extends BaseCommand {
     
     public BackupCommand(ServerBackupPlugin plugin, BackupService backupService) {
@@ -83,24 +88,66 @@ public class BackupCommand extends BaseCommand {
         }
         
         if (args[0].equalsIgnoreCase("cancel")) {
-            sender.sendMessage(ChatColor.YELLOW + "Note: Backups run asynchronously and cannot be cancelled once started.");
+            BackupSessionManager.BackupSession running = backupService.getSessionManager().getRunningSession();
+            if (running == null) {
+                sender.sendMessage(ChatColor.GRAY + "No backup is running.");
+            } else if (running.cancel("Cancelled by " + sender.getName())) {
+                sender.sendMessage(ChatColor.YELLOW + "Cancelling the running " + running.getType()
+                    + " backup, the incomplete backup will be deleted.");
+            } else {
+                sender.sendMessage(ChatColor.GRAY + "The running backup is already being cancelled.");
+            }
             return true;
         }
         
         // Info command - show plugin status
-        if (args[0].equalsIgnoreCase("info") || args[0].equalsIgnoreCase("status")) {
+        if (args[0].equalsIgnoreCase("info")) {
             showPluginInfo(sender);
             return true;
         }
         
-        sendColoredMessage(sender, ChatColor.RED, "Usage: /backup [world|full|now|auto|info]");
+        // Status command - show progress of the running backup
+        if (args[0].equalsIgnoreCase("status")) {
+            showBackupStatus(sender);
+            return true;
+        }
+        
+        sendColoredMessage(sender, ChatColor.RED, "Usage: /backup [world|full|now|auto|info|status|cancel]");
         sendColoredMessage(sender, ChatColor.YELLOW, "  world  - Backup worlds only (default)");
         sendColoredMessage(sender, ChatColor.YELLOW, "  full   - Backup worlds and plugins");
         sendColoredMessage(sender, ChatColor.YELLOW, "  auto   - Toggle automatic backups");
         sendColoredMessage(sender, ChatColor.YELLOW, "  info   - Show plugin status & info");
+        sendColoredMessage(sender, ChatColor.YELLOW, "  status - Show progress of the running backup");
+        sendColoredMessage(sender, ChatColor.YELLOW, "  cancel - Stop the running backup");
         return true;
     }
     
+    private void showBackupStatus(CommandSender sender) {
+        BackupSessionManager.BackupSession running = backupService.getSessionManager().getRunningSession();
+        if (running == null) {
+            sender.sendMessage(ChatColor.GRAY + "No backup is running.");
+            return;
+        }
+        ProgressTracker progress = running.getProgress();
+        double percent = progress.getPercent();
+        sender.sendMessage(ChatColor.GOLD + "Backup in progress: " + ChatColor.WHITE + running.getType()
+            + (percent >= 0 ? ChatColor.YELLOW + String.format(" %.1f%%", percent) : ""));
+        sender.sendMessage(ChatColor.AQUA + "Files: " + ChatColor.WHITE + progress.getFilesDone()
+            + (progress.getEstimatedFiles() >= 0 ? " / ~" + progress.getEstimatedFiles() : ""));
+        sender.sendMessage(ChatColor.AQUA + "Data: " + ChatColor.WHITE + backupService.formatFileSize(progress.getBytesRead())
+            + (progress.getEstimatedBytes() >= 0 ? " / ~" + backupService.formatFileSize(progress.getEstimatedBytes()) : "")
+            + ChatColor.GRAY + " (" + backupService.formatFileSize(progress.getBytesWritten()) + " written)");
+        long eta = progress.getEtaMillis();
+        sender.sendMessage(ChatColor.AQUA + "Speed: " + ChatColor.WHITE
+            + backupService.formatFileSize(progress.getBytesPerSecond()) + "/s"
+            + ChatColor.AQUA + "  Elapsed: " + ChatColor.WHITE + running.getDuration() / 1000 + "s"
+            + ChatColor.AQUA + "  ETA: " + ChatColor.WHITE + (eta >= 0 ? eta / 1000 + "s" : "unknown")
+            + (running.isThrottled() ? ChatColor.YELLOW + " (throttled)" : ""));
+        if (running.getFailureCount() > 0) {
+            sender.sendMessage(ChatColor.RED + "Files that could not be backed up: " + running.getFailureCount());
+        }
+    }
+    
     private void showPluginInfo(CommandSender sender) {
         sender.sendMessage(ChatColor.GOLD + "╔═══════════════════════════════════════╗");
         sender.sendMessage(ChatColor.GOLD + "║   " + ChatColor.YELLOW + "ServerBackup Plugin v" + plugin.getDescription().getVersion() + ChatColor.GOLD + "   ║");
@@ -121,6 +168,41 @@ public class BackupCommand extends BaseCommand {
         boolean compress = plugin.getConfig().getBoolean("backup.compress", true);
         sender.sendMessage(ChatColor.AQUA + "Compression: " + (compress ? ChatColor.GREEN + "✓ Enabled" : ChatColor.YELLOW + "✗ Disabled"));
         
+        long readLimit = plugin.getConfig().getLong("performance.io-limit.read-mb-per-second", 0);
+        long writeLimit = plugin.getConfig().getLong("performance.io-limit.write-mb-per-second", 0);
+        sender.sendMessage(ChatColor.AQUA + "I/O limit: " + ChatColor.WHITE + "read " + formatLimit(readLimit)
+            + ", write " + formatLimit(writeLimit));
+        
+        BackupSessionManager.BackupSession running = backupService.getSessionManager().getRunningSession();
+        if (running != null) {
+            sender.sendMessage(ChatColor.AQUA + "Running backup: " + ChatColor.WHITE + running.getType()
+                + " (" + running.getDuration() / 1000 + "s)");
+            sender.sendMessage(ChatColor.GRAY + "  Read " + backupService.formatFileSize(running.getReadBytesPerSecond()) + "/s"
+                + ", write " + backupService.formatFileSize(running.getWriteBytesPerSecond()) + "/s"
+                + (running.isThrottled() ? ChatColor.YELLOW + " (throttled)" : ""));
+        } else {
+            List<BackupSessionManager.BackupSession> recent = backupService.getSessionManager().getRecentSessions();
+            if (!recent.isEmpty()) {
+                BackupSessionManager.BackupSession last = recent.get(0);
+                sender.sendMessage(ChatColor.AQUA + "Last backup: " + ChatColor.WHITE + last.getType()
+                    + " (" + last.getDuration() / 1000 + "s, "
+                    + (last.isSuccess() ? ChatColor.GREEN + "succeeded" : ChatColor.RED + "failed")
+                    + ChatColor.WHITE + ", " + (System.currentTimeMillis() - last.getEndTime()) / 1000 + "s ago)");
+            }
+        }
+        
+        List<StageExecutor> pools = backupService.getExecutors().getStarted();
+        if (!pools.isEmpty()) {
+            sender.sendMessage(ChatColor.AQUA + "Worker pools:");
+            for (StageExecutor pool : pools) {
+                sender.sendMessage(ChatColor.GRAY + "  " + pool.getStage().getDisplayName() + ": "
+                    + pool.getActiveCount() + "/" + pool.getMaximumPoolSize() + " busy, "
+                    + pool.getQueueDepth() + " queued, "
+                    + Math.round(pool.getAverageUtilization() * 100) + "% average use"
+                    + (pool.isVirtual() ? " (virtual threads)" : ""));
+            }
+        }
+        
         sender.sendMessage("");
         sender.sendMessage(ChatColor.GOLD + "Integrations:");
         sender.sendMessage(getIntegrationStatus("CoreProtect", plugin.getCoreProtectIntegration()));
@@ -130,6 +212,10 @@ public class BackupCommand extends BaseCommand {
         sender.sendMessage(ChatColor.GRAY + "  PlaceholderAPI: " + (papi ? ChatColor.GREEN + "✓ Active" : ChatColor.RED + "✗ Disabled"));
     }
     
+    private String formatLimit(long mbPerSecond) {
+        return mbPerSecond > 0 ? mbPerSecond + " MB/s" : "unlimited";
+    }
+    
     private String getIntegrationStatus(String name, Object integration) {
         if (integration == null) {
             return ChatColor.GRAY + "  " + name + ": " + ChatColor.RED + "✗ Not available";
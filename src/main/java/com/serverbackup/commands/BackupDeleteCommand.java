@@ -6,6 +6,8 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
+import java.util.List;
+
 public class BackupDeleteCommand extends BaseCommand {
     
     public BackupDeleteCommand(ServerBackupPlugin plugin, BackupService backupService) {
@@ -20,7 +22,7 @@ public class BackupDeleteCommand extends BaseCommand {
         }
         
         if (args.length == 0) {
-            sendColoredMessage(sender, ChatColor.RED, "Usage: /backupdelete <backup-name>");
+            sendColoredMessage(sender, ChatColor.RED, "Usage: /backupdelete <backup-name> [force]");
             return true;
         }
         
@@ -32,7 +34,20 @@ public class BackupDeleteCommand extends BaseCommand {
             return true;
         }
         
-        if (backupService.deleteBackup(backupName)) {
+        // Incremental backups restore files from their parents, so deleting a parent breaks them
+        boolean force = args.length > 1 && args[1].equalsIgnoreCase("force");
+        if (!force) {
+            List<String> dependents = backupService.getDependentBackups(backupName);
+            if (!dependents.isEmpty()) {
+                sendColoredMessage(sender, ChatColor.RED, backupName + " is still needed by incremental backups: "
+                    + String.join(", ", dependents));
+                sendColoredMessage(sender, ChatColor.YELLOW, "Delete those first, or run /backupdelete " + backupName
+                    + " force (they can then no longer be restored).");
+                return true;
+            }
+        }
+        
+        if (backupService.deleteBackup(backupName, force)) {
             String message = getMessage("backup-deleted").replace("{filename}", backupName);
             sender.sendMessage(message);
         } else {
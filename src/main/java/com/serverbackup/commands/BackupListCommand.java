@@ -1,6 +1,8 @@
 package com.serverbackup.commands;
 
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.catalog.BackupTier;
+import com.serverbackup.execution.BackupStage;
 import com.serverbackup.service.BackupService;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -36,20 +38,21 @@ public class BackupListCommand extends BaseCommand {
         sender.sendMessage("§7§m                                                    ");
         
         // Calculate sizes asynchronously to avoid blocking
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        backupService.getExecutors().execute(BackupStage.SCAN, () -> {
             long totalSize = 0;
             int index = 1;
             
             for (File backup : backups) {
-                long size = backup.isDirectory() ? getFolderSize(backup) : backup.length();
+                long size = backupService.getBackupSize(backup);
                 totalSize += size;
                 String sizeStr = backupService.formatFileSize(size);
                 String dateStr = dateFormat.format(new Date(backup.lastModified()));
                 
+                String tier = backupService.getBackupTier(backup.getName()) == BackupTier.FAST ? " §8[fast tier]" : "";
                 String message = getMessage("list-entry")
                     .replace("{filename}", backup.getName())
                     .replace("{size}", sizeStr)
-                    .replace("{date}", dateStr);
+                    .replace("{date}", dateStr) + tier;
                 
                 int finalIndex = index;
                 // Send message on main thread with numbering
@@ -69,23 +72,4 @@ public class BackupListCommand extends BaseCommand {
         
         return true;
     }
-    
-    /**
-     * Calculate folder size recursively
-     * WARNING: This method can be slow for large folders. Always call from async thread.
-     */
-    private long getFolderSize(File folder) {
-        long size = 0;
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    size += getFolderSize(file);
-                } else {
-                    size += file.length();
-                }
-            }
-        }
-        return size;
-    }
 }
@@ -1,6 +1,7 @@
 package com.serverbackup.commands;
 
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.execution.BackupStage;
 import com.serverbackup.service.BackupService;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -20,7 +21,7 @@ public class BackupRestoreCommand extends BaseCommand {
         }
         
         if (args.length == 0) {
-            sendColoredMessage(sender, ChatColor.RED, "Usage: /backuprestore <backup-name>");
+            sendColoredMessage(sender, ChatColor.RED, "Usage: /backuprestore <backup-name> [extract|verify]");
             return true;
         }
         
@@ -32,9 +33,50 @@ public class BackupRestoreCommand extends BaseCommand {
             return true;
         }
         
+        // Rebuild incremental / chunk-delta backups into a plain folder first
+        if (args.length > 1 && args[1].equalsIgnoreCase("extract")) {
+            sender.sendMessage(ChatColor.YELLOW + "Extracting " + backupName + "...");
+            backupService.getExecutors().execute(BackupStage.WRITE, () -> {
+                try {
+                    java.io.File folder = backupService.extractBackup(backupName);
+                    plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.GREEN + "Backup extracted to: " + folder.getName()));
+                } catch (Exception e) {
+                    plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.RED + "Extraction failed: " + e.getMessage()));
+                }
+            });
+            return true;
+        }
+        
+        // Decompress every entry and check it against its checksum
+        if (args.length > 1 && args[1].equalsIgnoreCase("verify")) {
+            sender.sendMessage(ChatColor.YELLOW + "Verifying " + backupName + "...");
+            backupService.getExecutors().execute(BackupStage.WRITE, () -> {
+                try {
+                    int entries = backupService.verifyBackup(backupName);
+                    plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.GREEN + "Backup is intact: " + entries + " entries verified"));
+                } catch (Exception e) {
+                    plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(ChatColor.RED + "Verification failed: " + e.getMessage()));
+                }
+            });
+            return true;
+        }
+        
+        String codec = backupService.getBackupCodec(backupName);
         sender.sendMessage(ChatColor.GOLD + "Backup restoration is a manual process:");
         sender.sendMessage(ChatColor.YELLOW + "1. Stop the server");
         sender.sendMessage(ChatColor.YELLOW + "2. Extract the backup file: " + backupName);
+        if (backupName.contains("-incremental") || backupService.isSnapshot(backupName)) {
+            sender.sendMessage(ChatColor.GRAY + "   (incremental or repository backup: run /backuprestore " + backupName + " extract first)");
+        } else if (codec != null && !codec.equals("deflate")) {
+            sender.sendMessage(ChatColor.GRAY + "   (compressed with " + codec
+                + ": most zip tools cannot open it, run /backuprestore " + backupName + " extract first)");
+        } else if (!backupName.endsWith(".zip")) {
+            sender.sendMessage(ChatColor.GRAY + "   (folder backup: copy it, never move it, or run /backuprestore " + backupName + " extract)");
+        }
         sender.sendMessage(ChatColor.YELLOW + "3. Replace the world folders with the backed up ones");
         sender.sendMessage(ChatColor.YELLOW + "4. Restart the server");
         sendColoredMessage(sender, ChatColor.RED, "WARNING: This will overwrite current world data!");
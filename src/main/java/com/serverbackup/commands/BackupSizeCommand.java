@@ -1,6 +1,7 @@
 package com.serverbackup.commands;
 
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.execution.BackupStage;
 import com.serverbackup.service.BackupService;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -11,6 +12,7 @@ import java.util.List;
 
 /**
  * Shows total size and statistics of all backups
+ * Usage: /backupsize [rescan]
  */
 public class BackupSizeCommand extends BaseCommand {
     
@@ -29,7 +31,15 @@ public class BackupSizeCommand extends BaseCommand {
         sender.sendMessage(ChatColor.GOLD + "║     " + ChatColor.YELLOW + "Calculating Backup Size..." + ChatColor.GOLD + "     ║");
         sender.sendMessage(ChatColor.GOLD + "╚═══════════════════════════════════════╝");
         
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        // Folder sizes are recorded when a backup is written; rescan picks up changes made by hand
+        boolean rescan = args.length > 0 && args[0].equalsIgnoreCase("rescan");
+        
+        backupService.getExecutors().execute(BackupStage.SCAN, () -> {
+            if (rescan) {
+                int measured = backupService.rescanFolderSizes();
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    sender.sendMessage(ChatColor.GRAY + "Measured " + measured + " folder backups again."));
+            }
             List<File> backups = backupService.listBackups();
             
             if (backups.isEmpty()) {
@@ -45,7 +55,7 @@ public class BackupSizeCommand extends BaseCommand {
             File smallestBackup = null;
             
             for (File backup : backups) {
-                long size = backup.isDirectory() ? getFolderSize(backup) : backup.length();
+                long size = backupService.getBackupSize(backup);
                 totalSize += size;
                 
                 if (size > largestSize) {
@@ -100,19 +110,4 @@ public class BackupSizeCommand extends BaseCommand {
         
         return true;
     }
-    
-    private long getFolderSize(File folder) {
-        long size = 0;
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    size += getFolderSize(file);
-                } else {
-                    size += file.length();
-                }
-            }
-        }
-        return size;
-    }
 }
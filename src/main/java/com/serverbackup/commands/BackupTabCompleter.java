@@ -29,7 +29,11 @@ public class BackupTabCompleter implements TabCompleter {
         
         if (command.getName().equalsIgnoreCase("backup")) {
             if (args.length == 1) {
-                completions = Arrays.asList("world", "full", "now", "auto", "info", "status");
+                completions = Arrays.asList("world", "full", "now", "auto", "info", "status", "cancel");
+            }
+        } else if (command.getName().equalsIgnoreCase("backupsize")) {
+            if (args.length == 1) {
+                completions = Arrays.asList("rescan");
             }
         } else if (command.getName().equalsIgnoreCase("backuplist")) {
             if (args.length == 1) {
@@ -43,6 +47,8 @@ public class BackupTabCompleter implements TabCompleter {
                 completions = backups.stream()
                     .map(File::getName)
                     .collect(Collectors.toList());
+            } else if (args.length == 2 && command.getName().equalsIgnoreCase("backupdelete")) {
+                completions = Arrays.asList("force");
             }
         }
         
@@ -0,0 +1,103 @@
+package com.serverbackup.execution;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The plugin's own thread pools, one per pipeline stage
+ *
+ * Backup work does not run on Bukkit's shared async pool, where it would
+ * compete with other plugins and could not be bounded or measured. Each stage
+ * is configured once and its pool started on first use.
+ */
+public class BackupExecutors {
+    
+    /** How long shutdown waits for interrupted tasks to clean up */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+    
+    private final Logger logger;
+    private final Map<BackupStage, Integer> sizes = new EnumMap<>(BackupStage.class);
+    private final Map<BackupStage, Boolean> virtualThreads = new EnumMap<>(BackupStage.class);
+    private final Map<BackupStage, StageExecutor> pools = new EnumMap<>(BackupStage.class);
+    private boolean shutdown = false;
+    
+    public BackupExecutors(Logger logger) {
+        this.logger = logger;
+    }
+    
+    /**
+     * Set the size and thread type of a stage. Has no effect once the stage's pool has started.
+     *
+     * @param threads Maximum number of tasks of this stage running at once
+     * @param virtual Use virtual threads (for stages that mostly block on I/O)
+     */
+    public synchronized void configure(BackupStage stage, int threads, boolean virtual) {
+        sizes.put(stage, Math.max(1, threads));
+        virtualThreads.put(stage, virtual);
+    }
+    
+    /**
+     * Get (or start) the pool of a stage
+     *
+     * @throws RejectedExecutionException if the executors have been shut down
+     */
+    public synchronized StageExecutor get(BackupStage stage) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Backup executors are shut down");
+        }
+        StageExecutor pool = pools.get(stage);
+        if (pool == null) {
+            pool = new StageExecutor(stage, sizes.getOrDefault(stage, 1), virtualThreads.getOrDefault(stage, false));
+            pools.put(stage, pool);
+        }
+        return pool;
+    }
+    
+    /**
+     * Run a task on a stage's pool
+     *
+     * @throws RejectedExecutionException if the executors have been shut down
+     */
+    public void execute(BackupStage stage, Runnable task) {
+        get(stage).execute(task);
+    }
+    
+    /**
+     * Pools started so far, in stage order
+     */
+    public synchronized List<StageExecutor> getStarted() {
+        return new ArrayList<>(pools.values());
+    }
+    
+    /**
+     * Interrupt all running tasks and wait briefly for them to clean up
+     */
+    public void shutdown() {
+        List<StageExecutor> started;
+        synchronized (this) {
+            shutdown = true;
+            started = new ArrayList<>(pools.values());
+            pools.clear();
+        }
+        for (StageExecutor pool : started) {
+            pool.shutdownNow();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS);
+        for (StageExecutor pool : started) {
+            try {
+                if (!pool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    logger.warning(pool.getStage().getDisplayName() + " threads did not stop within "
+                        + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
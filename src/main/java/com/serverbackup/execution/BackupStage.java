@@ -0,0 +1,25 @@
+package com.serverbackup.execution;
+
+/**
+ * Pipeline stages that get a thread pool of their own
+ */
+public enum BackupStage {
+    /** Walking source folders and copying files (blocking file I/O) */
+    SCAN("Scan"),
+    /** Compressing and chunking file contents (CPU bound) */
+    COMPRESS("Compress"),
+    /** Backup, restore and maintenance jobs that write archives (blocking file I/O) */
+    WRITE("Write"),
+    /** Transfers to remote storage (blocking network I/O) */
+    UPLOAD("Upload");
+    
+    private final String displayName;
+    
+    BackupStage(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,131 @@
+package com.serverbackup.execution;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool for one pipeline stage that keeps track of its own load
+ *
+ * At most the configured number of threads run tasks; further tasks wait in an
+ * unbounded queue. Threads are platform threads for CPU work or virtual threads
+ * for blocking I/O. In both cases the pool size is what bounds the stage, so a
+ * stage on virtual threads still never has more than that many files open.
+ */
+public class StageExecutor extends ThreadPoolExecutor {
+    
+    private final BackupStage stage;
+    private final int configuredThreads;
+    private final boolean virtual;
+    private final long createdAt = System.nanoTime();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final ThreadLocal<Long> taskStart = new ThreadLocal<>();
+    
+    /**
+     * @param stage Stage this pool runs
+     * @param threads Maximum number of tasks running at once
+     * @param virtual Run tasks on virtual threads instead of platform threads
+     */
+    public StageExecutor(BackupStage stage, int threads, boolean virtual) {
+        super(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory(stage, virtual));
+        this.stage = stage;
+        this.configuredThreads = threads;
+        this.virtual = virtual;
+        // Idle stages give their threads back; they are recreated on demand
+        allowCoreThreadTimeOut(true);
+    }
+    
+    private static ThreadFactory threadFactory(BackupStage stage, boolean virtual) {
+        String prefix = "ServerBackup-" + stage.getDisplayName() + "-";
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix, 1).factory();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    public BackupStage getStage() {
+        return stage;
+    }
+    
+    /**
+     * Pool size from the configuration, before any scaling
+     */
+    public int getConfiguredThreads() {
+        return configuredThreads;
+    }
+    
+    public boolean isVirtual() {
+        return virtual;
+    }
+    
+    /**
+     * Run with only part of the configured threads (at least one), e.g. while
+     * the server is lagging. Running tasks finish; the pool shrinks as they do.
+     *
+     * @param share Fraction of the configured threads, 1 for all of them
+     */
+    public synchronized void scale(double share) {
+        int size = Math.max(1, (int) Math.round(configuredThreads * Math.min(1.0, share)));
+        // The core size may never exceed the maximum, so order the two updates by direction
+        if (size < getCorePoolSize()) {
+            setCorePoolSize(size);
+            setMaximumPoolSize(size);
+        } else if (size > getMaximumPoolSize()) {
+            setMaximumPoolSize(size);
+            setCorePoolSize(size);
+        }
+    }
+    
+    /**
+     * Tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+    
+    /**
+     * Share of the pool's threads running a task right now, 0 to 1
+     */
+    public double getUtilization() {
+        return Math.min(1.0, (double) getActiveCount() / getMaximumPoolSize());
+    }
+    
+    /**
+     * Share of the configured thread capacity spent on tasks since the pool was created, 0 to 1
+     */
+    public double getAverageUtilization() {
+        long elapsed = System.nanoTime() - createdAt;
+        return elapsed <= 0 ? 0 : Math.min(1.0, (double) busyNanos.get() / elapsed / configuredThreads);
+    }
+    
+    /**
+     * Total time threads spent running tasks, in milliseconds
+     */
+    public long getBusyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+    }
+    
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        taskStart.set(System.nanoTime());
+    }
+    
+    @Override
+    protected void afterExecute(Runnable task, Throwable error) {
+        Long start = taskStart.get();
+        if (start != null) {
+            busyNanos.addAndGet(System.nanoTime() - start);
+            taskStart.remove();
+        }
+        super.afterExecute(task, error);
+    }
+}
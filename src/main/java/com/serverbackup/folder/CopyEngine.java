@@ -0,0 +1,502 @@
+package com.serverbackup.folder;
+
+import com.serverbackup.incremental.RegionDelta;
+import com.serverbackup.util.CancellationSignal;
+import com.serverbackup.util.IoLimiter;
+import com.serverbackup.util.ProgressTracker;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Copies folder trees for folder backups and restores
+ *
+ * Directory traversal and file copies fan out over a worker pool. File data is
+ * moved with {@link FileChannel#transferTo}, which lets the kernel copy between
+ * the files (copy_file_range / sendfile on Linux) without passing the data
+ * through user space. A file that cannot be copied is reported to the failure
+ * handler and the rest of the tree is still copied.
+ *
+ * Optionally files are hardlinked to a previous backup instead of copied when
+ * they did not change since (like rsync --link-dest). Every backup stays a
+ * complete directory tree, but unchanged files share their data with the
+ * previous backup, so disk usage and writes scale with what changed. Deleting
+ * one backup only removes its links. A file counts as unchanged when size and
+ * modification time (in milliseconds, copies may not keep finer precision) match
+ * the previous backup's copy. Copies keep the source modification time so the
+ * next backup can compare against them.
+ *
+ * With an {@link IoLimiter} set, files are transferred in slices that are each
+ * charged to the read and write caps first.
+ *
+ * In clone mode files are copied with {@link Files#copy}, which clones them
+ * (reflink on Btrfs/XFS, clonefile on APFS) where the file system supports it
+ * and copies the data otherwise. A clone shares the data blocks until either
+ * side is written, so a large world is captured in seconds. Clone mode ignores
+ * the bandwidth caps. Live world files are never hardlinked: the server writes
+ * region files in place, which would change the linked copy too.
+ *
+ * Copies of files that may change while they are read can be verified: size
+ * and modification time of the source (and for region files the 8 KB header
+ * with the chunk locations and timestamps) are read before and after each copy,
+ * and the copy must match the source's state afterwards. Region headers must
+ * also only point at chunks inside the file. A file that changed is copied
+ * again, up to the configured number of attempts; files that keep changing are
+ * collected so the caller can copy them once their writer has been paused.
+ */
+public class CopyEngine {
+    
+    /** Bytes per transfer when the bandwidth is capped, so waits stay short */
+    private static final long THROTTLED_SLICE = 4L * 1024 * 1024;
+    
+    private final ExecutorService executor;
+    private final Logger logger;
+    private final BiConsumer<Path, IOException> failureHandler;
+    private Path previousBackup;
+    private volatile boolean linksSupported = true;
+    private boolean cloneFiles = false;
+    private int verifyAttempts = 0;
+    private IoLimiter limiter = IoLimiter.UNLIMITED;
+    private ProgressTracker progress;
+    private volatile CancellationSignal cancellation;
+    
+    private final AtomicInteger linkedFiles = new AtomicInteger();
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicInteger recopiedFiles = new AtomicInteger();
+    /** Source to target of files that kept changing while they were copied */
+    private final Map<Path, Path> changedFiles = new ConcurrentHashMap<>();
+    
+    /**
+     * @param executor Pool the traversal and copies run on; its size bounds the parallelism
+     * @param failureHandler Called (from worker threads) for every file or folder that could not be copied
+     */
+    public CopyEngine(ExecutorService executor, Logger logger, BiConsumer<Path, IOException> failureHandler) {
+        this.executor = executor;
+        this.logger = logger;
+        this.failureHandler = failureHandler;
+    }
+    
+    /**
+     * Hardlink files unchanged since this previous backup instead of copying them
+     *
+     * @param previousBackup Root of the previous folder backup, or null to copy everything
+     */
+    public void setLinkDest(Path previousBackup) {
+        this.previousBackup = previousBackup;
+    }
+    
+    /**
+     * Cap the bandwidth of the copies
+     */
+    public void setIoLimiter(IoLimiter limiter) {
+        this.limiter = limiter;
+    }
+    
+    /**
+     * Report every file copied or linked to this tracker
+     */
+    public void setProgress(ProgressTracker progress) {
+        this.progress = progress;
+    }
+    
+    /**
+     * Stop copying once this signal is cancelled; the copy call then throws
+     * {@link com.serverbackup.util.BackupCancelledException}
+     */
+    public void setCancellation(CancellationSignal cancellation) {
+        this.cancellation = cancellation;
+    }
+    
+    /**
+     * Copy files with {@link Files#copy} so that file systems with copy-on-write
+     * clones can share the data instead of copying it
+     */
+    public void setCloneFiles(boolean cloneFiles) {
+        this.cloneFiles = cloneFiles;
+    }
+    
+    /**
+     * Verify every copy against its source and copy again while the source
+     * changed during the copy
+     *
+     * @param attempts Copies per file before it counts as changing, 0 to not verify
+     */
+    public void setVerifyCopies(int attempts) {
+        this.verifyAttempts = Math.max(0, attempts);
+    }
+    
+    /**
+     * Copy a folder into a backup and wait until every file is done
+     *
+     * @param source Folder to copy
+     * @param backupRoot Root of the backup being written
+     * @param name Name of the folder inside the backup
+     */
+    public void copy(Path source, Path backupRoot, String name) throws IOException {
+        copyTree(source, backupRoot.resolve(name), previousBackup != null ? previousBackup.resolve(name) : null);
+    }
+    
+    /**
+     * Copy a folder tree and wait until every file is done
+     *
+     * @param linkDest Matching folder of the previous backup, or null
+     */
+    public void copyTree(Path source, Path target, Path linkDest) throws IOException {
+        Run run = new Run();
+        run.submit(() -> copyDirectory(run, source, target, linkDest));
+        run.await();
+    }
+    
+    public int getLinkedFiles() {
+        return linkedFiles.get();
+    }
+    
+    public int getCopiedFiles() {
+        return copiedFiles.get();
+    }
+    
+    public int getFailedFiles() {
+        return failedFiles.get();
+    }
+    
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+    
+    /**
+     * Copies repeated because the source changed meanwhile
+     */
+    public int getRecopiedFiles() {
+        return recopiedFiles.get();
+    }
+    
+    /**
+     * Remove and return the files that kept changing through every attempt.
+     * Their last copy is in place but may be torn.
+     *
+     * @return Source and target of each file
+     */
+    public Map<Path, Path> takeChangedFiles() {
+        Map<Path, Path> taken = new LinkedHashMap<>();
+        for (Path source : changedFiles.keySet()) {
+            Path target = changedFiles.remove(source);
+            if (target != null) {
+                taken.put(source, target);
+            }
+        }
+        return taken;
+    }
+    
+    /**
+     * Copy files again on the calling thread, e.g. once whatever kept changing
+     * them has been paused
+     *
+     * @param files Source and target of each file
+     * @return Files whose source still changed during every attempt
+     */
+    public Map<Path, Path> recopy(Map<Path, Path> files) {
+        Map<Path, Path> stillChanging = new LinkedHashMap<>();
+        for (Map.Entry<Path, Path> file : files.entrySet()) {
+            try {
+                if (!copyVerified(file.getKey(), file.getValue(), Math.max(1, verifyAttempts))) {
+                    stillChanging.put(file.getKey(), file.getValue());
+                }
+            } catch (IOException e) {
+                fail(file.getKey(), e);
+            }
+        }
+        return stillChanging;
+    }
+    
+    /**
+     * Tracks the outstanding tasks of one copy call
+     */
+    private final class Run {
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        
+        void submit(Runnable task) {
+            if (cancelled || isCancelRequested()) {
+                return;
+            }
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (!cancelled && !isCancelRequested()) {
+                            task.run();
+                        }
+                    } finally {
+                        finishTask();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                finishTask();
+            }
+        }
+        
+        private void finishTask() {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+        
+        synchronized void await() throws IOException {
+            try {
+                while (pending.get() > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Copy interrupted");
+            }
+            CancellationSignal signal = cancellation;
+            if (signal != null) {
+                signal.throwIfCancelled();
+            }
+            if (cancelled) {
+                throw new IOException("Copy aborted, worker pool is shut down");
+            }
+        }
+    }
+    
+    private boolean isCancelRequested() {
+        CancellationSignal signal = cancellation;
+        return signal != null && signal.isCancelled();
+    }
+    
+    private void copyDirectory(Run run, Path source, Path target, Path linkDest) {
+        try {
+            Files.createDirectories(target);
+        } catch (IOException e) {
+            fail(source, e);
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+            for (Path entry : entries) {
+                Path entryTarget = target.resolve(entry.getFileName().toString());
+                Path entryLinkDest = linkDest != null ? linkDest.resolve(entry.getFileName().toString()) : null;
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    fail(entry, e);
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    run.submit(() -> copyDirectory(run, entry, entryTarget, entryLinkDest));
+                } else {
+                    run.submit(() -> copyFile(entry, entryTarget, entryLinkDest, attributes));
+                }
+            }
+        } catch (IOException e) {
+            fail(source, e);
+        }
+    }
+    
+    private void copyFile(Path source, Path target, Path linkDest, BasicFileAttributes attributes) {
+        try {
+            if (link(linkDest, target, attributes)) {
+                reportProgress(attributes.size(), 0);
+                return;
+            }
+            if (verifyAttempts > 0) {
+                if (!copyVerified(source, target, verifyAttempts)) {
+                    changedFiles.put(source, target);
+                }
+                reportProgress(attributes.size(), attributes.size());
+                return;
+            }
+            long copied = transfer(source, target, attributes);
+            copiedFiles.incrementAndGet();
+            copiedBytes.addAndGet(copied);
+            reportProgress(copied, copied);
+        } catch (IOException e) {
+            fail(source, e);
+        }
+    }
+    
+    private void reportProgress(long read, long written) {
+        ProgressTracker current = progress;
+        if (current != null) {
+            current.fileDone(read, written);
+        }
+    }
+    
+    /**
+     * Copy a file until a copy matches the source's state before and after it
+     *
+     * @return True once a copy is consistent, false if the source changed during every attempt
+     */
+    private boolean copyVerified(Path source, Path target, int attempts) throws IOException {
+        FileState before = FileState.read(source);
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            if (attempt > 1) {
+                recopiedFiles.incrementAndGet();
+            }
+            long copied = transfer(source, target, Files.readAttributes(source, BasicFileAttributes.class));
+            FileState after = FileState.read(source);
+            if (after.equals(before) && after.matchesCopy(target)) {
+                copiedFiles.incrementAndGet();
+                copiedBytes.addAndGet(copied);
+                return true;
+            }
+            before = after;
+        }
+        return false;
+    }
+    
+    /**
+     * Copy one file's data and modification time
+     *
+     * @return Bytes copied
+     */
+    private long transfer(Path source, Path target, BasicFileAttributes attributes) throws IOException {
+        if (cloneFiles) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            return attributes.size();
+        }
+        long copied;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            copied = 0;
+            while (copied < size) {
+                long slice = limiter == IoLimiter.UNLIMITED ? size - copied : Math.min(size - copied, THROTTLED_SLICE);
+                limiter.acquireRead(slice);
+                limiter.acquireWrite(slice);
+                long n = in.transferTo(copied, slice, out);
+                if (n <= 0) {
+                    break; // file shrank while copying
+                }
+                copied += n;
+            }
+        }
+        Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+        return copied;
+    }
+    
+    /**
+     * Hardlink the previous backup's copy if it is unchanged
+     *
+     * @return True if linked, false if the file has to be copied
+     */
+    private boolean link(Path previous, Path target, BasicFileAttributes source) throws IOException {
+        if (previous == null || !linksSupported) {
+            return false;
+        }
+        BasicFileAttributes before;
+        try {
+            before = Files.readAttributes(previous, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!before.isRegularFile() || before.size() != source.size()
+                || before.lastModifiedTime().toMillis() != source.lastModifiedTime().toMillis()) {
+            return false;
+        }
+        
+        try {
+            Files.deleteIfExists(target);
+            Files.createLink(target, previous);
+            linkedFiles.incrementAndGet();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            if (linksSupported) {
+                linksSupported = false;
+                logger.warning("File system does not support hardlinks, copying every file");
+            }
+            return false;
+        } catch (FileSystemException e) {
+            // e.g. the link count limit of that file was reached: fall back to a copy
+            return false;
+        }
+    }
+    
+    private void fail(Path path, IOException e) {
+        failedFiles.incrementAndGet();
+        failureHandler.accept(path, e);
+    }
+    
+    /**
+     * What a copy is checked against: size, modification time and, for region
+     * files, the header tables
+     */
+    private static final class FileState {
+        private final long size;
+        private final long modified;
+        private final byte[] header;
+        
+        private FileState(long size, long modified, byte[] header) {
+            this.size = size;
+            this.modified = modified;
+            this.header = header;
+        }
+        
+        static FileState read(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            byte[] header = RegionDelta.isRegionFile(file.getFileName().toString()) ? readHeader(file) : null;
+            return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), header);
+        }
+        
+        /**
+         * Whether a copy has this size and header, and the header only locates chunks inside the copy
+         */
+        boolean matchesCopy(Path copy) throws IOException {
+            if (Files.size(copy) != size) {
+                return false;
+            }
+            return header == null || (Arrays.equals(readHeader(copy), header) && RegionDelta.headerFits(header, size));
+        }
+        
+        private static byte[] readHeader(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(RegionDelta.HEADER_SIZE, channel.size()));
+                while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                    // keep reading until the header is complete or the file ends
+                }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof FileState)) {
+                return false;
+            }
+            FileState state = (FileState) other;
+            return size == state.size && modified == state.modified && Arrays.equals(header, state.header);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modified);
+        }
+    }
+}
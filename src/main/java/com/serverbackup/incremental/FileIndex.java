@@ -0,0 +1,321 @@
+package com.serverbackup.incremental;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-file state of one backup: size, modification time and content hash
+ *
+ * Every archive backup writes an index. An incremental backup compares the files
+ * on disk against its parent's index and only stores what changed. Each entry also
+ * records which backup actually holds the file's bytes, so the complete file set
+ * of any backup in a chain can be rebuilt without walking every parent.
+ *
+ * Region files additionally keep their chunk timestamp table, so the next backup
+ * can store just the chunks saved since (see {@link RegionDelta}).
+ */
+public class FileIndex {
+    
+    private static final int MAGIC = 0x53424958; // "SBIX"
+    private static final int VERSION = 2;
+    
+    private static final int FLAG_CHUNK_DELTA = 1;
+    private static final int FLAG_CHUNK_TIMESTAMPS = 2;
+    
+    private final String backupName;
+    private final String parentName;
+    private final int depth;
+    private final long createdAt;
+    private final List<String> sources;
+    private final Map<String, FileState> files;
+    
+    private FileIndex(String backupName, String parentName, int depth, long createdAt,
+                      List<String> sources, Map<String, FileState> files) {
+        this.backupName = backupName;
+        this.parentName = parentName;
+        this.depth = depth;
+        this.createdAt = createdAt;
+        this.sources = sources;
+        this.files = files;
+    }
+    
+    public String getBackupName() { return backupName; }
+    
+    /**
+     * Parent backup name, or null for a full backup
+     */
+    public String getParentName() { return parentName; }
+    
+    /**
+     * Number of incremental backups between this one and its full base (0 = full)
+     */
+    public int getDepth() { return depth; }
+    
+    public long getCreatedAt() { return createdAt; }
+    
+    public boolean isIncremental() { return parentName != null; }
+    
+    /**
+     * Names of every backup that holds file data for this backup
+     */
+    public List<String> getSources() { return sources; }
+    
+    public Map<String, FileState> getFiles() { return files; }
+    
+    public FileState get(String path) {
+        return files.get(path);
+    }
+    
+    /**
+     * Name of the backup holding the bytes of the given state
+     */
+    public String getSource(FileState state) {
+        return sources.get(state.getSource());
+    }
+    
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(backupName);
+        out.writeUTF(parentName != null ? parentName : "");
+        out.writeInt(depth);
+        out.writeLong(createdAt);
+        out.writeInt(sources.size());
+        for (String source : sources) {
+            out.writeUTF(source);
+        }
+        out.writeInt(files.size());
+        for (Map.Entry<String, FileState> entry : files.entrySet()) {
+            FileState state = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(state.getSize());
+            out.writeLong(state.getLastModified());
+            out.writeLong(state.getHash());
+            out.writeShort(state.getSource());
+            int[] timestamps = state.getChunkTimestamps();
+            out.writeByte((state.isChunkDelta() ? FLAG_CHUNK_DELTA : 0) | (timestamps != null ? FLAG_CHUNK_TIMESTAMPS : 0));
+            if (timestamps != null) {
+                for (int timestamp : timestamps) {
+                    out.writeInt(timestamp);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Read an index; with headerOnly the file table is skipped
+     */
+    static FileIndex read(DataInputStream in, boolean headerOnly) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a backup index file");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported backup index version: " + version);
+        }
+        String backupName = in.readUTF();
+        String parent = in.readUTF();
+        int depth = in.readInt();
+        long createdAt = in.readLong();
+        int sourceCount = in.readInt();
+        List<String> sources = new ArrayList<>(sourceCount);
+        for (int i = 0; i < sourceCount; i++) {
+            sources.add(in.readUTF());
+        }
+        
+        Map<String, FileState> files;
+        if (headerOnly) {
+            files = Collections.emptyMap();
+        } else {
+            int count = in.readInt();
+            files = new LinkedHashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                long hash = in.readLong();
+                int source = in.readUnsignedShort();
+                int flags = version >= 2 ? in.readUnsignedByte() : 0;
+                int[] timestamps = null;
+                if ((flags & FLAG_CHUNK_TIMESTAMPS) != 0) {
+                    timestamps = new int[RegionDelta.CHUNK_COUNT];
+                    for (int t = 0; t < timestamps.length; t++) {
+                        timestamps[t] = in.readInt();
+                    }
+                }
+                files.put(path, new FileState(size, lastModified, hash, source,
+                    (flags & FLAG_CHUNK_DELTA) != 0, timestamps));
+            }
+        }
+        return new FileIndex(backupName, parent.isEmpty() ? null : parent, depth, createdAt,
+            Collections.unmodifiableList(sources), Collections.unmodifiableMap(files));
+    }
+    
+    /**
+     * Start a new index, optionally based on a parent
+     */
+    public static Builder builder(String backupName, FileIndex parent) {
+        return new Builder(backupName, parent);
+    }
+    
+    /**
+     * State of one file at backup time
+     */
+    public static class FileState {
+        private final long size;
+        private final long lastModified;
+        private final long hash;
+        private final int source;
+        private final boolean chunkDelta;
+        private final int[] chunkTimestamps;
+        
+        public FileState(long size, long lastModified, long hash, int source) {
+            this(size, lastModified, hash, source, false, null);
+        }
+        
+        public FileState(long size, long lastModified, long hash, int source,
+                         boolean chunkDelta, int[] chunkTimestamps) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.source = source;
+            this.chunkDelta = chunkDelta;
+            this.chunkTimestamps = chunkTimestamps;
+        }
+        
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        
+        /**
+         * CRC-32C of the file content
+         */
+        public long getHash() { return hash; }
+        
+        /**
+         * Position of the holding backup in {@link FileIndex#getSources()}
+         */
+        public int getSource() { return source; }
+        
+        /**
+         * True if the source backup holds only the chunks changed since its parent
+         */
+        public boolean isChunkDelta() { return chunkDelta; }
+        
+        /**
+         * Chunk timestamp table of a region file, or null for other files
+         */
+        public int[] getChunkTimestamps() { return chunkTimestamps; }
+        
+        /**
+         * Quick check without reading content
+         */
+        public boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+    
+    /**
+     * Collects file states while a backup is written. Not thread-safe.
+     */
+    public static class Builder {
+        private final String backupName;
+        private final FileIndex parent;
+        private final List<String> sources = new ArrayList<>();
+        private final Map<String, Integer> sourceIds = new HashMap<>();
+        private final Map<String, FileState> files = new LinkedHashMap<>();
+        private boolean parentChainAdded;
+        
+        private Builder(String backupName, FileIndex parent) {
+            this.backupName = backupName;
+            this.parent = parent;
+            sourceId(backupName);
+        }
+        
+        public FileIndex getParent() {
+            return parent;
+        }
+        
+        /**
+         * Record a file whose data is stored in this backup
+         */
+        public void stored(String path, long size, long lastModified, long hash) {
+            stored(path, size, lastModified, hash, false, null);
+        }
+        
+        /**
+         * Record a region file stored in this backup, either whole or as a chunk delta
+         */
+        public void stored(String path, long size, long lastModified, long hash,
+                           boolean chunkDelta, int[] chunkTimestamps) {
+            files.put(path, new FileState(size, lastModified, hash, 0, chunkDelta, chunkTimestamps));
+            if (chunkDelta) {
+                requireParentChain();
+            }
+        }
+        
+        /**
+         * Record a file whose data is already held by an earlier backup
+         */
+        public void unchanged(String path, long size, long lastModified, FileState previous) {
+            int source = sourceId(parent.getSource(previous));
+            files.put(path, new FileState(size, lastModified, previous.getHash(), source,
+                previous.isChunkDelta(), previous.getChunkTimestamps()));
+            if (previous.isChunkDelta()) {
+                requireParentChain();
+            }
+        }
+        
+        /**
+         * Paths present in the parent but no longer on disk
+         */
+        public List<String> getDeletedPaths() {
+            List<String> deleted = new ArrayList<>();
+            if (parent != null) {
+                for (String path : parent.getFiles().keySet()) {
+                    if (!files.containsKey(path)) {
+                        deleted.add(path);
+                    }
+                }
+            }
+            return deleted;
+        }
+        
+        public FileIndex build() {
+            return new FileIndex(
+                backupName,
+                parent != null ? parent.getBackupName() : null,
+                parent != null ? parent.getDepth() + 1 : 0,
+                System.currentTimeMillis(),
+                Collections.unmodifiableList(new ArrayList<>(sources)),
+                Collections.unmodifiableMap(new LinkedHashMap<>(files)));
+        }
+        
+        /**
+         * A chunk delta is rebuilt on top of older copies of the region, so every
+         * backup the parent depends on has to be kept alive as well
+         */
+        private void requireParentChain() {
+            if (parentChainAdded) {
+                return;
+            }
+            parentChainAdded = true;
+            for (String source : parent.getSources()) {
+                sourceId(source);
+            }
+        }
+        
+        private int sourceId(String name) {
+            return sourceIds.computeIfAbsent(name, key -> {
+                sources.add(key);
+                return sources.size() - 1;
+            });
+        }
+    }
+}
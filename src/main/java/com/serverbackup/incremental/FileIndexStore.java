@@ -0,0 +1,136 @@
+package com.serverbackup.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persists {@link FileIndex} files in the ".index" folder of the backup directory
+ */
+public class FileIndexStore {
+    
+    public static final String INDEX_FOLDER = ".index";
+    private static final String EXTENSION = ".idx";
+    
+    private final File directory;
+    private final Logger logger;
+    
+    public FileIndexStore(File backupDirectory, Logger logger) {
+        this.directory = new File(backupDirectory, INDEX_FOLDER);
+        this.logger = logger;
+    }
+    
+    /**
+     * Write an index atomically (temp file + rename)
+     */
+    public void save(FileIndex index) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create index folder: " + directory);
+        }
+        Path target = fileFor(index.getBackupName()).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)))) {
+            index.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Load the full index of a backup
+     *
+     * @return Index or null if the backup has none (or it is unreadable)
+     */
+    public FileIndex load(String backupName) {
+        return read(backupName, false);
+    }
+    
+    /**
+     * Load only the header (parent, depth and source list) of a backup's index
+     */
+    public FileIndex loadHeader(String backupName) {
+        return read(backupName, true);
+    }
+    
+    public boolean exists(String backupName) {
+        return fileFor(backupName).isFile();
+    }
+    
+    /**
+     * Find the newest backup that has an index, to be used as incremental parent
+     *
+     * @param backups Backups sorted newest first
+     */
+    public FileIndex findLatest(List<File> backups) {
+        for (File backup : backups) {
+            if (exists(backup.getName())) {
+                FileIndex index = load(backup.getName());
+                if (index != null) {
+                    return index;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Check whether any of the given backups still needs data from backupName
+     */
+    public boolean isReferenced(String backupName, Collection<String> others) {
+        return !findReferencing(backupName, others).isEmpty();
+    }
+    
+    /**
+     * Backups among others that still need data from backupName, in the order given
+     */
+    public List<String> findReferencing(String backupName, Collection<String> others) {
+        List<String> referencing = new ArrayList<>();
+        for (String other : others) {
+            if (other.equals(backupName) || !exists(other)) {
+                continue;
+            }
+            FileIndex header = loadHeader(other);
+            if (header != null && header.getSources().contains(backupName)) {
+                referencing.add(other);
+            }
+        }
+        return referencing;
+    }
+    
+    public void delete(String backupName) {
+        File file = fileFor(backupName);
+        if (file.exists() && !file.delete()) {
+            logger.warning("Could not delete backup index: " + file.getName());
+        }
+    }
+    
+    private FileIndex read(String backupName, boolean headerOnly) {
+        File file = fileFor(backupName);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file.toPath()), 64 * 1024)))) {
+            return FileIndex.read(in, headerOnly);
+        } catch (IOException e) {
+            logger.warning("Could not read backup index " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private File fileFor(String backupName) {
+        return new File(directory, backupName + EXTENSION);
+    }
+}
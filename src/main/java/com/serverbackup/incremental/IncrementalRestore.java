@@ -0,0 +1,149 @@
+package com.serverbackup.incremental;
+
+import com.serverbackup.archive.ZipArchiveInput;
+import com.serverbackup.util.IoLimiter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rebuilds the complete file set of an indexed backup
+ *
+ * Files are read from whichever backup in the chain holds them. Region files
+ * stored as chunk deltas are rebuilt by first rebuilding the parent's copy and
+ * then applying the delta. Entries are decoded with whichever codec they were
+ * written with.
+ */
+public class IncrementalRestore implements Closeable {
+    
+    private final File backupDirectory;
+    private final FileIndexStore store;
+    private final Map<String, FileIndex> indexes = new HashMap<>();
+    private final Map<String, ZipArchiveInput> archives = new HashMap<>();
+    private IoLimiter limiter = IoLimiter.UNLIMITED;
+    
+    public IncrementalRestore(File backupDirectory, FileIndexStore store) {
+        this.backupDirectory = backupDirectory;
+        this.store = store;
+    }
+    
+    /**
+     * Charge reading the archives and writing restored files to these caps
+     */
+    public void setIoLimiter(IoLimiter limiter) {
+        this.limiter = limiter;
+    }
+    
+    /**
+     * Write every file of a backup into the target folder
+     *
+     * @return Number of files restored
+     */
+    public int restore(String backupName, File target) throws IOException {
+        FileIndex index = index(backupName);
+        String targetRoot = target.getCanonicalPath() + File.separator;
+        int restored = 0;
+        for (Map.Entry<String, FileIndex.FileState> file : index.getFiles().entrySet()) {
+            File out = new File(target, file.getKey());
+            if (!out.getCanonicalPath().startsWith(targetRoot)) {
+                throw new IOException("Refusing to restore outside target folder: " + file.getKey());
+            }
+            out.getParentFile().mkdirs();
+            try (OutputStream os = limiter.throttle(Files.newOutputStream(out.toPath()))) {
+                extract(backupName, file.getKey(), os);
+            }
+            out.setLastModified(file.getValue().getLastModified());
+            restored++;
+        }
+        return restored;
+    }
+    
+    /**
+     * Write the content of one file, as of the given backup
+     */
+    public void extract(String backupName, String path, OutputStream out) throws IOException {
+        FileIndex index = index(backupName);
+        FileIndex.FileState state = index.get(path);
+        if (state == null) {
+            throw new IOException(path + " is not part of " + backupName);
+        }
+        String source = index.getSource(state);
+        ZipArchiveInput zip = archive(source);
+        
+        if (!state.isChunkDelta()) {
+            try (InputStream in = open(zip, source, path)) {
+                in.transferTo(out);
+            }
+            return;
+        }
+        
+        byte[] delta;
+        try (InputStream in = open(zip, source, path + RegionDelta.ENTRY_SUFFIX)) {
+            delta = in.readAllBytes();
+        }
+        String parent = index(source).getParentName();
+        if (parent == null) {
+            throw new IOException("Chunk delta for " + path + " in " + source + " has no parent backup");
+        }
+        ByteArrayOutputStream base = new ByteArrayOutputStream();
+        extract(parent, path, base);
+        RegionDelta.apply(base.toByteArray(), delta, out);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ZipArchiveInput zip : archives.values()) {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        archives.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private FileIndex index(String backupName) throws IOException {
+        FileIndex index = indexes.get(backupName);
+        if (index == null) {
+            index = store.load(backupName);
+            if (index == null) {
+                throw new IOException("No file index for backup " + backupName);
+            }
+            indexes.put(backupName, index);
+        }
+        return index;
+    }
+    
+    private ZipArchiveInput archive(String backupName) throws IOException {
+        ZipArchiveInput zip = archives.get(backupName);
+        if (zip == null) {
+            File file = new File(backupDirectory, backupName);
+            if (!file.isFile()) {
+                throw new IOException("Backup " + backupName + " is missing, the incremental chain is broken");
+            }
+            zip = new ZipArchiveInput(file);
+            zip.setIoLimiter(limiter);
+            archives.put(backupName, zip);
+        }
+        return zip;
+    }
+    
+    private static InputStream open(ZipArchiveInput zip, String source, String name) throws IOException {
+        ZipArchiveInput.Entry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new IOException(source + " has no entry " + name);
+        }
+        return zip.getInputStream(entry);
+    }
+}
@@ -0,0 +1,233 @@
+package com.serverbackup.incremental;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Chunk-level deltas of Anvil region (.mca) files
+ *
+ * A region file starts with two 4 KB tables: 1024 chunk locations (3-byte sector
+ * offset + 1-byte sector count) and 1024 chunk save timestamps. Chunk records
+ * follow at sector boundaries, each a 4-byte length, a compression byte and the
+ * already-compressed chunk NBT.
+ *
+ * A delta keeps the new header tables plus the records of every chunk whose
+ * timestamp differs from the parent backup. Applying it to the parent's copy of
+ * the region yields a valid region file with the same chunks (sector layout is
+ * repacked, so it is not byte-identical).
+ */
+public final class RegionDelta {
+    
+    public static final int SECTOR_SIZE = 4096;
+    public static final int CHUNK_COUNT = 1024;
+    public static final int HEADER_SIZE = SECTOR_SIZE * 2;
+    
+    /** Suffix of delta entries inside the archive */
+    public static final String ENTRY_SUFFIX = ".chunkdelta";
+    
+    private static final int MAGIC = 0x53425244; // "SBRD"
+    private static final int VERSION = 1;
+    
+    private RegionDelta() {
+    }
+    
+    /**
+     * Check whether a path looks like an Anvil region file
+     */
+    public static boolean isRegionFile(String path) {
+        return path.endsWith(".mca");
+    }
+    
+    /**
+     * Check that every chunk the location table points at starts inside the
+     * file. A region file caught halfway through a write can have a header
+     * that already points past its end.
+     *
+     * @param header Start of the region file (at least the location table)
+     * @param size Size of the whole file
+     * @return False if a chunk lies outside the file or the header is incomplete
+     */
+    public static boolean headerFits(byte[] header, long size) {
+        if (size == 0) {
+            return header.length == 0; // empty region files are valid
+        }
+        if (header.length < HEADER_SIZE || size < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(header, 0, SECTOR_SIZE);
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            int location = buffer.getInt();
+            if (location == 0) {
+                continue;
+            }
+            long offset = (long) (location >>> 8) * SECTOR_SIZE;
+            // The record's 4-byte length and compression byte must be readable
+            if (offset < HEADER_SIZE || offset + 5 > size) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Read the timestamp table from the start of a region file
+     *
+     * @return 1024 timestamps, or null if the data is too short to be a region file
+     */
+    public static int[] readTimestamps(byte[] region, int length) {
+        if (length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(region, SECTOR_SIZE, SECTOR_SIZE);
+        int[] timestamps = new int[CHUNK_COUNT];
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            timestamps[i] = buffer.getInt();
+        }
+        return timestamps;
+    }
+    
+    /**
+     * Build a delta holding every chunk saved since the parent backup
+     *
+     * @param region Current region file content
+     * @param parentTimestamps Timestamp table recorded for the parent backup
+     * @return Encoded delta, or null if the file is not a readable region file
+     */
+    public static byte[] encode(byte[] region, int[] parentTimestamps) throws IOException {
+        if (region.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(region, 0, HEADER_SIZE);
+        int[] locations = new int[CHUNK_COUNT];
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            locations[i] = header.getInt();
+        }
+        int[] timestamps = readTimestamps(region, region.length);
+        
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(HEADER_SIZE + 1024);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(region, 0, HEADER_SIZE);
+        
+        int changed = 0;
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(records);
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            if (locations[i] == 0 || timestamps[i] == parentTimestamps[i]) {
+                continue;
+            }
+            int[] record = locateRecord(region, locations[i]);
+            if (record == null) {
+                return null;
+            }
+            recordOut.writeShort(i);
+            recordOut.writeInt(record[1]);
+            recordOut.write(region, record[0], record[1]);
+            changed++;
+        }
+        out.writeInt(changed);
+        records.writeTo(out);
+        out.flush();
+        return buffer.toByteArray();
+    }
+    
+    /**
+     * Rebuild a region file from the parent's copy and a delta
+     *
+     * @param parentRegion Region file as of the parent backup
+     * @param delta Delta produced by {@link #encode}
+     * @param out Destination for the rebuilt region file
+     */
+    public static void apply(byte[] parentRegion, byte[] delta, OutputStream out) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(delta));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a region delta");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported region delta version: " + version);
+        }
+        byte[] newHeader = new byte[HEADER_SIZE];
+        in.readFully(newHeader);
+        
+        byte[][] changedRecords = new byte[CHUNK_COUNT][];
+        int changed = in.readInt();
+        for (int c = 0; c < changed; c++) {
+            int index = in.readUnsignedShort();
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            changedRecords[index] = record;
+        }
+        
+        ByteBuffer newLocations = ByteBuffer.wrap(newHeader, 0, SECTOR_SIZE);
+        ByteBuffer parentLocations = parentRegion.length >= HEADER_SIZE
+            ? ByteBuffer.wrap(parentRegion, 0, SECTOR_SIZE) : null;
+        
+        ByteBuffer outHeader = ByteBuffer.allocate(HEADER_SIZE);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(parentRegion.length);
+        int nextSector = 2;
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            int location = newLocations.getInt(i * 4);
+            if (location == 0) {
+                continue;
+            }
+            byte[] source;
+            int offset;
+            int length;
+            if (changedRecords[i] != null) {
+                source = changedRecords[i];
+                offset = 0;
+                length = source.length;
+            } else {
+                int[] record = parentLocations != null
+                    ? locateRecord(parentRegion, parentLocations.getInt(i * 4)) : null;
+                if (record == null) {
+                    throw new IOException("Parent region is missing chunk " + i);
+                }
+                source = parentRegion;
+                offset = record[0];
+                length = record[1];
+            }
+            int sectors = (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+            if (sectors > 255) {
+                throw new IOException("Chunk " + i + " too large for region format");
+            }
+            outHeader.putInt(i * 4, (nextSector << 8) | sectors);
+            body.write(source, offset, length);
+            body.write(new byte[sectors * SECTOR_SIZE - length]);
+            nextSector += sectors;
+        }
+        // Timestamps are taken as-is from the new header
+        System.arraycopy(newHeader, SECTOR_SIZE, outHeader.array(), SECTOR_SIZE, SECTOR_SIZE);
+        
+        out.write(outHeader.array());
+        body.writeTo(out);
+    }
+    
+    /**
+     * Find a chunk record inside a region file
+     *
+     * @return {offset, length} of the record (length prefix included), or null if out of bounds
+     */
+    private static int[] locateRecord(byte[] region, int location) {
+        if (location == 0) {
+            return null;
+        }
+        long offset = (long) (location >>> 8) * SECTOR_SIZE;
+        int sectors = location & 0xFF;
+        if (offset < HEADER_SIZE || offset + 4 > region.length) {
+            return null;
+        }
+        int dataLength = ByteBuffer.wrap(region, (int) offset, 4).getInt();
+        long recordLength = Math.min((long) dataLength + 4, (long) sectors * SECTOR_SIZE);
+        if (dataLength <= 0 || offset + recordLength > region.length) {
+            return null;
+        }
+        return new int[] {(int) offset, (int) recordLength};
+    }
+}
@@ -3,6 +3,8 @@ package com.serverbackup.integrations.placeholderapi;
 import com.serverbackup.ServerBackupPlugin;
 import com.serverbackup.api.BackupAPI;
 import com.serverbackup.api.BackupResult;
+import com.serverbackup.execution.BackupStage;
+import com.serverbackup.service.BackupService;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
@@ -11,8 +13,10 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * PlaceholderAPI expansion for ServerBackupPlugin
@@ -30,22 +34,97 @@ import java.util.concurrent.TimeUnit;
  * - %serverbackup_latest_backup_size% - Size of latest backup
  * - %serverbackup_status% - Overall status indicator
  * 
+ * Placeholders are requested on the main thread for every scoreboard and tab
+ * list refresh, so they are answered from a {@link Stats} snapshot instead of
+ * the backup list. The snapshot is rebuilt on the plugin's scan pool whenever a
+ * backup is written or deleted, and on a timer for changes made outside the plugin.
+ * 
  * Config:
  * integrations:
  *   placeholderapi:
  *     enabled: true
+ *     refresh-seconds: 30
  */
 public class ServerBackupExpansion extends PlaceholderExpansion {
     
     private final ServerBackupPlugin plugin;
     private final BackupAPI backupAPI;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final Runnable changeListener = this::requestRefresh;
+    /** Set while a refresh is scheduled, so a burst of changes refreshes once */
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private volatile Stats stats = Stats.EMPTY;
+    private ScheduledFuture<?> refreshTask;
     
     public ServerBackupExpansion(ServerBackupPlugin plugin) {
         this.plugin = plugin;
         this.backupAPI = ServerBackupPlugin.getAPI();
     }
     
+    /**
+     * Build the first snapshot and keep it up to date until {@link #stopRefreshing()}
+     */
+    public void startRefreshing() {
+        if (backupAPI == null) {
+            return;
+        }
+        BackupService backupService = plugin.getBackupService();
+        backupService.addChangeListener(changeListener);
+        long period = Math.max(1, plugin.getConfig().getInt("integrations.placeholderapi.refresh-seconds", 30));
+        try {
+            refreshTask = backupService.getEventScheduler().scheduleWithFixedDelay(this::requestRefresh, 0L, period, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Plugin is shutting down
+        }
+    }
+    
+    public void stopRefreshing() {
+        plugin.getBackupService().removeChangeListener(changeListener);
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+    
+    /**
+     * Rebuild the snapshot soon on the scan pool. Safe to call from any thread.
+     */
+    private void requestRefresh() {
+        if (!plugin.isEnabled() || !refreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            plugin.getBackupService().getExecutors().execute(BackupStage.SCAN, () -> {
+                refreshQueued.set(false);
+                refresh();
+            });
+        } catch (RejectedExecutionException e) {
+            refreshQueued.set(false); // Plugin is shutting down
+        }
+    }
+    
+    /**
+     * Read the backup statistics and publish them as a new snapshot.
+     * Synchronized because the date format is not thread-safe.
+     */
+    private synchronized void refresh() {
+        BackupService backupService = plugin.getBackupService();
+        long totalSize = backupAPI.getTotalBackupSize();
+        File latest = backupService.getCatalog().getLatest();
+        BackupResult lastBackup = backupAPI.getLastBackup();
+        
+        stats = new Stats(
+            String.valueOf(backupAPI.getBackupCount()),
+            formatFileSize(totalSize),
+            String.format("%.1f", totalSize / 1024.0 / 1024.0),
+            latest != null ? latest.getName() : "None",
+            latest != null ? formatFileSize(backupService.getBackupSize(latest)) : "0 B",
+            lastBackup != null,
+            lastBackup != null && lastBackup.isSuccess(),
+            lastBackup != null ? lastBackup.getEndTime() : 0,
+            lastBackup != null ? dateFormat.format(new Date(lastBackup.getEndTime())) : "Never");
+    }
+    
     @Override
     @NotNull
     public String getIdentifier() {
@@ -81,41 +160,35 @@ public class ServerBackupExpansion extends PlaceholderExpansion {
         if (backupAPI == null) {
             return "API Disabled";
         }
+        Stats stats = this.stats;
         
         // %serverbackup_last_backup_time%
         if (identifier.equals("last_backup_time")) {
-            BackupResult lastBackup = backupAPI.getLastBackup();
-            if (lastBackup == null) {
-                return "Never";
-            }
-            return dateFormat.format(new Date(lastBackup.getEndTime()));
+            return stats.lastBackupTime;
         }
         
         // %serverbackup_last_backup_ago%
         if (identifier.equals("last_backup_ago")) {
-            BackupResult lastBackup = backupAPI.getLastBackup();
-            if (lastBackup == null) {
+            if (!stats.hasLastBackup) {
                 return "Never";
             }
-            long ago = System.currentTimeMillis() - lastBackup.getEndTime();
+            long ago = System.currentTimeMillis() - stats.lastBackupEnd;
             return formatDuration(ago);
         }
         
         // %serverbackup_backup_count%
         if (identifier.equals("backup_count")) {
-            return String.valueOf(backupAPI.getBackupCount());
+            return stats.backupCount;
         }
         
         // %serverbackup_backup_size%
         if (identifier.equals("backup_size")) {
-            long totalSize = backupAPI.getTotalBackupSize();
-            return formatFileSize(totalSize);
+            return stats.backupSize;
         }
         
         // %serverbackup_backup_size_mb%
         if (identifier.equals("backup_size_mb")) {
-            long totalSize = backupAPI.getTotalBackupSize();
-            return String.format("%.1f", totalSize / 1024.0 / 1024.0);
+            return stats.backupSizeMb;
         }
         
         // %serverbackup_is_running%
@@ -135,14 +208,13 @@ public class ServerBackupExpansion extends PlaceholderExpansion {
             }
             
             // Calculate based on interval and last backup
-            BackupResult lastBackup = backupAPI.getLastBackup();
-            if (lastBackup == null) {
+            if (!stats.hasLastBackup) {
                 return "Unknown";
             }
             
             int intervalMinutes = plugin.getConfig().getInt("backup.auto-backup-interval", 720);
             long intervalMillis = intervalMinutes * 60 * 1000L;
-            long nextBackupTime = lastBackup.getEndTime() + intervalMillis;
+            long nextBackupTime = stats.lastBackupEnd + intervalMillis;
             long timeUntil = nextBackupTime - System.currentTimeMillis();
             
             if (timeUntil <= 0) {
@@ -154,20 +226,12 @@ public class ServerBackupExpansion extends PlaceholderExpansion {
         
         // %serverbackup_latest_backup_name%
         if (identifier.equals("latest_backup_name")) {
-            List<File> backups = backupAPI.listBackups();
-            if (backups.isEmpty()) {
-                return "None";
-            }
-            return backups.get(0).getName();
+            return stats.latestBackupName;
         }
         
         // %serverbackup_latest_backup_size%
         if (identifier.equals("latest_backup_size")) {
-            List<File> backups = backupAPI.listBackups();
-            if (backups.isEmpty()) {
-                return "0 B";
-            }
-            return formatFileSize(backups.get(0).length());
+            return stats.latestBackupSize;
         }
         
         // %serverbackup_status%
@@ -176,16 +240,15 @@ public class ServerBackupExpansion extends PlaceholderExpansion {
                 return "§e⏳ Backing up...";
             }
             
-            BackupResult lastBackup = backupAPI.getLastBackup();
-            if (lastBackup == null) {
+            if (!stats.hasLastBackup) {
                 return "§7⚠ No backups";
             }
             
-            if (!lastBackup.isSuccess()) {
+            if (!stats.lastBackupSuccess) {
                 return "§c✗ Last failed";
             }
             
-            long ago = System.currentTimeMillis() - lastBackup.getEndTime();
+            long ago = System.currentTimeMillis() - stats.lastBackupEnd;
             if (ago < 3600000) { // Less than 1 hour
                 return "§a✓ Recent";
             } else if (ago < 86400000) { // Less than 1 day
@@ -231,4 +294,35 @@ public class ServerBackupExpansion extends PlaceholderExpansion {
             return seconds + "s";
         }
     }
+    
+    /**
+     * Placeholder values as of the last refresh, already formatted
+     */
+    private static final class Stats {
+        static final Stats EMPTY = new Stats("0", "0 B", "0.0", "None", "0 B", false, false, 0, "Never");
+        
+        final String backupCount;
+        final String backupSize;
+        final String backupSizeMb;
+        final String latestBackupName;
+        final String latestBackupSize;
+        final boolean hasLastBackup;
+        final boolean lastBackupSuccess;
+        final long lastBackupEnd;
+        final String lastBackupTime;
+        
+        Stats(String backupCount, String backupSize, String backupSizeMb, String latestBackupName,
+              String latestBackupSize, boolean hasLastBackup, boolean lastBackupSuccess, long lastBackupEnd,
+              String lastBackupTime) {
+            this.backupCount = backupCount;
+            this.backupSize = backupSize;
+            this.backupSizeMb = backupSizeMb;
+            this.latestBackupName = latestBackupName;
+            this.latestBackupSize = latestBackupSize;
+            this.hasLastBackup = hasLastBackup;
+            this.lastBackupSuccess = lastBackupSuccess;
+            this.lastBackupEnd = lastBackupEnd;
+            this.lastBackupTime = lastBackupTime;
+        }
+    }
 }
@@ -4,13 +4,18 @@ import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.api.BackupJob;
 import com.serverbackup.api.BackupOptions;
+import com.serverbackup.api.BackupProgress;
 import com.serverbackup.api.BackupResult;
 import com.serverbackup.api.BackupType;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.messaging.PluginMessageListener;
 
+import java.io.ByteArrayInputStream;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Listens for network backup requests from BungeeCord/Velocity proxy
@@ -21,6 +26,9 @@ public class NetworkBackupListener implements PluginMessageListener {
     private static final String CHANNEL_REQUEST = "serverbackup:request";
     private static final String CHANNEL_RESPONSE = "serverbackup:response";
     
+    /** Backups started by the proxy that are still running, by request ID */
+    private final Map<String, BackupJob> jobs = new ConcurrentHashMap<>();
+    
     public NetworkBackupListener(ServerBackupPlugin plugin) {
         this.plugin = plugin;
     }
@@ -49,7 +57,8 @@ public class NetworkBackupListener implements PluginMessageListener {
             return;
         }
         
-        ByteArrayDataInput in = ByteStreams.newDataInput(message);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(message);
+        ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
         String subChannel = in.readUTF();
         
         // Handle backup request
@@ -67,6 +76,13 @@ public class NetworkBackupListener implements PluginMessageListener {
             String requestId = in.readUTF();
             sendStatusResponse(player, requestId);
         }
+        // Handle cancel request: the request ID of the backup to cancel, then
+        // optionally whether to cancel any running backup instead
+        else if (subChannel.equals("CancelRequest")) {
+            String requestId = in.readUTF();
+            boolean anyBackup = bytes.available() > 0 && in.readBoolean();
+            cancelNetworkBackup(player, requestId, anyBackup);
+        }
     }
     
     /**
@@ -98,10 +114,13 @@ public class NetworkBackupListener implements PluginMessageListener {
                 .build();
         }
         
-        CompletableFuture<BackupResult> future = plugin.getAPI().createBackup(options);
+        BackupJob job = plugin.getAPI().createBackupJob(options);
+        jobs.put(requestId, job);
+        CompletableFuture<BackupResult> future = job.getResult();
         
         // Handle result
         future.whenComplete((result, error) -> {
+            jobs.remove(requestId);
             if (error != null) {
                 plugin.getLogger().warning("Network backup failed: " + error.getMessage());
                 sendBackupResponse(player, requestId, false, "ERROR: " + error.getMessage(), 0, 0);
@@ -110,6 +129,9 @@ public class NetworkBackupListener implements PluginMessageListener {
                 long size = result.getBackupFile() != null ? result.getBackupFile().length() : 0;
                 plugin.getLogger().info("Network backup completed: " + requestId + " (" + duration + "ms, " + (size/1024/1024) + "MB)");
                 sendBackupResponse(player, requestId, true, "SUCCESS", duration, size);
+            } else if (job.isCancelled()) {
+                plugin.getLogger().info("Network backup cancelled: " + requestId);
+                sendBackupResponse(player, requestId, false, "CANCELLED", result.getDuration(), 0);
             } else {
                 plugin.getLogger().warning("Network backup failed: " + result.getError());
                 sendBackupResponse(player, requestId, false, "FAILED: " + result.getError(), result.getDuration(), 0);
@@ -117,6 +139,36 @@ public class NetworkBackupListener implements PluginMessageListener {
         });
     }
     
+    /**
+     * Cancel a backup the proxy started, or with anyBackup whatever backup is
+     * running, and acknowledge with a CancelResponse. The backup itself then
+     * reports CANCELLED in its BackupResponse.
+     */
+    private void cancelNetworkBackup(Player player, String requestId, boolean anyBackup) {
+        boolean cancelled = false;
+        if (plugin.getAPI() != null) {
+            String reason = "Cancelled by the network (" + requestId + ")";
+            BackupJob job = jobs.get(requestId);
+            if (job != null) {
+                cancelled = job.cancel(reason);
+            } else if (anyBackup) {
+                BackupProgress running = plugin.getAPI().getProgress();
+                cancelled = running != null && plugin.getAPI().cancelBackup(running.getSessionId(), reason);
+            }
+        }
+        plugin.getLogger().info("Received network cancel request: " + requestId + (cancelled ? " (cancelled)" : " (nothing to cancel)"));
+        
+        ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeUTF("CancelResponse");
+        out.writeUTF(requestId);
+        out.writeUTF(plugin.getServer().getName());
+        out.writeBoolean(cancelled);
+        
+        if (player != null && player.isOnline()) {
+            player.sendPluginMessage(plugin, CHANNEL_RESPONSE, out.toByteArray());
+        }
+    }
+    
     /**
      * Send backup result back to proxy
      */
@@ -145,16 +197,25 @@ public class NetworkBackupListener implements PluginMessageListener {
     }
     
     /**
-     * Send server status (backup count, last backup time, etc.)
+     * Send server status (backup count, progress of a running backup)
+     * 
+     * The progress fields come last, so proxies that only read the first
+     * fields keep working.
      */
     private void sendStatusResponse(Player player, String requestId) {
+        BackupProgress progress = plugin.getAPI() != null ? plugin.getAPI().getProgress() : null;
         ByteArrayDataOutput out = ByteStreams.newDataOutput();
         out.writeUTF("StatusResponse");
         out.writeUTF(requestId);
         out.writeUTF(plugin.getServer().getName());
         out.writeBoolean(plugin.getAPI() != null); // API available
-        out.writeBoolean(false); // Currently running (simplified)
-        out.writeInt(plugin.getAPI() != null ? plugin.getAPI().listBackups(null).size() : 0); // Backup count
+        out.writeBoolean(progress != null); // Currently running
+        out.writeInt(plugin.getAPI() != null ? plugin.getAPI().getBackupCount() : 0); // Backup count
+        out.writeDouble(progress != null ? progress.getPercent() : -1);
+        out.writeLong(progress != null ? progress.getFilesDone() : 0);
+        out.writeLong(progress != null ? progress.getBytesRead() : 0);
+        out.writeLong(progress != null ? progress.getEstimatedBytes() : -1);
+        out.writeLong(progress != null ? progress.getEtaMillis() : -1);
         
         if (player != null && player.isOnline()) {
             player.sendPluginMessage(plugin, CHANNEL_RESPONSE, out.toByteArray());
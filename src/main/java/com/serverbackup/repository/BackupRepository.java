@@ -0,0 +1,615 @@
+package com.serverbackup.repository;
+
+import com.serverbackup.util.CancellationSignal;
+import com.serverbackup.util.IoLimiter;
+import com.serverbackup.util.ProgressTracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed, deduplicated backup repository
+ *
+ * Files are split into content-defined chunks. Each distinct chunk is stored
+ * once, in a pack file, and every backup is a snapshot listing the chunks of
+ * each file. A new snapshot of a mostly unchanged world only adds the chunks
+ * that changed; unchanged files (same size and modification time as in the
+ * previous snapshot) are not even read again.
+ *
+ * Layout:
+ * <pre>
+ * repository/
+ *   packs/ab/abcdef....pack    chunk blobs plus a trailer listing them
+ *   snapshots/backup-...snapshot
+ * </pre>
+ *
+ * Deleting a snapshot only removes its snapshot file; {@link #prune()} then
+ * deletes packs that no snapshot needs and rewrites packs that are mostly unused.
+ */
+public class BackupRepository {
+    
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+    private static final String SNAPSHOT_FOLDER = "snapshots";
+    private static final String PACK_FOLDER = "packs";
+    
+    private final File directory;
+    private final File snapshotDirectory;
+    private final File packDirectory;
+    private final ExecutorService executor;
+    private final Logger logger;
+    private final ContentChunker chunker = new ContentChunker();
+    
+    /** Held by backup, restore and prune so they never see each other's partial state */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Object writerLock = new Object();
+    private final Map<ChunkId, PackFile.Blob> index = new ConcurrentHashMap<>();
+    private final PackWriter writer;
+    private volatile IoLimiter limiter = IoLimiter.UNLIMITED;
+    private boolean indexLoaded;
+    private volatile boolean pruneNeeded;
+    
+    /**
+     * @param directory Repository folder
+     * @param executor Pool used to chunk and compress files in parallel
+     * @param packSize Target size of pack files in bytes
+     */
+    public BackupRepository(File directory, ExecutorService executor, long packSize, Logger logger) {
+        this.directory = directory;
+        this.snapshotDirectory = new File(directory, SNAPSHOT_FOLDER);
+        this.packDirectory = new File(directory, PACK_FOLDER);
+        this.executor = executor;
+        this.logger = logger;
+        this.writer = new PackWriter(packDirectory, packSize);
+    }
+    
+    /**
+     * Charge reading files and packs, and writing packs and restored files, to these caps
+     */
+    public void setIoLimiter(IoLimiter limiter) {
+        this.limiter = limiter;
+        synchronized (writerLock) {
+            writer.setIoLimiter(limiter);
+        }
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Folder holding the snapshot files
+     */
+    public File getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+    
+    /**
+     * Store a new snapshot
+     *
+     * @param name Snapshot name, must end with {@link #SNAPSHOT_EXTENSION}
+     * @param type Backup type name recorded in the snapshot
+     * @param worlds World names recorded in the snapshot
+     * @param roots Folders to back up, keyed by the path prefix they get in the snapshot
+     */
+    public Snapshot backup(String name, String type, Set<String> worlds, Map<String, File> roots) throws IOException {
+        return backup(name, type, worlds, roots, null, null);
+    }
+    
+    /**
+     * Store a new snapshot, reporting every file stored to a progress tracker
+     *
+     * @param progress Tracker to report to, or null
+     * @param cancellation Checked before every file and chunk; once cancelled the
+     *                     open pack is discarded and nothing is saved. Packs already
+     *                     finished are removed by the prune after the next snapshot.
+     *                     May be null.
+     */
+    public Snapshot backup(String name, String type, Set<String> worlds, Map<String, File> roots,
+                           ProgressTracker progress, CancellationSignal cancellation) throws IOException {
+        lock.lock();
+        try {
+            loadIndex();
+            Snapshot previous = findLatest();
+            Map<String, Snapshot.FileEntry> previousFiles = new HashMap<>();
+            if (previous != null) {
+                for (Snapshot.FileEntry entry : previous.getFiles()) {
+                    previousFiles.put(entry.getPath(), entry);
+                }
+            }
+            
+            AtomicLong added = new AtomicLong();
+            // Cleared before the open pack is dropped, so tasks still running cannot add to a later snapshot's pack
+            AtomicBoolean writing = new AtomicBoolean(true);
+            boolean saved = false;
+            List<Future<Snapshot.FileEntry>> futures = new ArrayList<>();
+            try {
+                for (Map.Entry<String, File> root : roots.entrySet()) {
+                    Path base = root.getValue().toPath();
+                    List<Path> paths;
+                    try (Stream<Path> walk = Files.walk(base)) {
+                        paths = walk.filter(Files::isRegularFile).sorted().toList();
+                    }
+                    for (Path path : paths) {
+                        String entryPath = root.getKey() + "/" + base.relativize(path).toString().replace(File.separatorChar, '/');
+                        Snapshot.FileEntry before = previousFiles.get(entryPath);
+                        futures.add(executor.submit(() -> storeFile(path.toFile(), entryPath, before, added, progress,
+                            cancellation, writing)));
+                    }
+                }
+                
+                List<Snapshot.FileEntry> files = new ArrayList<>(futures.size());
+                long totalSize = 0;
+                for (Future<Snapshot.FileEntry> future : futures) {
+                    if (cancellation != null) {
+                        cancellation.throwIfCancelled();
+                    }
+                    Snapshot.FileEntry entry = future.get();
+                    if (entry != null) {
+                        files.add(entry);
+                        totalSize += entry.getSize();
+                    }
+                }
+                if (cancellation != null) {
+                    cancellation.throwIfCancelled();
+                }
+                flushPack();
+                
+                Snapshot snapshot = new Snapshot(name, System.currentTimeMillis(), type, worlds,
+                    totalSize, added.get(), files);
+                saveSnapshot(snapshot);
+                saved = true;
+                logger.info("Repository snapshot " + name + ": " + files.size() + " files, "
+                    + added.get() + " bytes of new data");
+                
+                if (pruneNeeded) {
+                    prune();
+                }
+                return snapshot;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Snapshot interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                for (Future<Snapshot.FileEntry> future : futures) {
+                    future.cancel(true);
+                }
+                synchronized (writerLock) {
+                    writing.set(false);
+                    writer.abort();
+                }
+                if (!saved) {
+                    // Packs finished before the failure hold chunks no snapshot refers to
+                    pruneNeeded = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Rebuild every file of a snapshot into a folder
+     *
+     * @return Number of files restored
+     */
+    public int restore(String name, File target) throws IOException {
+        lock.lock();
+        Map<File, RandomAccessFile> packs = new HashMap<>();
+        try {
+            Snapshot snapshot = loadSnapshot(name);
+            if (snapshot == null) {
+                throw new IOException("Snapshot not found or unreadable: " + name);
+            }
+            loadIndex();
+            String targetRoot = target.getCanonicalPath() + File.separator;
+            for (Snapshot.FileEntry file : snapshot.getFiles()) {
+                File out = new File(target, file.getPath());
+                if (!out.getCanonicalPath().startsWith(targetRoot)) {
+                    throw new IOException("Refusing to restore outside target folder: " + file.getPath());
+                }
+                out.getParentFile().mkdirs();
+                try (OutputStream os = new BufferedOutputStream(limiter.throttle(Files.newOutputStream(out.toPath())), 256 * 1024)) {
+                    for (ChunkId chunk : file.getChunks()) {
+                        PackFile.Blob blob = index.get(chunk);
+                        if (blob == null) {
+                            throw new IOException("Chunk " + chunk + " of " + file.getPath() + " is missing from the repository");
+                        }
+                        RandomAccessFile pack = packs.get(blob.getPack());
+                        if (pack == null) {
+                            pack = new RandomAccessFile(blob.getPack(), "r");
+                            packs.put(blob.getPack(), pack);
+                        }
+                        limiter.acquireRead(blob.getLength());
+                        os.write(PackFile.readChunk(pack, blob));
+                    }
+                }
+                out.setLastModified(file.getLastModified());
+            }
+            return snapshot.getFiles().size();
+        } finally {
+            for (RandomAccessFile pack : packs.values()) {
+                try {
+                    pack.close();
+                } catch (IOException ignored) {
+                }
+            }
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * List snapshot files, in no particular order
+     */
+    public List<File> listSnapshots() {
+        File[] files = snapshotDirectory.listFiles((dir, fileName) -> fileName.endsWith(SNAPSHOT_EXTENSION));
+        return files != null ? List.of(files) : List.of();
+    }
+    
+    public File getSnapshotFile(String name) {
+        return new File(snapshotDirectory, name);
+    }
+    
+    /**
+     * Load a snapshot with its file list
+     *
+     * @return Snapshot or null if missing or unreadable
+     */
+    public Snapshot loadSnapshot(String name) {
+        return readSnapshot(name, false);
+    }
+    
+    /**
+     * Load only a snapshot's metadata (type, worlds, sizes)
+     */
+    public Snapshot loadSnapshotHeader(String name) {
+        return readSnapshot(name, true);
+    }
+    
+    /**
+     * Remove a snapshot. Its data stays in the packs until the next {@link #prune()}.
+     */
+    public boolean deleteSnapshot(String name) {
+        File file = getSnapshotFile(name);
+        if (!file.isFile() || !file.delete()) {
+            return false;
+        }
+        pruneNeeded = true;
+        return true;
+    }
+    
+    /**
+     * Prune if snapshots were deleted since the last prune
+     */
+    public void pruneIfNeeded() throws IOException {
+        lock.lock();
+        try {
+            if (pruneNeeded) {
+                prune();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Delete pack data no snapshot refers to. Packs that are more than half
+     * unused are rewritten with only the chunks still needed.
+     *
+     * @return Bytes freed on disk
+     */
+    public long prune() throws IOException {
+        lock.lock();
+        try {
+            loadIndex();
+            pruneNeeded = false;
+            Set<ChunkId> referenced = new HashSet<>();
+            for (File file : listSnapshots()) {
+                Snapshot snapshot = loadSnapshot(file.getName());
+                if (snapshot == null) {
+                    logger.warning("Not pruning repository: snapshot " + file.getName() + " is unreadable");
+                    return 0;
+                }
+                for (Snapshot.FileEntry entry : snapshot.getFiles()) {
+                    referenced.addAll(entry.getChunks());
+                }
+            }
+            
+            List<File> obsolete = new ArrayList<>();
+            int repacked = 0;
+            for (File pack : listPacks()) {
+                List<PackFile.Blob> blobs;
+                try {
+                    blobs = PackFile.readBlobs(pack);
+                } catch (IOException e) {
+                    logger.warning("Skipping unreadable pack " + pack.getName() + ": " + e.getMessage());
+                    continue;
+                }
+                List<PackFile.Blob> used = new ArrayList<>();
+                long usedBytes = 0;
+                for (PackFile.Blob blob : blobs) {
+                    PackFile.Blob indexed = index.get(blob.getId());
+                    if (referenced.contains(blob.getId()) && indexed != null && indexed.getPack().equals(pack)) {
+                        used.add(blob);
+                        usedBytes += blob.getLength();
+                    }
+                }
+                if (used.isEmpty()) {
+                    obsolete.add(pack);
+                } else if (pack.length() - usedBytes > pack.length() / 2) {
+                    copyBlobs(pack, used);
+                    obsolete.add(pack);
+                    repacked++;
+                }
+            }
+            flushPack();
+            
+            Set<File> removed = new HashSet<>(obsolete);
+            index.values().removeIf(blob -> removed.contains(blob.getPack()));
+            long freed = 0;
+            for (File pack : obsolete) {
+                long length = pack.length();
+                if (pack.delete()) {
+                    freed += length;
+                } else {
+                    logger.warning("Could not delete pack " + pack.getName());
+                }
+            }
+            deleteLeftovers();
+            
+            if (!obsolete.isEmpty()) {
+                logger.info("Pruned repository: removed " + obsolete.size() + " packs (" + repacked
+                    + " rewritten), freed " + freed + " bytes");
+            }
+            return freed;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Bytes used on disk by packs and snapshots
+     */
+    public long getDiskUsage() {
+        long size = 0;
+        for (File pack : listPacks()) {
+            size += pack.length();
+        }
+        for (File snapshot : listSnapshots()) {
+            size += snapshot.length();
+        }
+        return size;
+    }
+    
+    private Snapshot.FileEntry storeFile(File file, String path, Snapshot.FileEntry previous,
+                                         AtomicLong added, ProgressTracker progress,
+                                         CancellationSignal cancellation, AtomicBoolean writing) throws IOException {
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (previous != null && previous.getSize() == size && previous.getLastModified() == lastModified
+                && index.keySet().containsAll(previous.getChunks())) {
+            if (progress != null) {
+                progress.fileDone(size, 0);
+            }
+            return new Snapshot.FileEntry(path, size, lastModified, previous.getChunks());
+        }
+        
+        List<ChunkId> chunks = new ArrayList<>();
+        long[] length = new long[1];
+        AtomicLong fileAdded = new AtomicLong();
+        try (InputStream in = limiter.throttle(Files.newInputStream(file.toPath()))) {
+            chunker.split(in, (data, chunkLength) -> {
+                if (cancellation != null) {
+                    cancellation.throwIfCancelled();
+                }
+                chunks.add(storeChunk(data, chunkLength, fileAdded, writing));
+                length[0] += chunkLength;
+            });
+        } catch (IOException e) {
+            if (e.getMessage() != null && e.getMessage().contains("locked")) {
+                logger.warning("Skipping locked file: " + file.getName());
+                if (progress != null) {
+                    progress.fileDone(size, 0);
+                }
+                return null;
+            }
+            throw e;
+        } finally {
+            added.addAndGet(fileAdded.get());
+        }
+        if (progress != null) {
+            progress.fileDone(length[0], fileAdded.get());
+        }
+        return new Snapshot.FileEntry(path, length[0], lastModified, List.copyOf(chunks));
+    }
+    
+    /**
+     * Store a chunk unless the repository already has it
+     *
+     * @param writing Whether the snapshot the chunk belongs to is still being written
+     */
+    private ChunkId storeChunk(byte[] data, int length, AtomicLong added, AtomicBoolean writing) throws IOException {
+        ChunkId id = ChunkId.of(data, 0, length);
+        if (index.containsKey(id)) {
+            return id;
+        }
+        
+        // Keep the deflated form only if it saves at least 10%
+        int limit = length - length / 10;
+        byte[] deflated = new byte[limit];
+        int deflatedLength = 0;
+        boolean compressed;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished() && deflatedLength < limit) {
+                deflatedLength += deflater.deflate(deflated, deflatedLength, limit - deflatedLength);
+            }
+            compressed = deflater.finished();
+        } finally {
+            deflater.end();
+        }
+        
+        synchronized (writerLock) {
+            if (!writing.get()) {
+                throw new IOException("Snapshot was abandoned, not storing further chunks");
+            }
+            if (index.containsKey(id) || writer.contains(id)) {
+                return id;
+            }
+            if (compressed) {
+                writer.add(id, deflated, deflatedLength, length, true);
+                added.addAndGet(deflatedLength);
+            } else {
+                writer.add(id, data, length, length, false);
+                added.addAndGet(length);
+            }
+            if (writer.isFull()) {
+                for (PackFile.Blob blob : writer.finish()) {
+                    index.put(blob.getId(), blob);
+                }
+            }
+        }
+        return id;
+    }
+    
+    private void copyBlobs(File pack, List<PackFile.Blob> blobs) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(pack, "r")) {
+            for (PackFile.Blob blob : blobs) {
+                byte[] stored = PackFile.readStored(file, blob);
+                synchronized (writerLock) {
+                    writer.add(blob.getId(), stored, stored.length, blob.getRawLength(), blob.isCompressed());
+                    if (writer.isFull()) {
+                        for (PackFile.Blob moved : writer.finish()) {
+                            index.put(moved.getId(), moved);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private void flushPack() throws IOException {
+        synchronized (writerLock) {
+            for (PackFile.Blob blob : writer.finish()) {
+                index.put(blob.getId(), blob);
+            }
+        }
+    }
+    
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        for (File pack : listPacks()) {
+            try {
+                for (PackFile.Blob blob : PackFile.readBlobs(pack)) {
+                    index.putIfAbsent(blob.getId(), blob);
+                }
+            } catch (IOException e) {
+                logger.warning("Ignoring unreadable pack " + pack.getName() + ": " + e.getMessage());
+            }
+        }
+        indexLoaded = true;
+    }
+    
+    private Snapshot findLatest() {
+        Snapshot latest = null;
+        for (File file : listSnapshots()) {
+            Snapshot header = loadSnapshotHeader(file.getName());
+            if (header != null && (latest == null || header.getCreatedAt() > latest.getCreatedAt())) {
+                latest = header;
+            }
+        }
+        return latest != null ? loadSnapshot(latest.getName()) : null;
+    }
+    
+    private List<File> listPacks() {
+        List<File> packs = new ArrayList<>();
+        File[] folders = packDirectory.listFiles(File::isDirectory);
+        if (folders != null) {
+            for (File folder : folders) {
+                File[] files = folder.listFiles((dir, fileName) -> fileName.endsWith(PackFile.EXTENSION));
+                if (files != null) {
+                    packs.addAll(List.of(files));
+                }
+            }
+        }
+        return packs;
+    }
+    
+    /**
+     * Remove temporary packs left behind by an interrupted backup
+     */
+    private void deleteLeftovers() {
+        File[] temps = packDirectory.listFiles((dir, fileName) -> fileName.endsWith(".tmp"));
+        if (temps != null) {
+            for (File temp : temps) {
+                temp.delete();
+            }
+        }
+    }
+    
+    private void saveSnapshot(Snapshot snapshot) throws IOException {
+        if (!snapshotDirectory.exists() && !snapshotDirectory.mkdirs()) {
+            throw new IOException("Could not create snapshot folder: " + snapshotDirectory);
+        }
+        Path target = getSnapshotFile(snapshot.getName()).toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)))) {
+            snapshot.write(out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private Snapshot readSnapshot(String name, boolean headerOnly) {
+        File file = getSnapshotFile(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file.toPath()), 64 * 1024)))) {
+            return Snapshot.read(in, headerOnly);
+        } catch (IOException e) {
+            logger.warning("Could not read snapshot " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.serverbackup.repository;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 of a chunk's content, used as its address in the repository
+ */
+public final class ChunkId {
+    
+    public static final int LENGTH = 32;
+    
+    private final byte[] hash;
+    private final int hashCode;
+    
+    private ChunkId(byte[] hash) {
+        this.hash = hash;
+        // SHA-256 output is uniform, the first bytes are a good enough hash code
+        this.hashCode = (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+    }
+    
+    public static ChunkId of(byte[] data, int offset, int length) {
+        MessageDigest digest = newDigest();
+        digest.update(data, offset, length);
+        return new ChunkId(digest.digest());
+    }
+    
+    public static ChunkId read(DataInput in) throws IOException {
+        byte[] hash = new byte[LENGTH];
+        in.readFully(hash);
+        return new ChunkId(hash);
+    }
+    
+    public void write(DataOutput out) throws IOException {
+        out.write(hash);
+    }
+    
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ChunkId && Arrays.equals(hash, ((ChunkId) other).hash);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+    
+    @Override
+    public String toString() {
+        return HexFormat.of().formatHex(hash);
+    }
+}
@@ -0,0 +1,115 @@
+package com.serverbackup.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with a gear rolling hash (FastCDC style)
+ *
+ * Cut points depend only on the bytes around them, so inserting or rewriting
+ * data in one place of a file only changes the chunks touching that place.
+ * Normalized chunking is used: a stricter mask before the average size and a
+ * looser one after it keeps chunk sizes close to the average.
+ */
+public class ContentChunker {
+    
+    public static final int DEFAULT_MIN_SIZE = 16 * 1024;
+    public static final int DEFAULT_AVG_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 256 * 1024;
+    
+    /** Fixed seed: cut points must never change between versions, or deduplication breaks */
+    private static final long[] GEAR = new long[256];
+    
+    static {
+        SplittableRandom random = new SplittableRandom(0x5342434443L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+    
+    /**
+     * Receives each chunk; the array is reused, so copy what must be kept
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] data, int length) throws IOException;
+    }
+    
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+    
+    public ContentChunker() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_AVG_SIZE, DEFAULT_MAX_SIZE);
+    }
+    
+    /**
+     * @param avgSize Target average chunk size, must be a power of two
+     */
+    public ContentChunker(int minSize, int avgSize, int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes: " + minSize + "/" + avgSize + "/" + maxSize);
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        // The gear hash shifts left, so its high bits depend on the most bytes
+        this.strictMask = -1L << (64 - (bits + 2));
+        this.looseMask = -1L << (64 - (bits - 2));
+    }
+    
+    /**
+     * Split a stream into chunks
+     */
+    public void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxSize];
+        int length = 0;
+        boolean eof = false;
+        
+        while (true) {
+            while (!eof && length < buffer.length) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (length == 0) {
+                return;
+            }
+            
+            int cut = findCut(buffer, length);
+            consumer.accept(buffer, cut);
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+    }
+    
+    private int findCut(byte[] data, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(end, avgSize);
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
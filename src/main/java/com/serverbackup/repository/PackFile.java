@@ -0,0 +1,155 @@
+package com.serverbackup.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Layout of pack files, which hold the chunks of a repository
+ *
+ * A pack starts with a magic and version, followed by the chunk blobs (each
+ * deflated, or stored when that did not help) and ends with a trailer listing
+ * every blob's id and position. The trailer length and magic are the last 8
+ * bytes, so the blob list can be read without scanning the pack.
+ */
+public final class PackFile {
+    
+    static final int MAGIC = 0x5342504B; // "SBPK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final String EXTENSION = ".pack";
+    
+    private PackFile() {
+    }
+    
+    /**
+     * Position of one chunk inside a pack
+     */
+    public static final class Blob {
+        private final ChunkId id;
+        private final File pack;
+        private final long offset;
+        private final int length;
+        private final int rawLength;
+        private final boolean compressed;
+        
+        Blob(ChunkId id, File pack, long offset, int length, int rawLength, boolean compressed) {
+            this.id = id;
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.compressed = compressed;
+        }
+        
+        public ChunkId getId() { return id; }
+        public File getPack() { return pack; }
+        public long getOffset() { return offset; }
+        
+        /**
+         * Bytes taken up in the pack
+         */
+        public int getLength() { return length; }
+        
+        /**
+         * Size of the chunk itself
+         */
+        public int getRawLength() { return rawLength; }
+        
+        public boolean isCompressed() { return compressed; }
+    }
+    
+    /**
+     * Read the blob list from a pack's trailer
+     */
+    public static List<Blob> readBlobs(File pack) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(pack, "r")) {
+            long fileLength = file.length();
+            if (fileLength < HEADER_SIZE + 12) {
+                throw new IOException("Pack file too short: " + pack.getName());
+            }
+            file.seek(0);
+            if (file.readInt() != MAGIC) {
+                throw new IOException("Not a pack file: " + pack.getName());
+            }
+            int version = file.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported pack version " + version + ": " + pack.getName());
+            }
+            
+            file.seek(fileLength - 8);
+            int trailerLength = file.readInt();
+            if (file.readInt() != MAGIC || trailerLength < 4 || trailerLength > fileLength - HEADER_SIZE - 8) {
+                throw new IOException("Pack file has no valid trailer: " + pack.getName());
+            }
+            byte[] trailer = new byte[trailerLength];
+            file.seek(fileLength - 8 - trailerLength);
+            file.readFully(trailer);
+            
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(trailer));
+            int count = in.readInt();
+            List<Blob> blobs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ChunkId id = ChunkId.read(in);
+                long offset = in.readLong();
+                int length = in.readInt();
+                int rawLength = in.readInt();
+                boolean compressed = in.readBoolean();
+                blobs.add(new Blob(id, pack, offset, length, rawLength, compressed));
+            }
+            return blobs;
+        }
+    }
+    
+    /**
+     * Read a blob as stored in the pack (possibly deflated)
+     */
+    static byte[] readStored(RandomAccessFile file, Blob blob) throws IOException {
+        byte[] stored = new byte[blob.getLength()];
+        file.seek(blob.getOffset());
+        file.readFully(stored);
+        return stored;
+    }
+    
+    /**
+     * Read a chunk's content and verify it against its id
+     */
+    static byte[] readChunk(RandomAccessFile file, Blob blob) throws IOException {
+        byte[] stored = readStored(file, blob);
+        byte[] data;
+        if (blob.isCompressed()) {
+            data = new byte[blob.getRawLength()];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(stored);
+                int n = 0;
+                while (n < data.length && !inflater.finished()) {
+                    int read = inflater.inflate(data, n, data.length - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += read;
+                }
+                if (n != data.length) {
+                    throw new IOException("Truncated chunk " + blob.getId() + " in " + blob.getPack().getName());
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt chunk " + blob.getId() + " in " + blob.getPack().getName(), e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            data = stored;
+        }
+        if (!ChunkId.of(data, 0, data.length).equals(blob.getId())) {
+            throw new IOException("Checksum mismatch for chunk " + blob.getId() + " in " + blob.getPack().getName());
+        }
+        return data;
+    }
+}
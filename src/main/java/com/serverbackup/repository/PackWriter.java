@@ -0,0 +1,171 @@
+package com.serverbackup.repository;
+
+import com.serverbackup.util.IoLimiter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Appends chunk blobs to a pack file until it reaches its target size
+ *
+ * The pack is written to a temporary file and renamed to the SHA-256 of its
+ * content when finished, so a pack that exists under its final name is always
+ * complete. Not thread-safe.
+ */
+class PackWriter {
+    
+    private final File packsDirectory;
+    private final long targetSize;
+    
+    private File tempFile;
+    private DigestOutputStream digestOut;
+    private DataOutputStream out;
+    private long position;
+    private IoLimiter limiter = IoLimiter.UNLIMITED;
+    private final List<Pending> pending = new ArrayList<>();
+    private final Set<ChunkId> pendingIds = new HashSet<>();
+    
+    private static final class Pending {
+        final ChunkId id;
+        final long offset;
+        final int length;
+        final int rawLength;
+        final boolean compressed;
+        
+        Pending(ChunkId id, long offset, int length, int rawLength, boolean compressed) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.compressed = compressed;
+        }
+    }
+    
+    PackWriter(File packsDirectory, long targetSize) {
+        this.packsDirectory = packsDirectory;
+        this.targetSize = targetSize;
+    }
+    
+    /**
+     * Charge pack writes to this cap, from the next pack on
+     */
+    void setIoLimiter(IoLimiter limiter) {
+        this.limiter = limiter;
+    }
+    
+    boolean contains(ChunkId id) {
+        return pendingIds.contains(id);
+    }
+    
+    boolean isFull() {
+        return position >= targetSize;
+    }
+    
+    /**
+     * Append a blob to the open pack
+     *
+     * @param stored Blob bytes as they go into the pack
+     * @param rawLength Size of the chunk before compression
+     */
+    void add(ChunkId id, byte[] stored, int length, int rawLength, boolean compressed) throws IOException {
+        if (out == null) {
+            open();
+        }
+        pending.add(new Pending(id, position, length, rawLength, compressed));
+        pendingIds.add(id);
+        out.write(stored, 0, length);
+        position += length;
+    }
+    
+    /**
+     * Write the trailer and move the pack to its final name
+     *
+     * @return Blobs of the finished pack, empty if nothing was written
+     */
+    List<PackFile.Blob> finish() throws IOException {
+        if (out == null) {
+            return Collections.emptyList();
+        }
+        ByteArrayOutputStream trailerBytes = new ByteArrayOutputStream(4 + pending.size() * 49);
+        DataOutputStream trailer = new DataOutputStream(trailerBytes);
+        trailer.writeInt(pending.size());
+        for (Pending blob : pending) {
+            blob.id.write(trailer);
+            trailer.writeLong(blob.offset);
+            trailer.writeInt(blob.length);
+            trailer.writeInt(blob.rawLength);
+            trailer.writeBoolean(blob.compressed);
+        }
+        trailer.flush();
+        trailerBytes.writeTo(out);
+        out.writeInt(trailerBytes.size());
+        out.writeInt(PackFile.MAGIC);
+        out.close();
+        
+        String name = HexFormat.of().formatHex(digestOut.getMessageDigest().digest());
+        File folder = new File(packsDirectory, name.substring(0, 2));
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create pack folder: " + folder);
+        }
+        File pack = new File(folder, name + PackFile.EXTENSION);
+        Files.move(tempFile.toPath(), pack.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        List<PackFile.Blob> blobs = new ArrayList<>(pending.size());
+        for (Pending blob : pending) {
+            blobs.add(new PackFile.Blob(blob.id, pack, blob.offset, blob.length, blob.rawLength, blob.compressed));
+        }
+        reset();
+        return blobs;
+    }
+    
+    /**
+     * Drop the open pack without writing it
+     */
+    void abort() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            tempFile.delete();
+        }
+        reset();
+    }
+    
+    private void open() throws IOException {
+        if (!packsDirectory.exists() && !packsDirectory.mkdirs()) {
+            throw new IOException("Could not create pack folder: " + packsDirectory);
+        }
+        tempFile = File.createTempFile("pack-", ".tmp", packsDirectory);
+        MessageDigest digest = ChunkId.newDigest();
+        OutputStream file = limiter.throttle(Files.newOutputStream(tempFile.toPath()));
+        digestOut = new DigestOutputStream(new BufferedOutputStream(file, 256 * 1024), digest);
+        out = new DataOutputStream(digestOut);
+        out.writeInt(PackFile.MAGIC);
+        out.writeInt(PackFile.VERSION);
+        position = PackFile.HEADER_SIZE;
+    }
+    
+    private void reset() {
+        tempFile = null;
+        digestOut = null;
+        out = null;
+        position = 0;
+        pending.clear();
+        pendingIds.clear();
+    }
+}
@@ -0,0 +1,150 @@
+package com.serverbackup.repository;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One backup inside the repository: its metadata and the chunk list of every file
+ */
+public class Snapshot {
+    
+    private static final int MAGIC = 0x5342534E; // "SBSN"
+    private static final int VERSION = 1;
+    
+    private final String name;
+    private final long createdAt;
+    private final String type;
+    private final Set<String> worlds;
+    private final long totalSize;
+    private final long addedSize;
+    private final List<FileEntry> files;
+    
+    public Snapshot(String name, long createdAt, String type, Set<String> worlds,
+                    long totalSize, long addedSize, List<FileEntry> files) {
+        this.name = name;
+        this.createdAt = createdAt;
+        this.type = type;
+        this.worlds = worlds;
+        this.totalSize = totalSize;
+        this.addedSize = addedSize;
+        this.files = files;
+    }
+    
+    public String getName() { return name; }
+    public long getCreatedAt() { return createdAt; }
+    
+    /**
+     * Backup type name ("world", "full", ...)
+     */
+    public String getType() { return type; }
+    
+    public Set<String> getWorlds() { return worlds; }
+    
+    /**
+     * Combined size of all files in the snapshot
+     */
+    public long getTotalSize() { return totalSize; }
+    
+    /**
+     * Bytes of new pack data this snapshot added to the repository
+     */
+    public long getAddedSize() { return addedSize; }
+    
+    public List<FileEntry> getFiles() { return files; }
+    
+    /**
+     * A file and the chunks that make up its content, in order
+     */
+    public static class FileEntry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final List<ChunkId> chunks;
+        
+        public FileEntry(String path, long size, long lastModified, List<ChunkId> chunks) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.chunks = chunks;
+        }
+        
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public List<ChunkId> getChunks() { return chunks; }
+    }
+    
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(name);
+        out.writeLong(createdAt);
+        out.writeUTF(type);
+        out.writeInt(worlds.size());
+        for (String world : worlds) {
+            out.writeUTF(world);
+        }
+        out.writeLong(totalSize);
+        out.writeLong(addedSize);
+        out.writeInt(files.size());
+        for (FileEntry file : files) {
+            out.writeUTF(file.getPath());
+            out.writeLong(file.getSize());
+            out.writeLong(file.getLastModified());
+            out.writeInt(file.getChunks().size());
+            for (ChunkId chunk : file.getChunks()) {
+                chunk.write(out);
+            }
+        }
+    }
+    
+    /**
+     * Read a snapshot; with headerOnly the file list is skipped
+     */
+    static Snapshot read(DataInputStream in, boolean headerOnly) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        String name = in.readUTF();
+        long createdAt = in.readLong();
+        String type = in.readUTF();
+        int worldCount = in.readInt();
+        Set<String> worlds = new LinkedHashSet<>();
+        for (int i = 0; i < worldCount; i++) {
+            worlds.add(in.readUTF());
+        }
+        long totalSize = in.readLong();
+        long addedSize = in.readLong();
+        
+        List<FileEntry> files;
+        if (headerOnly) {
+            files = Collections.emptyList();
+        } else {
+            int count = in.readInt();
+            files = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int chunkCount = in.readInt();
+                List<ChunkId> chunks = new ArrayList<>(chunkCount);
+                for (int c = 0; c < chunkCount; c++) {
+                    chunks.add(ChunkId.read(in));
+                }
+                files.add(new FileEntry(path, size, lastModified, Collections.unmodifiableList(chunks)));
+            }
+        }
+        return new Snapshot(name, createdAt, type, Collections.unmodifiableSet(worlds),
+            totalSize, addedSize, Collections.unmodifiableList(files));
+    }
+}
@@ -0,0 +1,321 @@
+package com.serverbackup.service;
+
+import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.api.TickStatistics;
+import com.serverbackup.execution.BackupStage;
+import com.serverbackup.execution.StageExecutor;
+import com.serverbackup.util.IoLimiter;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches server tick times while backups run and slows the backup down when
+ * the server starts to lag
+ *
+ * Tick times are wall-clock time, so ticks spent waiting on chunk I/O, locks
+ * or GC pauses count in full. Where the server reports how long each tick
+ * took (Paper's ServerTickEndEvent) that duration is used. Otherwise a
+ * main-thread task measures the time between two ticks, which cannot see
+ * below the 50 ms slot; the controller then only reacts to ticks that
+ * overrun it. Once per second the average is compared to
+ * performance.adaptive-throttle.target-mspt: above it the backup's share of the
+ * machine is halved, well below it the share grows back in steps of a tenth
+ * (additive increase, multiplicative decrease). The share scales the thread
+ * count of the compress and scan pools and the read/write bandwidth caps; without a
+ * configured cap the throughput measured when throttling starts is scaled.
+ *
+ * Every backup gets a {@link Recording} of the tick times it ran alongside,
+ * whether or not the controller is enabled.
+ */
+class AdaptiveThrottle {
+    
+    private static final double TICK_MILLIS = 50.0;
+    /** Fallback target when only tick intervals can be measured, 10% over the slot */
+    private static final double INTERVAL_TARGET_MILLIS = TICK_MILLIS * 1.1;
+    private static final String TICK_END_EVENT = "com.destroystokyo.paper.event.server.ServerTickEndEvent";
+    /** Ticks per control step */
+    private static final int WINDOW_TICKS = 20;
+    /** Increase the share only when this far below the target, to avoid oscillating */
+    private static final double HYSTERESIS = 0.8;
+    private static final double SHARE_STEP = 0.1;
+    /** Lowest rate set when throttling a backup without a configured cap */
+    private static final long MIN_REFERENCE_RATE = 1024 * 1024;
+    
+    private final ServerBackupPlugin plugin;
+    private final BackupService backupService;
+    private final List<Recording> recordings = new CopyOnWriteArrayList<>();
+    /** Server's tick end event and its duration getter, null if the server has none */
+    private final Class<? extends Event> tickEndEvent;
+    private final Method tickDuration;
+    private final Listener tickListener = new Listener() { };
+    private int taskId = -1;
+    private boolean listening;
+    /** Set when the tick task is (re)started, so that the gap before it is not counted as a tick */
+    private volatile boolean restarted;
+    
+    // Main thread only
+    private long lastTick;
+    private double windowTotal;
+    private int windowTicks;
+    private long windowRead;
+    private long windowWritten;
+    private long windowStart;
+    
+    // Controller state, main thread only
+    private double share = 1.0;
+    private long referenceRead;
+    private long referenceWrite;
+    
+    AdaptiveThrottle(ServerBackupPlugin plugin, BackupService backupService) {
+        this.plugin = plugin;
+        this.backupService = backupService;
+        
+        Class<? extends Event> event = null;
+        Method duration = null;
+        try {
+            event = Class.forName(TICK_END_EVENT).asSubclass(Event.class);
+            duration = event.getMethod("getTickDuration");
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            event = null; // Not Paper, fall back to tick intervals
+        }
+        this.tickEndEvent = event;
+        this.tickDuration = duration;
+    }
+    
+    /**
+     * Start measuring tick times for a backup. The tick task runs while at least
+     * one recording is open. Safe to call from any thread.
+     */
+    synchronized Recording begin() {
+        Recording recording = new Recording();
+        recordings.add(recording);
+        if (tickEndEvent != null) {
+            if (!listening) {
+                restarted = true;
+                listening = true;
+                plugin.getServer().getPluginManager().registerEvent(tickEndEvent, tickListener,
+                    EventPriority.MONITOR, (listener, event) -> onTickEnd(event), plugin);
+            }
+        } else if (taskId == -1) {
+            restarted = true;
+            taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, this::tick, 1L, 1L);
+        }
+        return recording;
+    }
+    
+    private synchronized void end(Recording recording) {
+        if (!recordings.remove(recording) || !recordings.isEmpty()) {
+            return;
+        }
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+        if (listening) {
+            HandlerList.unregisterAll(tickListener);
+            listening = false;
+        }
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        // Hand the next backup full speed; resetting runs on the main thread with the controller
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (recordings.isEmpty()) {
+                reset();
+            }
+        });
+    }
+    
+    /**
+     * Tick end event of the server, carrying the tick's wall-clock duration
+     */
+    private void onTickEnd(Event event) {
+        if (!tickEndEvent.isInstance(event)) {
+            return;
+        }
+        try {
+            record(((Number) tickDuration.invoke(event)).doubleValue(), System.nanoTime());
+        } catch (ReflectiveOperationException e) {
+            record(TICK_MILLIS, System.nanoTime());
+        }
+    }
+    
+    /**
+     * Fallback measurement: the wall-clock time since the previous tick
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        double millis = lastTick == 0 ? 0 : (now - lastTick) / 1_000_000.0;
+        record(millis, now);
+    }
+    
+    private void record(double millis, long now) {
+        if (restarted || lastTick == 0) {
+            restarted = false;
+            startWindow(now);
+        } else {
+            for (Recording recording : recordings) {
+                recording.add(millis);
+            }
+            windowTotal += millis;
+            if (++windowTicks >= WINDOW_TICKS) {
+                control(windowTotal / windowTicks, now);
+                startWindow(now);
+            }
+        }
+        lastTick = now;
+    }
+    
+    private void startWindow(long now) {
+        IoLimiter limiter = backupService.getIoLimiter();
+        windowTotal = 0;
+        windowTicks = 0;
+        windowStart = now;
+        windowRead = limiter.getReadBucket().getTotalBytes();
+        windowWritten = limiter.getWriteBucket().getTotalBytes();
+    }
+    
+    /**
+     * One control step
+     *
+     * @param averageMspt Average tick time over the last window
+     */
+    private void control(double averageMspt, long now) {
+        if (!plugin.getConfig().getBoolean("performance.adaptive-throttle.enabled", true)) {
+            if (share < 1.0) {
+                reset();
+            }
+            return;
+        }
+        double target = plugin.getConfig().getDouble("performance.adaptive-throttle.target-mspt", 45.0);
+        double minShare = plugin.getConfig().getInt("performance.adaptive-throttle.min-speed-percent", 10) / 100.0;
+        double recover = target * HYSTERESIS;
+        if (tickEndEvent == null) {
+            // Intervals never read below the slot, only overruns can be told apart
+            target = Math.max(target, INTERVAL_TARGET_MILLIS);
+            recover = Math.max(recover, TICK_MILLIS + 1);
+        }
+        
+        double previous = share;
+        if (averageMspt > target) {
+            share = Math.max(minShare, share / 2);
+        } else if (averageMspt < recover) {
+            share = Math.min(1.0, share + SHARE_STEP);
+        }
+        if (share == previous) {
+            return;
+        }
+        
+        IoLimiter limiter = backupService.getIoLimiter();
+        if (previous >= 1.0) {
+            // Throttling starts: remember what the backup achieved unthrottled
+            double seconds = (now - windowStart) / 1e9;
+            referenceRead = Math.max(MIN_REFERENCE_RATE, (long) ((limiter.getReadBucket().getTotalBytes() - windowRead) / seconds));
+            referenceWrite = Math.max(MIN_REFERENCE_RATE, (long) ((limiter.getWriteBucket().getTotalBytes() - windowWritten) / seconds));
+        }
+        apply(limiter);
+        if (share < previous) {
+            plugin.getLogger().info(String.format("Server at %.1f ms/tick (target %.0f), backup slowed to %d%%",
+                averageMspt, target, Math.round(share * 100)));
+        } else if (share >= 1.0) {
+            plugin.getLogger().info("Server tick time back under target, backup at full speed");
+        }
+    }
+    
+    private void apply(IoLimiter limiter) {
+        // The shared unlimited instance must never be given a rate
+        if (limiter != IoLimiter.UNLIMITED) {
+            limiter.getReadBucket().setRate(scaledRate(configuredRate("read"), referenceRead));
+            limiter.getWriteBucket().setRate(scaledRate(configuredRate("write"), referenceWrite));
+        }
+        
+        for (StageExecutor pool : backupService.getExecutors().getStarted()) {
+            if (pool.getStage() == BackupStage.COMPRESS || pool.getStage() == BackupStage.SCAN) {
+                pool.scale(share);
+            }
+        }
+    }
+    
+    /**
+     * Bytes per second for the current share
+     *
+     * @param configured Configured cap, 0 if unlimited
+     * @param reference Throughput measured when throttling started
+     */
+    private long scaledRate(long configured, long reference) {
+        if (share >= 1.0) {
+            return configured;
+        }
+        long base = configured > 0 ? configured : reference;
+        return Math.max(1, (long) (base * share));
+    }
+    
+    private long configuredRate(String direction) {
+        return Math.max(0, plugin.getConfig().getLong("performance.io-limit." + direction + "-mb-per-second", 0)) * 1024 * 1024;
+    }
+    
+    private void reset() {
+        share = 1.0;
+        lastTick = 0;
+        apply(backupService.getIoLimiter());
+    }
+    
+    /**
+     * Tick times measured during one backup, kept as a histogram of 0.1 ms
+     * buckets so that long backups use constant memory
+     */
+    class Recording {
+        
+        private static final double BUCKET_MILLIS = 0.1;
+        private static final int BUCKETS = 10_000;
+        
+        private final int[] histogram = new int[BUCKETS + 1];
+        private int samples;
+        private double total;
+        private double max;
+        private boolean finished;
+        
+        private synchronized void add(double millis) {
+            if (finished) return;
+            histogram[Math.min(BUCKETS, (int) (millis / BUCKET_MILLIS))]++;
+            samples++;
+            total += millis;
+            max = Math.max(max, millis);
+        }
+        
+        /**
+         * Stop recording
+         *
+         * @return Tick times measured, or null if no tick completed
+         */
+        TickStatistics finish() {
+            end(this);
+            synchronized (this) {
+                finished = true;
+                if (samples == 0) {
+                    return null;
+                }
+                return new TickStatistics(samples, total / samples,
+                    percentile(0.50), percentile(0.95), percentile(0.99), max);
+            }
+        }
+        
+        private double percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * samples);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return Math.min(max, (i + 1) * BUCKET_MILLIS);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -6,6 +6,11 @@ import com.serverbackup.api.events.BackupCompleteEvent;
 import com.serverbackup.api.events.BackupDeleteEvent;
 import com.serverbackup.api.events.BackupFailEvent;
 import com.serverbackup.api.events.BackupStartEvent;
+import com.serverbackup.catalog.BackupManifest;
+import com.serverbackup.execution.BackupStage;
+import com.serverbackup.util.BackupCancelledException;
+import com.serverbackup.util.BackupSessionManager;
+import com.serverbackup.util.ProgressTracker;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
@@ -15,6 +20,7 @@ import java.io.File;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.stream.Collectors;
 
 /**
@@ -26,7 +32,7 @@ public class BackupAPIImpl implements BackupAPI {
     
     private final ServerBackupPlugin plugin;
     private final BackupService backupService;
-    private BackupResult lastBackup = null;
+    private volatile BackupResult lastBackup = null;
     
     public BackupAPIImpl(ServerBackupPlugin plugin, BackupService backupService) {
         this.plugin = plugin;
@@ -36,6 +42,12 @@ public class BackupAPIImpl implements BackupAPI {
     @NotNull
     @Override
     public CompletableFuture<BackupResult> createBackup(@NotNull BackupOptions options) {
+        return createBackupJob(options).getResult();
+    }
+    
+    @NotNull
+    @Override
+    public BackupJob createBackupJob(@NotNull BackupOptions options) {
         CompletableFuture<BackupResult> future = new CompletableFuture<>();
         
         // Check if events are enabled
@@ -58,44 +70,75 @@ public class BackupAPIImpl implements BackupAPI {
                     
                 future.complete(result);
                 plugin.getLogger().warning("Backup cancelled: " + reason);
-                return future;
+                return new Job(null, future);
             }
         }
         
+        // The session starts now, so the backup can be cancelled while it waits for a thread
+        BackupSessionManager sessions = backupService.getSessionManager();
+        BackupSessionManager.BackupSession session = sessions.getSession(sessions.startSession(options.getType().getName()));
+        session.attachIoLimiter(backupService.getIoLimiter());
+        
         // Execute backup
         if (options.isAsync()) {
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-                executeBackup(options, future, eventsEnabled);
+            backupService.getExecutors().execute(BackupStage.WRITE, () -> {
+                executeBackup(options, session, future, eventsEnabled);
             });
         } else {
-            executeBackup(options, future, eventsEnabled);
+            executeBackup(options, session, future, eventsEnabled);
         }
         
-        return future;
+        return new Job(session, future);
+    }
+    
+    @Override
+    public boolean cancelBackup(@NotNull UUID sessionId, @NotNull String reason) {
+        BackupSessionManager.BackupSession session = backupService.getSessionManager().getSession(sessionId);
+        return session != null && session.cancel(reason);
     }
     
-    private void executeBackup(BackupOptions options, CompletableFuture<BackupResult> future, boolean eventsEnabled) {
+    private void executeBackup(BackupOptions options, BackupSessionManager.BackupSession session,
+                               CompletableFuture<BackupResult> future, boolean eventsEnabled) {
         long startTime = System.currentTimeMillis();
-        UUID sessionId = UUID.randomUUID();
+        BackupSessionManager sessions = backupService.getSessionManager();
+        UUID sessionId = session.getId();
+        AdaptiveThrottle.Recording ticks = backupService.beginTickRecording();
+        
+        // Pause auto-save and save the worlds being backed up, like the command path does
+        boolean pauseAutoSave = backupService.shouldPauseAutoSave(options.isCompression());
+        Runnable resumeAutoSave = () -> { };
         
         try {
-            // Save worlds on main thread
-            if (!options.getWorldNames().isEmpty()) {
-                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                    for (String worldName : options.getWorldNames()) {
-                        World world = Bukkit.getWorld(worldName);
-                        if (world != null) {
-                            world.save();
-                        }
-                    }
-                });
-                // Wait a bit for save to complete
-                Thread.sleep(1000);
+            session.getCancellation().throwIfCancelled();
+            Set<String> worldNames = new LinkedHashSet<>(options.getWorldNames());
+            if (worldNames.isEmpty()) {
+                for (World world : Bukkit.getWorlds()) {
+                    worldNames.add(world.getName());
+                }
+            }
+            if (Bukkit.isPrimaryThread()) {
+                // Synchronous call: the save cannot be spread over ticks we are blocking
+                backupService.getWorldSaver().saveNow(worldNames, pauseAutoSave);
+                if (pauseAutoSave) {
+                    resumeAutoSave = backupService.getWorldSaver().autoSaveResumer();
+                }
+                session.getCancellation().onCancel(resumeAutoSave);
+            } else {
+                CompletableFuture<Void> saved = backupService.getWorldSaver().save(worldNames, pauseAutoSave);
+                if (pauseAutoSave) {
+                    resumeAutoSave = backupService.getWorldSaver().autoSaveResumer();
+                }
+                // Cancelling turns auto-save back on right away, not once the writer has stopped
+                session.getCancellation().onCancel(resumeAutoSave);
+                backupService.awaitWorldSave(saved);
             }
+            session.getCancellation().throwIfCancelled();
             
             // Create backup using legacy service
             String type = options.getType().getName();
-            File backupFile = backupService.createBackupSync(options);
+            File backupFile = backupService.createBackupSync(options, resumeAutoSave, session);
+            TickStatistics tickStatistics = ticks.finish();
+            backupService.logTickStatistics(tickStatistics);
             
             if (backupFile == null || !backupFile.exists()) {
                 throw new IllegalStateException("Backup file was not created");
@@ -109,11 +152,14 @@ public class BackupAPIImpl implements BackupAPI {
                 .setType(options.getType())
                 .setStartTime(startTime)
                 .setEndTime(System.currentTimeMillis())
-                .setFileSize(backupFile.length())
+                .setFileSize(backupService.getBackupSize(backupFile))
                 .setMetadata(options.getMetadata())
+                .setTickStatistics(tickStatistics)
                 .build();
                 
+            sessions.endSession(sessionId, true);
             lastBackup = result;
+            backupService.fireBackupsChanged();
             future.complete(result);
             
             // Fire BackupCompleteEvent
@@ -129,8 +175,10 @@ public class BackupAPIImpl implements BackupAPI {
                 .setStartTime(startTime)
                 .setEndTime(System.currentTimeMillis())
                 .setError(e)
+                .setTickStatistics(ticks.finish())
                 .build();
                 
+            sessions.endSession(sessionId, false, e.getMessage() != null ? e.getMessage() : e.toString());
             future.complete(result);
             
             // Fire BackupFailEvent
@@ -138,22 +186,28 @@ public class BackupAPIImpl implements BackupAPI {
                 Bukkit.getPluginManager().callEvent(new BackupFailEvent(options, result));
             }
             
-            plugin.getLogger().severe("Backup failed: " + e.getMessage());
-            e.printStackTrace();
+            if (e instanceof BackupCancelledException) {
+                plugin.getLogger().info("Backup cancelled: " + e.getMessage());
+            } else {
+                plugin.getLogger().severe("Backup failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        } finally {
+            resumeAutoSave.run();
         }
     }
     
     @NotNull
     @Override
     public List<File> listBackups() {
-        return backupService.listBackups();
+        // Callers may sort or filter the list, so hand out a copy of the catalog's
+        return new ArrayList<>(backupService.listBackups());
     }
     
     @NotNull
     @Override
     public List<File> listBackups(@NotNull BackupFilter filter) {
-        List<File> allBackups = listBackups();
-        return allBackups.stream()
+        return backupService.listBackups().stream()
             .map(this::fileToBackupInfo)
             .filter(Objects::nonNull)
             .filter(filter::matches)
@@ -163,13 +217,19 @@ public class BackupAPIImpl implements BackupAPI {
     
     @Override
     public boolean deleteBackup(@NotNull String backupName) {
-        File backupDir = getBackupDirectory();
-        File backupFile = new File(backupDir, backupName);
-        return deleteBackup(backupFile);
+        return deleteBackup(backupService.getBackupFile(backupName));
     }
     
     @Override
     public boolean deleteBackup(@NotNull File backupFile) {
+        // Refuse before asking other plugins, incremental backups restore files from their parents
+        List<String> dependents = backupService.getDependentBackups(backupFile.getName());
+        if (!dependents.isEmpty()) {
+            plugin.getLogger().warning("Not deleting " + backupFile.getName() + ", incremental backups still need it: "
+                + String.join(", ", dependents));
+            return false;
+        }
+        
         // Fire BackupDeleteEvent (if enabled)
         boolean eventsEnabled = plugin.getConfig().getBoolean("features.events.enabled", true);
         if (eventsEnabled && plugin.getConfig().getBoolean("features.events.fire-delete-event", true)) {
@@ -190,8 +250,7 @@ public class BackupAPIImpl implements BackupAPI {
     @Nullable
     @Override
     public BackupInfo getBackupInfo(@NotNull String backupName) {
-        File backupDir = getBackupDirectory();
-        File backupFile = new File(backupDir, backupName);
+        File backupFile = backupService.getBackupFile(backupName);
         
         if (!backupFile.exists()) {
             return null;
@@ -210,6 +269,89 @@ public class BackupAPIImpl implements BackupAPI {
         return backupService.getSessionManager().getActiveSessionCount();
     }
     
+    @Nullable
+    @Override
+    public BackupProgress getProgress() {
+        return toProgress(backupService.getSessionManager().getRunningSession());
+    }
+    
+    @Nullable
+    @Override
+    public BackupProgress getProgress(@NotNull UUID sessionId) {
+        return toProgress(backupService.getSessionManager().getSession(sessionId));
+    }
+    
+    @Nullable
+    @Override
+    public Flow.Publisher<BackupProgressEvent> getProgressEvents(@NotNull UUID sessionId) {
+        BackupSessionManager.BackupSession session = backupService.getSessionManager().getSession(sessionId);
+        return session != null ? publisherFor(session) : null;
+    }
+    
+    private ProgressPublisher publisherFor(BackupSessionManager.BackupSession session) {
+        long interval = Math.max(50, plugin.getConfig().getLong("features.public-api.progress-interval-ms", 500));
+        return new ProgressPublisher(session, backupService.getEventScheduler(), interval, plugin.getLogger());
+    }
+    
+    /**
+     * Job handle backed by a backup session
+     */
+    private final class Job implements BackupJob {
+        private final BackupSessionManager.BackupSession session;
+        private final CompletableFuture<BackupResult> result;
+        
+        Job(BackupSessionManager.BackupSession session, CompletableFuture<BackupResult> result) {
+            this.session = session;
+            this.result = result;
+        }
+        
+        @Nullable
+        @Override
+        public UUID getSessionId() {
+            return session != null ? session.getId() : null;
+        }
+        
+        @NotNull
+        @Override
+        public CompletableFuture<BackupResult> getResult() {
+            return result;
+        }
+        
+        @Nullable
+        @Override
+        public BackupProgress getProgress() {
+            // Only while the manager still knows the session, like getProgress(UUID)
+            return session != null ? BackupAPIImpl.this.getProgress(session.getId()) : null;
+        }
+        
+        @Nullable
+        @Override
+        public Flow.Publisher<BackupProgressEvent> getProgressEvents() {
+            return session != null ? publisherFor(session) : null;
+        }
+        
+        @Override
+        public boolean cancel(@NotNull String reason) {
+            return session != null && session.cancel(reason);
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return session != null && session.getCancellation().isCancelled();
+        }
+    }
+    
+    static BackupProgress toProgress(BackupSessionManager.BackupSession session) {
+        if (session == null) {
+            return null;
+        }
+        ProgressTracker progress = session.getProgress();
+        return new BackupProgress(session.getId(), session.getType(), session.getStartTime(),
+            progress.getFilesDone(), progress.getEstimatedFiles(), progress.getBytesRead(), progress.getBytesWritten(),
+            progress.getEstimatedBytes(), session.isCompleted() ? 0 : progress.getBytesPerSecond(),
+            session.isCompleted() ? 0 : progress.getEtaMillis(), session.isSuccess() ? 100 : progress.getPercent());
+    }
+    
     @Nullable
     @Override
     public BackupResult getLastBackup() {
@@ -225,14 +367,13 @@ public class BackupAPIImpl implements BackupAPI {
     
     @Override
     public long getTotalBackupSize() {
-        return listBackups().stream()
-            .mapToLong(File::length)
-            .sum();
+        // Snapshots share their data, so count the repository once instead of per snapshot
+        return backupService.getCatalog().getTotalSize() + backupService.getRepositorySize();
     }
     
     @Override
     public int getBackupCount() {
-        return listBackups().size();
+        return backupService.getCatalog().size();
     }
     
     @Override
@@ -242,15 +383,24 @@ public class BackupAPIImpl implements BackupAPI {
             return 0;
         }
         
-        List<File> backups = listBackups();
+        List<File> backups = backupService.listBackups();
         int toDelete = backups.size() - maxBackups;
         
         if (toDelete <= 0) {
             return 0;
         }
         
+        List<String> retained = new ArrayList<>();
+        for (int i = 0; i < maxBackups; i++) {
+            retained.add(backups.get(i).getName());
+        }
+        
         int deleted = 0;
         for (int i = maxBackups; i < backups.size(); i++) {
+            // Incremental backups still need files stored in their older parents
+            if (backupService.isNeededByIncrementals(backups.get(i).getName(), retained)) {
+                continue;
+            }
             if (deleteBackup(backups.get(i))) {
                 deleted++;
             }
@@ -268,7 +418,51 @@ public class BackupAPIImpl implements BackupAPI {
             return null;
         }
         
-        // Parse backup type from filename or default to WORLD
+        // Backups written since manifests exist describe themselves
+        BackupManifest manifest = backupService.getManifestStore().loadHeader(file.getName());
+        if (manifest != null) {
+            long size;
+            if (manifest.getFormat().equals(BackupManifest.FORMAT_ZIP)) {
+                size = file.length();
+            } else if (manifest.getFormat().equals(BackupManifest.FORMAT_FOLDER)) {
+                size = manifest.getTotalSize();
+            } else {
+                size = manifest.getStoredSize();
+            }
+            return new BackupInfo(
+                file,
+                file.getName(),
+                BackupType.fromString(manifest.getType()),
+                size,
+                Instant.ofEpochMilli(manifest.getStartedAt()),
+                manifest.getWorlds(),
+                !manifest.getFormat().equals(BackupManifest.FORMAT_FOLDER),
+                manifest.getCodec(),
+                manifest.getParentName(),
+                manifest.getFileCount(),
+                manifest.getDurationMillis(),
+                manifest.getMetadata()
+            );
+        }
+        
+        // Repository snapshots record their own metadata
+        if (backupService.isSnapshot(file.getName())) {
+            com.serverbackup.repository.Snapshot snapshot = backupService.getSnapshotInfo(file.getName());
+            if (snapshot == null) {
+                return null;
+            }
+            return new BackupInfo(
+                file,
+                file.getName(),
+                BackupType.fromString(snapshot.getType()),
+                snapshot.getAddedSize(),
+                Instant.ofEpochMilli(snapshot.getCreatedAt()),
+                snapshot.getWorlds(),
+                true
+            );
+        }
+        
+        // Older backups without a manifest: parse backup type from filename or default to WORLD
         BackupType type = BackupType.WORLD;
         if (file.getName().contains("full")) {
             type = BackupType.FULL;
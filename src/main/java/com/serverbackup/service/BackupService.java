@@ -1,27 +1,76 @@
 package com.serverbackup.service;
 
 import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.api.BackupPhase;
+import com.serverbackup.archive.ParallelZipWriter;
+import com.serverbackup.archive.ZipArchiveInput;
+import com.serverbackup.archive.codec.CompressionCodec;
+import com.serverbackup.archive.codec.CompressionCodecs;
+import com.serverbackup.catalog.BackupCatalog;
+import com.serverbackup.catalog.BackupManifest;
+import com.serverbackup.catalog.BackupTier;
+import com.serverbackup.catalog.ManifestStore;
+import com.serverbackup.catalog.TierCatalog;
+import com.serverbackup.execution.BackupExecutors;
+import com.serverbackup.execution.BackupStage;
+import com.serverbackup.execution.StageExecutor;
+import com.serverbackup.folder.CopyEngine;
+import com.serverbackup.incremental.FileIndex;
+import com.serverbackup.incremental.FileIndexStore;
+import com.serverbackup.incremental.IncrementalRestore;
+import com.serverbackup.repository.BackupRepository;
+import com.serverbackup.repository.Snapshot;
+import com.serverbackup.util.BackupCancelledException;
 import com.serverbackup.util.BackupSessionManager;
+import com.serverbackup.util.CancellationSignal;
+import com.serverbackup.util.IoLimiter;
+import com.serverbackup.util.ProgressTracker;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.ChatColor;
 
 import java.io.*;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class BackupService {
     
+    /** Entry inside incremental archives naming the parent and deleted files */
+    public static final String INCREMENTAL_ENTRY = ".serverbackup/incremental.txt";
+    
     private final ServerBackupPlugin plugin;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
     private final BackupSessionManager sessionManager;
+    private BackupExecutors executors;
+    private StagingArea stagingArea;
+    private ManifestStore manifestStore;
+    private BackupCatalog catalog;
+    private BackupRepository repository;
+    private TierCatalog tierCatalog;
+    private IdleRecompressor idleRecompressor;
+    private IoLimiter ioLimiter;
+    private ScheduledExecutorService eventScheduler;
+    private final AdaptiveThrottle adaptiveThrottle;
+    private final WorldSaveScheduler worldSaver;
+    /** Held while deleting a ZIP backup or swapping in a recompressed copy */
+    private final Object archiveLock = new Object();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
     
     public BackupService(ServerBackupPlugin plugin) {
         this.plugin = plugin;
         this.sessionManager = new BackupSessionManager();
+        this.adaptiveThrottle = new AdaptiveThrottle(plugin, this);
+        this.worldSaver = new WorldSaveScheduler(plugin);
     }
     
     public void createBackup(org.bukkit.command.CommandSender sender) {
@@ -41,34 +90,50 @@ public class BackupService {
         
         // Prepare worlds on main thread
         plugin.getServer().getScheduler().runTask(plugin, () -> {
-            // Disable auto-save and save all worlds
+            // Pause auto-save, then save the worlds spread over the next ticks
+            boolean pauseAutoSave = shouldPauseAutoSave(plugin.getConfig().getBoolean("backup.compress", true));
+            List<String> worldNames = new ArrayList<>();
             for (World world : plugin.getServer().getWorlds()) {
-                world.setAutoSave(false);
-                world.save();
+                worldNames.add(world.getName());
             }
+            CompletableFuture<Void> saved = worldSaver.save(worldNames, pauseAutoSave);
+            Runnable resumeAutoSave = pauseAutoSave ? worldSaver.autoSaveResumer() : () -> { };
             
-            // Then do backup on async thread
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Then do backup on a write-stage thread, once the save has finished
+            getExecutors().execute(BackupStage.WRITE, () -> {
                 UUID sessionId = null;
+                AdaptiveThrottle.Recording ticks = beginTickRecording();
                 try {
                     String type = backupType.equalsIgnoreCase("full") ? "full" : "world";
                     sessionId = sessionManager.startSession(type);
+                    BackupSessionManager.BackupSession session = sessionManager.getSession(sessionId);
+                    session.attachIoLimiter(getIoLimiter());
+                    // Cancelling turns auto-save back on right away, not once the writer has stopped
+                    session.getCancellation().onCancel(resumeAutoSave);
                     
                     String startMsg = getMessage("backup-started").replace("{type}", type);
                     broadcast(startMsg, sender);
                     
+                    awaitWorldSave(saved);
+                    session.getCancellation().throwIfCancelled();
+                    
                     // Create backup
                 String timestamp = dateFormat.format(new Date());
-                String filename = "backup-" + timestamp + ".zip";
+                boolean compress = plugin.getConfig().getBoolean("backup.compress", true);
+                boolean useRepository = isRepositoryEnabled();
+                FileIndex parent = compress && !useRepository && plugin.getConfig().getBoolean("backup.incremental.enabled", false)
+                    ? resolveIncrementalParent(null) : null;
+                String filename = useRepository ? "backup-" + timestamp + BackupRepository.SNAPSHOT_EXTENSION
+                    : "backup-" + timestamp + (parent != null ? "-incremental" : "") + ".zip";
                 File backupDir = getBackupDirectory();
                 File backupFile = new File(backupDir, filename);
                 
-                boolean compress = plugin.getConfig().getBoolean("backup.compress", true);
-                
-                if (compress) {
-                    createZipBackup(backupFile, type);
+                if (useRepository) {
+                    createSnapshotBackup(filename, type, resumeAutoSave, session);
+                } else if (compress) {
+                    createZipBackup(backupFile, type, parent, resumeAutoSave, session);
                 } else {
-                    createFolderBackup(new File(backupDir, "backup-" + timestamp), type);
+                    createFolderBackup(new File(backupDir, "backup-" + timestamp), type, session);
                 }
                 
                 // Clean old backups
@@ -84,6 +149,12 @@ public class BackupService {
                         sessionManager.endSession(sessionId, true);
                     }
                     
+                } catch (BackupCancelledException e) {
+                    broadcast(getMessage("backup-cancelled").replace("{reason}", e.getMessage()), sender);
+                    plugin.getLogger().info("Backup cancelled: " + e.getMessage());
+                    if (sessionId != null) {
+                        sessionManager.endSession(sessionId, false, e.getMessage());
+                    }
                 } catch (Exception e) {
                     String message = getMessage("backup-failed").replace("{error}", e.getMessage());
                     broadcast(message, sender);
@@ -92,82 +163,856 @@ public class BackupService {
                     
                     // Mark session as failed
                     if (sessionId != null) {
-                        sessionManager.endSession(sessionId, false);
+                        sessionManager.endSession(sessionId, false, e.getMessage() != null ? e.getMessage() : e.toString());
                     }
                 } finally {
-                    // Re-enable auto-save on main thread
-                    plugin.getServer().getScheduler().runTask(plugin, () -> {
-                        for (World world : plugin.getServer().getWorlds()) {
-                            world.setAutoSave(true);
-                        }
-                    });
+                    logTickStatistics(ticks.finish());
+                    resumeAutoSave.run();
                 }
             });
         });
     }
     
-    private void createZipBackup(File backupFile, String backupType) throws IOException {
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(backupFile))) {
-            // Get worlds to backup
-            List<String> worldNames = plugin.getConfig().getStringList("backup.worlds");
-            if (worldNames.isEmpty()) {
-                for (World world : plugin.getServer().getWorlds()) {
-                    worldNames.add(world.getName());
-                }
+    WorldSaveScheduler getWorldSaver() {
+        return worldSaver;
+    }
+    
+    /**
+     * Whether a backup turns auto-save off while it reads the worlds. Not with
+     * optimistic capture, which copies the live files instead and only pauses
+     * single worlds whose files keep changing.
+     *
+     * @param compress Whether the backup is a zip (folder backups are never staged)
+     */
+    boolean shouldPauseAutoSave(boolean compress) {
+        return plugin.getConfig().getBoolean("performance.pause-auto-save", true)
+            && !(isOptimisticCapture() && (compress || isRepositoryEnabled()));
+    }
+    
+    private boolean isOptimisticCapture() {
+        return plugin.getConfig().getBoolean("backup.staging.enabled", false)
+            && plugin.getConfig().getBoolean("backup.staging.optimistic", false);
+    }
+    
+    /**
+     * Wait until the worlds have been saved, so the backup sees their current state
+     */
+    void awaitWorldSave(CompletableFuture<?> saved) throws IOException {
+        try {
+            saved.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the world save");
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("World save did not complete: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * Start measuring server tick times for a backup; while any recording is open
+     * the adaptive throttle slows backups down when the server lags
+     */
+    AdaptiveThrottle.Recording beginTickRecording() {
+        return adaptiveThrottle.begin();
+    }
+    
+    void logTickStatistics(com.serverbackup.api.TickStatistics statistics) {
+        if (statistics != null) {
+            plugin.getLogger().info("Server tick times during backup: " + statistics);
+        }
+    }
+    
+    private void createZipBackup(File backupFile, String backupType, FileIndex parent,
+                                 Runnable resumeAutoSave, BackupSessionManager.BackupSession session) throws IOException {
+        // Get worlds to backup
+        List<String> worldNames = plugin.getConfig().getStringList("backup.worlds");
+        if (worldNames.isEmpty()) {
+            for (World world : plugin.getServer().getWorlds()) {
+                worldNames.add(world.getName());
             }
-            
-            // Backup each world
-            for (String worldName : worldNames) {
-                File worldFolder = new File(plugin.getServer().getWorldContainer(), worldName);
-                if (worldFolder.exists() && worldFolder.isDirectory()) {
-                    addFolderToZip(worldFolder, worldFolder.getName(), zos);
-                }
+        }
+        
+        // Include plugins for full backup or if configured
+        boolean includePlugins = backupType.equalsIgnoreCase("full") || 
+                               plugin.getConfig().getBoolean("backup.include-plugins", false);
+        
+        BackupManifest.Builder manifest = BackupManifest.builder(backupFile.getName(), backupType,
+            BackupManifest.FORMAT_ZIP, System.currentTimeMillis());
+        try (StagingArea.Capture capture = captureSources(resolveSources(worldNames, includePlugins), resumeAutoSave,
+                session)) {
+            if (isTwoTierEnabled()) {
+                writeFastTierArchive(backupFile, capture.getSources(), parent, manifest, session);
+            } else {
+                writeZipArchive(backupFile, capture.getSources(), parent, resolveCodec(null), resolveCompressionLevel(null),
+                    manifest, session);
             }
-            
-            // Include plugins for full backup or if configured
-            boolean includePlugins = backupType.equalsIgnoreCase("full") || 
-                                   plugin.getConfig().getBoolean("backup.include-plugins", false);
-            if (includePlugins) {
-                File pluginsFolder = plugin.getDataFolder().getParentFile();
-                addFolderToZip(pluginsFolder, "plugins", zos);
+        }
+        saveManifest(manifest);
+    }
+    
+    private void createSnapshotBackup(String snapshotName, String backupType, Runnable resumeAutoSave,
+                                      BackupSessionManager.BackupSession session) throws IOException {
+        List<String> worldNames = plugin.getConfig().getStringList("backup.worlds");
+        if (worldNames.isEmpty()) {
+            for (World world : plugin.getServer().getWorlds()) {
+                worldNames.add(world.getName());
             }
         }
+        
+        boolean includePlugins = backupType.equalsIgnoreCase("full") || 
+                               plugin.getConfig().getBoolean("backup.include-plugins", false);
+        
+        BackupManifest.Builder manifest = BackupManifest.builder(snapshotName, backupType,
+            BackupManifest.FORMAT_SNAPSHOT, System.currentTimeMillis());
+        try (StagingArea.Capture capture = captureSources(resolveSources(worldNames, includePlugins), resumeAutoSave,
+                session)) {
+            writeSnapshot(snapshotName, backupType, worldNames, capture.getSources(), manifest, session);
+        }
+        saveManifest(manifest);
     }
     
-    private void addFolderToZip(File folder, String parentPath, ZipOutputStream zos) throws IOException {
-        File[] files = folder.listFiles();
-        if (files == null) return;
+    /**
+     * Folders a backup reads, by their name inside the backup: every existing
+     * world folder, plus "plugins" if included
+     */
+    private Map<String, File> resolveSources(Collection<String> worldNames, boolean includePlugins) {
+        Map<String, File> sources = new LinkedHashMap<>();
+        for (String worldName : worldNames) {
+            File worldFolder = new File(plugin.getServer().getWorldContainer(), worldName);
+            if (worldFolder.exists() && worldFolder.isDirectory()) {
+                sources.put(worldFolder.getName(), worldFolder);
+            }
+        }
+        if (includePlugins) {
+            sources.put("plugins", plugin.getDataFolder().getParentFile());
+        }
+        return sources;
+    }
+    
+    /**
+     * Phase one of a two-phase backup (backup.staging.enabled): clone the sources
+     * into the staging area and resume auto-save right away, so it stays off for
+     * the copy only instead of the whole archive. The archive is then written
+     * from the staged copy, which is deleted when the capture is closed.
+     * 
+     * @param resumeAutoSave Undoes this backup's auto-save pause
+     * @param session Session whose cancellation stops the copy, or null
+     * @return Staged copy, or the live folders if staging is off
+     */
+    private StagingArea.Capture captureSources(Map<String, File> sources, Runnable resumeAutoSave,
+                                               BackupSessionManager.BackupSession session) throws IOException {
+        if (!plugin.getConfig().getBoolean("backup.staging.enabled", false)) {
+            return StagingArea.live(sources);
+        }
+        enterPhase(session, BackupPhase.SCANNING);
+        long start = System.currentTimeMillis();
+        CopyEngine copier = newCopyEngine(null);
+        copier.setCancellation(cancellationOf(session));
+        StagingArea.ChangedFiles changed = null;
+        if (isOptimisticCapture()) {
+            copier.setVerifyCopies(1 + Math.max(0, plugin.getConfig().getInt("backup.staging.max-retries", 3)));
+            changed = (name, files) -> settleChangedFiles(name, files, copier);
+        }
+        StagingArea.Capture capture = getStagingArea().capture(sources, copier, changed);
+        resumeAutoSave.run();
+        plugin.getLogger().info("Captured " + copier.getCopiedFiles() + " files (" + formatFileSize(copier.getCopiedBytes())
+            + ") into staging in " + (System.currentTimeMillis() - start) + " ms"
+            + (copier.getRecopiedFiles() > 0 ? ", " + copier.getRecopiedFiles() + " copied again after changing" : ""));
+        return capture;
+    }
+    
+    /**
+     * Optimistic capture: copy files that kept changing again while their
+     * world's auto-save is paused, which is only as long as those files take
+     */
+    private void settleChangedFiles(String name, Map<Path, Path> files, CopyEngine copier) throws IOException {
+        CompletableFuture<Boolean> paused = worldSaver.pauseAutoSave(name);
+        awaitWorldSave(paused);
+        boolean isWorld = paused.join();
+        long start = System.currentTimeMillis();
+        Map<Path, Path> stillChanging;
+        try {
+            stillChanging = copier.recopy(files);
+        } finally {
+            if (isWorld) {
+                worldSaver.resumeAutoSave(name);
+            }
+        }
+        plugin.getLogger().info("Copied " + files.size() + " changing files of " + name + " again"
+            + (isWorld ? " with its auto-save paused for " + (System.currentTimeMillis() - start) + " ms" : ""));
+        for (Path file : stillChanging.keySet()) {
+            plugin.getLogger().warning("File kept changing while it was backed up, the copy may be inconsistent: " + file);
+        }
+    }
+    
+    private synchronized StagingArea getStagingArea() {
+        if (stagingArea == null) {
+            String configured = plugin.getConfig().getString("backup.staging.directory", "");
+            File directory = configured == null || configured.isEmpty()
+                ? new File(getBackupDirectory(), ".staging")
+                : new File(plugin.getServer().getWorldContainer(), configured);
+            stagingArea = new StagingArea(directory, plugin.getLogger());
+        }
+        return stagingArea;
+    }
+    
+    /**
+     * Delete staged copies left behind by backups that were interrupted
+     */
+    public void cleanStagingArea() {
+        getStagingArea().clean();
+    }
+    
+    /**
+     * Store worlds (and optionally the plugins folder) as a snapshot in the
+     * deduplicated repository
+     * 
+     * @param sources Folders to store, by their name inside the snapshot
+     * @param manifest Receives the stored folders and files
+     * @param session Session to report progress to, or null
+     */
+    private void writeSnapshot(String snapshotName, String backupType, Collection<String> worldNames,
+                               Map<String, File> sources, BackupManifest.Builder manifest,
+                               BackupSessionManager.BackupSession session) throws IOException {
+        enterPhase(session, BackupPhase.SCANNING);
+        ProgressTracker progress = trackProgress(sources, session);
+        enterPhase(session, BackupPhase.COMPRESSING);
+        Snapshot snapshot = getRepository().backup(snapshotName, backupType, new LinkedHashSet<>(worldNames), sources,
+            progress, cancellationOf(session));
+        addSources(manifest, sources.keySet());
+        manifest.setStoredSize(snapshot.getAddedSize());
+        for (Snapshot.FileEntry file : snapshot.getFiles()) {
+            manifest.addFile(file.getPath(), file.getSize(), 0);
+        }
+    }
+    
+    /**
+     * Progress tracker of a session with the expected size of the backup set:
+     * taken from the manifest of a recent backup of the same folders, or else
+     * counted by walking the folders (which only reads file sizes)
+     *
+     * @return Tracker, or null without a session
+     */
+    private ProgressTracker trackProgress(Map<String, File> sources, BackupSessionManager.BackupSession session) {
+        if (session == null) {
+            return null;
+        }
+        ProgressTracker progress = session.getProgress();
+        Set<String> worlds = new LinkedHashSet<>(sources.keySet());
+        boolean includesPlugins = worlds.remove("plugins");
+        List<File> backups = listBackups();
+        for (File backup : backups.subList(0, Math.min(backups.size(), 10))) {
+            BackupManifest header = getManifestStore().loadHeader(backup.getName());
+            if (header != null && header.getFileCount() > 0 && header.includesPlugins() == includesPlugins
+                    && header.getWorlds().equals(worlds)) {
+                progress.setEstimate(header.getFileCount(), header.getTotalSize());
+                return progress;
+            }
+        }
         
-        for (File file : files) {
-            if (file.isDirectory()) {
-                addFolderToZip(file, parentPath + "/" + file.getName(), zos);
-            } else {
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    ZipEntry zipEntry = new ZipEntry(parentPath + "/" + file.getName());
-                    zos.putNextEntry(zipEntry);
-                    
-                    byte[] buffer = new byte[8192];
-                    int length;
-                    while ((length = fis.read(buffer)) > 0) {
-                        zos.write(buffer, 0, length);
+        long[] totals = new long[2];
+        for (File source : sources.values()) {
+            try {
+                Files.walkFileTree(source.toPath(), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile()) {
+                            totals[0]++;
+                            totals[1] += attributes.size();
+                        }
+                        return FileVisitResult.CONTINUE;
                     }
                     
-                    zos.closeEntry();
-                } catch (IOException e) {
-                    // Skip locked files (e.g., session.lock, level.dat_old)
-                    if (e.getMessage() != null && e.getMessage().contains("locked")) {
-                        plugin.getLogger().warning("Skipping locked file: " + file.getName());
-                        continue;
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
                     }
-                    throw e;
+                });
+            } catch (IOException e) {
+                plugin.getLogger().fine("Could not estimate the size of " + source + ": " + e.getMessage());
+            }
+        }
+        progress.setEstimate(totals[0], totals[1]);
+        return progress;
+    }
+    
+    private void enterPhase(BackupSessionManager.BackupSession session, BackupPhase phase) {
+        if (session != null) {
+            session.setPhase(phase);
+        }
+    }
+    
+    private CancellationSignal cancellationOf(BackupSessionManager.BackupSession session) {
+        return session != null ? session.getCancellation() : null;
+    }
+    
+    /**
+     * Delete what a failed or cancelled backup wrote so far
+     */
+    private void discardPartialBackup(File backup) {
+        boolean deleted;
+        synchronized (archiveLock) {
+            deleted = !backup.exists() || (backup.isDirectory() ? deleteDirectory(backup) : backup.delete());
+        }
+        if (!deleted) {
+            plugin.getLogger().warning("Could not delete incomplete backup " + backup.getName());
+        }
+    }
+    
+    /**
+     * Record the top-level folders of a backup in its manifest: "plugins" or a world
+     */
+    private void addSources(BackupManifest.Builder manifest, Collection<String> names) {
+        for (String name : names) {
+            if (name.equals("plugins")) {
+                manifest.setIncludesPlugins(true);
+            } else {
+                manifest.addWorld(name);
+            }
+        }
+    }
+    
+    /**
+     * Save the manifest of a finished backup and add the backup to the catalog.
+     * A backup without a manifest still works, it is just described from its
+     * file name, so failing to write one is not fatal.
+     */
+    private void saveManifest(BackupManifest.Builder manifest) {
+        BackupManifest built = manifest.build();
+        try {
+            getManifestStore().save(built);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to write backup manifest: " + e.getMessage());
+        }
+        // Folder sizes are known from the manifest, so the catalog never has to walk new backups
+        File backup = getBackupFile(built.getBackupName());
+        if (built.getFormat().equals(BackupManifest.FORMAT_FOLDER)) {
+            getCatalog().add(backup, built.getTotalSize());
+        } else {
+            getCatalog().add(backup);
+        }
+        fireBackupsChanged();
+    }
+    
+    /**
+     * Manifests of all backups, with a cache of their headers
+     */
+    public synchronized ManifestStore getManifestStore() {
+        if (manifestStore == null) {
+            manifestStore = new ManifestStore(getBackupDirectory(), plugin.getLogger());
+        }
+        return manifestStore;
+    }
+    
+    /**
+     * Write worlds (and optionally the plugins folder) into a ZIP archive,
+     * compressing entries in parallel on the compression pool.
+     * 
+     * Every archive gets a file index. With a parent index only files that changed
+     * since the parent are stored, plus a small entry naming the parent and the
+     * files deleted since.
+     * 
+     * @param sources Folders to archive, by their name inside the archive
+     * @param level Codec level, -1 for the codec's default
+     * @param manifest Receives codec, parent and the file table of the index
+     * @param session Session to report progress to, or null
+     */
+    private void writeZipArchive(File backupFile, Map<String, File> sources, FileIndex parent,
+                                 CompressionCodec codec, int level, BackupManifest.Builder manifest,
+                                 BackupSessionManager.BackupSession session) throws IOException {
+        FileIndex.Builder index = FileIndex.builder(backupFile.getName(), parent);
+        enterPhase(session, BackupPhase.SCANNING);
+        ProgressTracker progress = trackProgress(sources, session);
+        enterPhase(session, BackupPhase.COMPRESSING);
+        try {
+            try (ParallelZipWriter writer = new ParallelZipWriter(backupFile, getCompressionExecutor(),
+                    getCompressionThreads(), codec, level, getIoLimiter(), plugin.getLogger())) {
+                writer.setIndex(index);
+                writer.setProgress(progress);
+                writer.setCancellation(cancellationOf(session));
+            
+                // Backup each world (and the plugins folder)
+                for (Map.Entry<String, File> source : sources.entrySet()) {
+                    writer.addFolder(source.getValue(), source.getKey());
+                }
+            
+                if (parent != null) {
+                    writer.addEntry(INCREMENTAL_ENTRY, describeIncrement(parent, index));
+                }
+            
+                writer.finish();
+            
+                if (parent != null) {
+                    plugin.getLogger().info("Incremental backup based on " + parent.getBackupName() + ": "
+                        + writer.getStoredFiles() + " changed (" + writer.getDeltaFiles() + " as chunk deltas), "
+                        + writer.getUnchangedFiles() + " unchanged files");
+                }
+            
+                plugin.getLogger().info("Compression by file type (" + codec.getName() + "):");
+                for (String line : writer.getCompressionReport().describe(8)) {
+                    plugin.getLogger().info("  " + line);
                 }
             }
+        } catch (IOException | RuntimeException e) {
+            // A ZIP without its central directory is unreadable, do not leave it behind as a backup
+            discardPartialBackup(backupFile);
+            throw e;
+        }
+        
+        FileIndex built = index.build();
+        getIndexStore().save(built);
+        
+        addSources(manifest, sources.keySet());
+        manifest.setCodec(codec.getName(), level)
+            .setParentName(parent != null ? parent.getBackupName() : null)
+            .setStoredSize(backupFile.length());
+        for (Map.Entry<String, FileIndex.FileState> file : built.getFiles().entrySet()) {
+            manifest.addFile(file.getKey(), file.getValue().getSize(), file.getValue().getHash());
         }
     }
     
-    private void createFolderBackup(File backupFolder, String backupType) throws IOException {
-        backupFolder.mkdirs();
+    /**
+     * Two-tier mode: write the archive with the fast codec to keep the backup
+     * (and the time auto-save is off) short, and queue it for recompression
+     * with the final codec once the server is idle
+     */
+    private void writeFastTierArchive(File backupFile, Map<String, File> sources, FileIndex parent,
+                                      BackupManifest.Builder manifest,
+                                      BackupSessionManager.BackupSession session) throws IOException {
+        String fast = plugin.getConfig().getString("backup.two-tier.fast-codec", "lz4");
+        CompressionCodec codec = CompressionCodecs.byName(fast);
+        int level = -1;
+        if (codec == null || !codec.isAvailable()) {
+            if (!fast.equalsIgnoreCase("store")) {
+                plugin.getLogger().warning("Fast codec '" + fast + "' is not available, storing uncompressed");
+            }
+            codec = CompressionCodecs.DEFLATE;
+            level = 0;
+        }
+        writeZipArchive(backupFile, sources, parent, codec, level, manifest, session);
+        getTierCatalog().setTier(backupFile.getName(), BackupTier.FAST);
+    }
+    
+    private boolean isTwoTierEnabled() {
+        return plugin.getConfig().getBoolean("backup.two-tier.enabled", false);
+    }
+    
+    /**
+     * Catalog of which ZIP backups still wait for recompression
+     */
+    synchronized TierCatalog getTierCatalog() {
+        if (tierCatalog == null) {
+            tierCatalog = new TierCatalog(getBackupDirectory(), plugin.getLogger());
+        }
+        return tierCatalog;
+    }
+    
+    /**
+     * Storage tier of a backup: FAST while it waits to be recompressed, FINAL otherwise
+     */
+    public BackupTier getBackupTier(String backupName) {
+        return getTierCatalog().getTier(backupName);
+    }
+    
+    Object getArchiveLock() {
+        return archiveLock;
+    }
+    
+    /**
+     * Start recompressing fast-tier backups whenever the server is idle, if
+     * two-tier backups are enabled. Called on the main thread when the plugin is enabled.
+     */
+    public synchronized void startIdleRecompression() {
+        if (idleRecompressor != null || !isTwoTierEnabled()) return;
+        idleRecompressor = new IdleRecompressor(plugin, this);
+        idleRecompressor.start();
+        int pending = getTierCatalog().getPending().size();
+        plugin.getLogger().info("Two-tier backups enabled" + (pending > 0 ? ", " + pending + " waiting for recompression" : ""));
+    }
+    
+    /**
+     * Pick the codec for a ZIP backup
+     * 
+     * @param requested Codec name from BackupOptions, or null to use backup.compression-codec
+     * @throws IllegalArgumentException if a requested codec is unknown or cannot run on this server
+     */
+    private CompressionCodec resolveCodec(String requested) {
+        if (requested != null) {
+            CompressionCodec codec = CompressionCodecs.byName(requested);
+            if (codec == null) {
+                throw new IllegalArgumentException("Unknown compression codec: " + requested
+                    + " (available: " + String.join(", ", CompressionCodecs.getNames()) + ")");
+            }
+            if (!codec.isAvailable()) {
+                throw new IllegalArgumentException("Compression codec " + codec.getName() + " is not supported on this server");
+            }
+            return codec;
+        }
+        
+        String configured = plugin.getConfig().getString("backup.compression-codec", "deflate");
+        CompressionCodec codec = CompressionCodecs.byName(configured);
+        if (codec == null) {
+            plugin.getLogger().warning("Unknown compression codec '" + configured + "', using deflate");
+            return CompressionCodecs.DEFLATE;
+        }
+        if (!codec.isAvailable()) {
+            plugin.getLogger().warning("Compression codec " + codec.getName() + " is not supported on this server, using deflate");
+            return CompressionCodecs.DEFLATE;
+        }
+        return codec;
+    }
+    
+    /**
+     * @param requested Level from BackupOptions, or null to use backup.compression-level
+     */
+    private int resolveCompressionLevel(Integer requested) {
+        return requested != null ? requested : plugin.getConfig().getInt("backup.compression-level", -1);
+    }
+    
+    /**
+     * Text entry stored in incremental archives: the parent and every deleted path
+     */
+    private byte[] describeIncrement(FileIndex parent, FileIndex.Builder index) {
+        StringBuilder text = new StringBuilder();
+        text.append("parent: ").append(parent.getBackupName()).append('\n');
+        for (String deleted : index.getDeletedPaths()) {
+            text.append("deleted: ").append(deleted).append('\n');
+        }
+        return text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Pick the parent for an incremental backup
+     * 
+     * @param requested Explicit parent backup name, or null for the newest indexed backup
+     * @return Parent index, or null if a full backup should be taken instead
+     */
+    private FileIndex resolveIncrementalParent(String requested) {
+        FileIndexStore store = getIndexStore();
+        if (requested != null) {
+            FileIndex parent = store.load(requested);
+            if (parent == null) {
+                throw new IllegalStateException("Parent backup has no file index: " + requested);
+            }
+            return parent;
+        }
         
+        FileIndex latest = store.findLatest(listBackups());
+        int fullEvery = plugin.getConfig().getInt("backup.incremental.full-every", 24);
+        if (latest != null && fullEvery > 0 && latest.getDepth() >= fullEvery) {
+            plugin.getLogger().info("Incremental chain reached " + fullEvery + " backups, taking a full backup");
+            return null;
+        }
+        return latest;
+    }
+    
+    /**
+     * Rebuild the complete content of a repository snapshot or an indexed ZIP
+     * backup (following its incremental chain and applying region chunk deltas)
+     * into a folder. Other ZIP backups are unpacked, whatever codec they were
+     * written with. Folder backups are copied, which also breaks the hardlinks
+     * they may share with other backups.
+     * 
+     * @param backupName Backup file name
+     * @return Folder the files were written to
+     */
+    public File extractBackup(String backupName) throws IOException {
+        File backupDir = getBackupDirectory();
+        String folderName = "restored-" + backupName.replaceFirst("(\\.zip|" + BackupRepository.SNAPSHOT_EXTENSION + ")$", "");
+        File target = new File(backupDir, folderName);
+        int files;
+        if (isSnapshot(backupName)) {
+            files = getRepository().restore(backupName, target);
+        } else if (new File(backupDir, backupName).isDirectory()) {
+            CopyEngine copier = newCopyEngine(null);
+            copier.copyTree(new File(backupDir, backupName).toPath(), target.toPath(), null);
+            files = copier.getCopiedFiles();
+            if (copier.getFailedFiles() > 0) {
+                throw new IOException(copier.getFailedFiles() + " files could not be copied, see the server log");
+            }
+        } else {
+            FileIndexStore store = getIndexStore();
+            if (store.exists(backupName)) {
+                try (IncrementalRestore restore = new IncrementalRestore(backupDir, store)) {
+                    restore.setIoLimiter(getIoLimiter());
+                    files = restore.restore(backupName, target);
+                }
+            } else {
+                // Plain archive: unpack it, decoding whatever codec its entries use
+                try (ZipArchiveInput zip = new ZipArchiveInput(new File(backupDir, backupName))) {
+                    zip.setIoLimiter(getIoLimiter());
+                    files = zip.extractTo(target);
+                }
+            }
+        }
+        plugin.getLogger().info("Extracted " + files + " files from " + backupName + " to " + folderName);
+        return target;
+    }
+    
+    /**
+     * Decompress every entry of a ZIP backup and check it against its CRC-32,
+     * using the codec each entry was written with
+     * 
+     * @param backupName Backup file name
+     * @return Number of entries checked
+     * @throws IOException naming the first damaged entry
+     */
+    public int verifyBackup(String backupName) throws IOException {
+        File backupFile = new File(getBackupDirectory(), backupName);
+        if (isSnapshot(backupName) || !backupFile.isFile()) {
+            throw new IOException("Only ZIP backups can be verified: " + backupName);
+        }
+        try (ZipArchiveInput zip = new ZipArchiveInput(backupFile)) {
+            zip.setIoLimiter(getIoLimiter());
+            int entries = zip.verify();
+            plugin.getLogger().info("Verified " + entries + " entries of " + backupName + " ("
+                + ParallelZipWriter.codecOf(zip.getComment()) + ")");
+            return entries;
+        }
+    }
+    
+    /**
+     * Codec a ZIP backup was written with
+     * 
+     * @return Codec name, or null if the backup is not a ZIP archive
+     */
+    public String getBackupCodec(String backupName) {
+        File backupFile = new File(getBackupDirectory(), backupName);
+        if (isSnapshot(backupName) || !backupFile.isFile()) {
+            return null;
+        }
+        BackupManifest manifest = getManifestStore().loadHeader(backupName);
+        if (manifest != null && manifest.getCodec() != null) {
+            return manifest.getCodec();
+        }
+        try {
+            return ParallelZipWriter.codecOf(ZipArchiveInput.readComment(backupFile));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private FileIndexStore getIndexStore() {
+        return new FileIndexStore(getBackupDirectory(), plugin.getLogger());
+    }
+    
+    private boolean isRepositoryEnabled() {
+        return plugin.getConfig().getBoolean("backup.repository.enabled", false);
+    }
+    
+    /**
+     * Get (or lazily open) the deduplicated snapshot repository
+     */
+    private synchronized BackupRepository getRepository() {
+        if (repository == null) {
+            long packSize = plugin.getConfig().getLong("backup.repository.pack-size-mb", 16) * 1024 * 1024;
+            repository = new BackupRepository(new File(getBackupDirectory(), "repository"),
+                getCompressionExecutor(), packSize, plugin.getLogger());
+            repository.setIoLimiter(getIoLimiter());
+        }
+        return repository;
+    }
+    
+    /**
+     * Check whether a backup name refers to a repository snapshot
+     */
+    public boolean isSnapshot(String backupName) {
+        return backupName.endsWith(BackupRepository.SNAPSHOT_EXTENSION);
+    }
+    
+    /**
+     * Metadata of a repository snapshot
+     * 
+     * @return Snapshot header (without file list) or null if missing
+     */
+    public Snapshot getSnapshotInfo(String backupName) {
+        return getRepository().loadSnapshotHeader(backupName);
+    }
+    
+    /**
+     * Resolve a backup name to its file: ZIPs and folders live in the backup
+     * directory, snapshots inside the repository
+     */
+    public File getBackupFile(String backupName) {
+        if (isSnapshot(backupName)) {
+            return getRepository().getSnapshotFile(backupName);
+        }
+        return new File(getBackupDirectory(), backupName);
+    }
+    
+    /**
+     * Size a backup takes up. For snapshots this is the new data it added to the repository.
+     * Folder sizes come from the catalog; only folders it has no current size
+     * for (added or changed outside the plugin) are walked, once.
+     * WARNING: May walk folder backups, call from an async thread.
+     */
+    public long getBackupSize(File backup) {
+        if (isSnapshot(backup.getName())) {
+            Snapshot snapshot = getSnapshotInfo(backup.getName());
+            return snapshot != null ? snapshot.getAddedSize() : 0;
+        }
+        if (!backup.isDirectory()) {
+            return backup.length();
+        }
+        long size = getCatalog().getSize(backup);
+        if (size == BackupCatalog.UNKNOWN_SIZE) {
+            size = getFolderSize(backup);
+            getCatalog().add(backup, size);
+        }
+        return size;
+    }
+    
+    /**
+     * Measure every folder backup again, e.g. after files inside one were
+     * changed by hand. WARNING: Walks all folder backups, call from an async thread.
+     *
+     * @return Number of folder backups measured
+     */
+    public int rescanFolderSizes() {
+        getCatalog().forgetFolderSizes();
+        int measured = 0;
+        for (File backup : listBackups()) {
+            if (backup.isDirectory()) {
+                getBackupSize(backup);
+                measured++;
+            }
+        }
+        return measured;
+    }
+    
+    private long getFolderSize(File folder) {
+        long size = 0;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    size += getFolderSize(file);
+                } else {
+                    size += file.length();
+                }
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Disk space used by the snapshot repository (packs and snapshot files)
+     */
+    public long getRepositorySize() {
+        return getRepository().getDiskUsage();
+    }
+    
+    private void pruneRepository() {
+        try {
+            getRepository().pruneIfNeeded();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to prune backup repository: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Check whether any of the retained backups still needs files stored in the given backup
+     */
+    public boolean isNeededByIncrementals(String backupName, Collection<String> retained) {
+        return getIndexStore().isReferenced(backupName, retained);
+    }
+    
+    /**
+     * Incremental backups that still need files stored in the given backup, newest first
+     */
+    public List<String> getDependentBackups(String backupName) {
+        List<String> others = new ArrayList<>();
+        for (File backup : listBackups()) {
+            others.add(backup.getName());
+        }
+        return getIndexStore().findReferencing(backupName, others);
+    }
+    
+    /**
+     * Get (or lazily create) the plugin's per-stage thread pools. The compress
+     * stage is sized from performance.async-threads (0 or less means one thread
+     * per core), the others from performance.executors.
+     */
+    public synchronized BackupExecutors getExecutors() {
+        if (executors == null) {
+            boolean virtual = plugin.getConfig().getBoolean("performance.executors.virtual-threads", true);
+            executors = new BackupExecutors(plugin.getLogger());
+            executors.configure(BackupStage.SCAN, plugin.getConfig().getInt("performance.executors.scan-threads", 4), virtual);
+            executors.configure(BackupStage.COMPRESS, getCompressionThreads(), false);
+            executors.configure(BackupStage.WRITE, plugin.getConfig().getInt("performance.executors.write-threads", 2), virtual);
+            executors.configure(BackupStage.UPLOAD, plugin.getConfig().getInt("performance.executors.upload-threads", 2), virtual);
+        }
+        return executors;
+    }
+    
+    /**
+     * Get (or lazily create) the daemon thread that times progress events for
+     * API subscribers and periodic refreshes. Its tasks only mark work due or
+     * hand it to a stage pool; the work itself is done elsewhere. Once the
+     * plugin is disabled it stays shut down and rejects new tasks.
+     */
+    public synchronized ScheduledExecutorService getEventScheduler() {
+        if (eventScheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "ServerBackup-ProgressEvents");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            eventScheduler = scheduler;
+        }
+        return eventScheduler;
+    }
+    
+    /**
+     * Pool used to compress archive entries and chunk repository files
+     */
+    StageExecutor getCompressionExecutor() {
+        return getExecutors().get(BackupStage.COMPRESS);
+    }
+    
+    /**
+     * Get (or lazily create) the bandwidth caps shared by all backup, restore
+     * and copy work, from performance.io-limit in the config
+     */
+    synchronized IoLimiter getIoLimiter() {
+        if (ioLimiter == null) {
+            long read = plugin.getConfig().getLong("performance.io-limit.read-mb-per-second", 0);
+            long write = plugin.getConfig().getLong("performance.io-limit.write-mb-per-second", 0);
+            // The adaptive throttle adjusts the rates at run time, so it needs an instance of its own
+            boolean adaptive = plugin.getConfig().getBoolean("performance.adaptive-throttle.enabled", true);
+            ioLimiter = read <= 0 && write <= 0 && !adaptive ? IoLimiter.UNLIMITED
+                : new IoLimiter(read * 1024 * 1024, write * 1024 * 1024);
+        }
+        return ioLimiter;
+    }
+    
+    int getCompressionThreads() {
+        int threads = plugin.getConfig().getInt("performance.async-threads", 2);
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Stop worker pools. Called when the plugin is disabled.
+     */
+    public synchronized void shutdown() {
+        worldSaver.cancel();
+        sessionManager.shutdown();
+        if (eventScheduler != null) {
+            eventScheduler.shutdownNow();
+        }
+        if (idleRecompressor != null) {
+            idleRecompressor.stop();
+            idleRecompressor = null;
+        }
+        if (executors != null) {
+            executors.shutdown();
+        }
+    }
+    
+    private void createFolderBackup(File backupFolder, String backupType,
+                                    BackupSessionManager.BackupSession session) throws IOException {
         List<String> worldNames = plugin.getConfig().getStringList("backup.worlds");
         if (worldNames.isEmpty()) {
             for (World world : plugin.getServer().getWorlds()) {
@@ -175,61 +1020,188 @@ public class BackupService {
             }
         }
         
-        for (String worldName : worldNames) {
-            File worldFolder = new File(plugin.getServer().getWorldContainer(), worldName);
-            if (worldFolder.exists() && worldFolder.isDirectory()) {
-                copyFolder(worldFolder.toPath(), new File(backupFolder, worldName).toPath());
-            }
-        }
-        
         // Include plugins for full backup
         boolean includePlugins = backupType.equalsIgnoreCase("full") || 
                                plugin.getConfig().getBoolean("backup.include-plugins", false);
-        if (includePlugins) {
-            File pluginsFolder = plugin.getDataFolder().getParentFile();
-            copyFolder(pluginsFolder.toPath(), new File(backupFolder, "plugins").toPath());
+        
+        BackupManifest.Builder manifest = BackupManifest.builder(backupFolder.getName(), backupType,
+            BackupManifest.FORMAT_FOLDER, System.currentTimeMillis());
+        writeFolderBackup(backupFolder, worldNames, includePlugins, session, manifest);
+        saveManifest(manifest);
+    }
+    
+    /**
+     * Copy worlds (and optionally the plugins folder) into an uncompressed
+     * backup folder. In hardlink snapshot mode, files unchanged since the
+     * previous folder backup are hardlinked to it instead of copied.
+     * 
+     * Files that cannot be copied are logged and recorded in the session (if any).
+     * 
+     * @param manifest Receives the copied folders and files
+     */
+    private void writeFolderBackup(File backupFolder, Collection<String> worldNames, boolean includePlugins,
+                                   BackupSessionManager.BackupSession session,
+                                   BackupManifest.Builder manifest) throws IOException {
+        File previous = plugin.getConfig().getBoolean("backup.hardlink-snapshots", false)
+            ? findPreviousFolderBackup(backupFolder) : null;
+        CopyEngine copier = newCopyEngine(session);
+        if (previous != null) {
+            copier.setLinkDest(previous.toPath());
+        }
+        backupFolder.mkdirs();
+        
+        Map<String, File> sources = resolveSources(worldNames, includePlugins);
+        enterPhase(session, BackupPhase.SCANNING);
+        copier.setProgress(trackProgress(sources, session));
+        enterPhase(session, BackupPhase.COMPRESSING);
+        copier.setCancellation(cancellationOf(session));
+        try {
+            for (Map.Entry<String, File> source : sources.entrySet()) {
+                copier.copy(source.getValue().toPath(), backupFolder.toPath(), source.getKey());
+            }
+        } catch (IOException | RuntimeException e) {
+            discardPartialBackup(backupFolder);
+            throw e;
+        }
+        
+        // Linked files take no new space, so only the copied bytes count as stored
+        addSources(manifest, sources.keySet());
+        manifest.setStoredSize(copier.getCopiedBytes());
+        Path root = backupFolder.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            manifest.addFile(root.relativize(file).toString().replace(File.separatorChar, '/'), Files.size(file), 0);
+        }
+        
+        if (previous != null) {
+            plugin.getLogger().info("Folder backup based on " + previous.getName() + ": "
+                + copier.getLinkedFiles() + " files linked, " + copier.getCopiedFiles() + " copied ("
+                + formatFileSize(copier.getCopiedBytes()) + ")");
+        }
+        if (copier.getFailedFiles() > 0) {
+            plugin.getLogger().warning(copier.getFailedFiles() + " files could not be copied into " + backupFolder.getName());
         }
     }
     
-    private void copyFolder(Path source, Path target) throws IOException {
-        Files.walk(source).forEach(sourcePath -> {
-            try {
-                Path targetPath = target.resolve(source.relativize(sourcePath));
-                if (Files.isDirectory(sourcePath)) {
-                    Files.createDirectories(targetPath);
-                } else {
-                    Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                plugin.getLogger().warning("Failed to copy: " + sourcePath);
+    private CopyEngine newCopyEngine(BackupSessionManager.BackupSession session) {
+        CopyEngine copier = new CopyEngine(getExecutors().get(BackupStage.SCAN), plugin.getLogger(), (path, e) -> {
+            plugin.getLogger().warning("Failed to copy: " + path + " (" + e.getMessage() + ")");
+            if (session != null) {
+                session.addFailure(path.toString(), String.valueOf(e.getMessage()));
             }
         });
+        copier.setIoLimiter(getIoLimiter());
+        return copier;
+    }
+    
+    /**
+     * Newest existing folder backup other than the one being written
+     */
+    private File findPreviousFolderBackup(File backupFolder) {
+        for (File backup : listBackups()) {
+            if (backup.isDirectory() && !backup.equals(backupFolder)) {
+                return backup;
+            }
+        }
+        return null;
     }
     
+    /**
+     * All backups (ZIPs, folders and snapshots), newest first. Served from the
+     * catalog; the returned list must not be modified.
+     */
     public List<File> listBackups() {
-        File backupDir = getBackupDirectory();
-        File[] files = backupDir.listFiles((dir, name) -> 
-            name.startsWith("backup-") && (name.endsWith(".zip") || new File(dir, name).isDirectory())
-        );
-        
-        if (files == null) return new ArrayList<>();
-        
-        List<File> backups = Arrays.asList(files);
-        backups.sort((f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
-        return backups;
+        return getCatalog().list();
+    }
+    
+    /**
+     * Catalog of all backups, loaded on first use
+     */
+    public synchronized BackupCatalog getCatalog() {
+        if (catalog == null) {
+            catalog = new BackupCatalog(getBackupDirectory(), getRepository().getSnapshotDirectory(),
+                BackupRepository.SNAPSHOT_EXTENSION, plugin.getLogger());
+        }
+        return catalog;
+    }
+    
+    /**
+     * Register an action to run whenever a backup was written, changed or
+     * deleted. Listeners run on the thread that made the change and must
+     * return quickly.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+    
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+    
+    void fireBackupsChanged() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Backup change listener failed: " + e.getMessage());
+            }
+        }
     }
     
+    /**
+     * Delete a backup unless incremental backups still need files stored in it
+     */
     public boolean deleteBackup(String backupName) {
+        return deleteBackup(backupName, false);
+    }
+    
+    /**
+     * Delete a backup
+     *
+     * @param force Delete it even if incremental backups still need files stored
+     *              in it; those can then no longer be restored
+     */
+    public boolean deleteBackup(String backupName, boolean force) {
+        if (!force && !isSnapshot(backupName)) {
+            List<String> dependents = getDependentBackups(backupName);
+            if (!dependents.isEmpty()) {
+                plugin.getLogger().warning("Not deleting " + backupName + ", incremental backups still need it: "
+                    + String.join(", ", dependents));
+                return false;
+            }
+        }
+        if (isSnapshot(backupName)) {
+            // Unused pack data is pruned in the background
+            boolean deleted = getRepository().deleteSnapshot(backupName);
+            if (deleted) {
+                getManifestStore().delete(backupName);
+                getCatalog().remove(backupName);
+                getExecutors().execute(BackupStage.WRITE, this::pruneRepository);
+                fireBackupsChanged();
+            }
+            return deleted;
+        }
+        
         File backupDir = getBackupDirectory();
         File backupFile = new File(backupDir, backupName);
         
         if (!backupFile.exists()) return false;
         
-        if (backupFile.isDirectory()) {
-            return deleteDirectory(backupFile);
-        } else {
-            return backupFile.delete();
+        boolean deleted;
+        synchronized (archiveLock) {
+            deleted = backupFile.isDirectory() ? deleteDirectory(backupFile) : backupFile.delete();
+        }
+        if (deleted) {
+            getIndexStore().delete(backupName);
+            getTierCatalog().remove(backupName);
+            getManifestStore().delete(backupName);
+            getCatalog().remove(backupName);
+            fireBackupsChanged();
         }
+        return deleted;
     }
     
     private boolean deleteDirectory(File directory) {
@@ -252,8 +1224,16 @@ public class BackupService {
         
         List<File> backups = listBackups();
         if (backups.size() > maxBackups) {
+            List<String> retained = new ArrayList<>();
+            for (int i = 0; i < maxBackups; i++) {
+                retained.add(backups.get(i).getName());
+            }
             for (int i = maxBackups; i < backups.size(); i++) {
                 File oldBackup = backups.get(i);
+                if (isNeededByIncrementals(oldBackup.getName(), retained)) {
+                    plugin.getLogger().info("Keeping old backup still used by incremental backups: " + oldBackup.getName());
+                    continue;
+                }
                 if (deleteBackup(oldBackup.getName())) {
                     plugin.getLogger().info("Deleted old backup: " + oldBackup.getName());
                 }
@@ -310,74 +1290,110 @@ public class BackupService {
      * @return Backup file or null if failed
      */
     public File createBackupSync(com.serverbackup.api.BackupOptions options) throws Exception {
+        return createBackupSync(options, () -> { }, null);
+    }
+    
+    /**
+     * Create backup synchronously (for API usage)
+     * This method should be called from async context!
+     * 
+     * @param options Backup options
+     * @param resumeAutoSave Undoes the caller's auto-save pause; run early in two-phase mode
+     * @param session Session to report progress and failures to, or null
+     * @return Backup file or null if failed
+     */
+    File createBackupSync(com.serverbackup.api.BackupOptions options, Runnable resumeAutoSave,
+                          BackupSessionManager.BackupSession session) throws Exception {
         String timestamp = dateFormat.format(new Date());
+        String type = options.getType().getName();
+        
+        if (isRepositoryEnabled()) {
+            String snapshotName = (options.getCustomName() != null ? options.getCustomName() : "backup-" + timestamp)
+                + BackupRepository.SNAPSHOT_EXTENSION;
+            createSnapshotWithOptions(snapshotName, options, resumeAutoSave, session);
+            return getBackupFile(snapshotName);
+        }
+        
+        FileIndex parent = options.isCompression() && options.isIncremental()
+            ? resolveIncrementalParent(options.getParentBackup()) : null;
         String filename = options.getCustomName() != null ? 
             options.getCustomName() + ".zip" : 
-            "backup-" + timestamp + ".zip";
+            "backup-" + timestamp + (parent != null ? "-incremental" : "") + ".zip";
             
         File backupDir = getBackupDirectory();
         File backupFile = new File(backupDir, filename);
         
-        String type = options.getType().getName();
-        
         if (options.isCompression()) {
-            createZipBackupWithOptions(backupFile, options);
+            createZipBackupWithOptions(backupFile, options, parent, resumeAutoSave, session);
         } else {
             String folderName = options.getCustomName() != null ? 
                 options.getCustomName() : 
                 "backup-" + timestamp;
-            createFolderBackupWithOptions(new File(backupDir, folderName), options);
+            createFolderBackupWithOptions(new File(backupDir, folderName), options, session);
         }
         
         return backupFile;
     }
     
-    private void createZipBackupWithOptions(File backupFile, com.serverbackup.api.BackupOptions options) throws IOException {
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(backupFile))) {
-            // Get worlds to backup
-            Set<String> worldNames = options.getWorldNames();
-            if (worldNames.isEmpty()) {
-                for (World world : plugin.getServer().getWorlds()) {
-                    worldNames.add(world.getName());
-                }
-            }
-            
-            // Backup each world
-            for (String worldName : worldNames) {
-                File worldFolder = new File(plugin.getServer().getWorldContainer(), worldName);
-                if (worldFolder.exists() && worldFolder.isDirectory()) {
-                    addFolderToZip(worldFolder, worldFolder.getName(), zos);
-                }
+    private void createZipBackupWithOptions(File backupFile, com.serverbackup.api.BackupOptions options,
+                                            FileIndex parent, Runnable resumeAutoSave,
+                                            BackupSessionManager.BackupSession session) throws IOException {
+        // Get worlds to backup (options set is immutable, so copy before filling in defaults)
+        Set<String> worldNames = new LinkedHashSet<>(options.getWorldNames());
+        if (worldNames.isEmpty()) {
+            for (World world : plugin.getServer().getWorlds()) {
+                worldNames.add(world.getName());
             }
-            
-            // Include plugins if requested
-            if (options.includePlugins()) {
-                File pluginsFolder = plugin.getDataFolder().getParentFile();
-                addFolderToZip(pluginsFolder, "plugins", zos);
+        }
+        
+        // Resolve the codec before capturing, so a bad request fails fast
+        CompressionCodec codec = resolveCodec(options.getCompressionCodec());
+        int level = resolveCompressionLevel(options.getCompressionLevel());
+        BackupManifest.Builder manifest = BackupManifest.builder(backupFile.getName(), options.getType().getName(),
+            BackupManifest.FORMAT_ZIP, System.currentTimeMillis()).addMetadata(options.getMetadata());
+        try (StagingArea.Capture capture = captureSources(resolveSources(worldNames, options.includePlugins()),
+                resumeAutoSave, session)) {
+            // An explicitly requested codec is final; otherwise follow the configured tiering
+            if (options.getCompressionCodec() == null && isTwoTierEnabled()) {
+                writeFastTierArchive(backupFile, capture.getSources(), parent, manifest, session);
+            } else {
+                writeZipArchive(backupFile, capture.getSources(), parent, codec, level, manifest, session);
             }
         }
+        saveManifest(manifest);
     }
     
-    private void createFolderBackupWithOptions(File backupFolder, com.serverbackup.api.BackupOptions options) throws IOException {
-        backupFolder.mkdirs();
-        
-        Set<String> worldNames = options.getWorldNames();
+    private void createSnapshotWithOptions(String snapshotName, com.serverbackup.api.BackupOptions options,
+                                           Runnable resumeAutoSave,
+                                           BackupSessionManager.BackupSession session) throws IOException {
+        Set<String> worldNames = new LinkedHashSet<>(options.getWorldNames());
         if (worldNames.isEmpty()) {
             for (World world : plugin.getServer().getWorlds()) {
                 worldNames.add(world.getName());
             }
         }
         
-        for (String worldName : worldNames) {
-            File worldFolder = new File(plugin.getServer().getWorldContainer(), worldName);
-            if (worldFolder.exists() && worldFolder.isDirectory()) {
-                copyFolder(worldFolder.toPath(), new File(backupFolder, worldName).toPath());
+        BackupManifest.Builder manifest = BackupManifest.builder(snapshotName, options.getType().getName(),
+            BackupManifest.FORMAT_SNAPSHOT, System.currentTimeMillis()).addMetadata(options.getMetadata());
+        try (StagingArea.Capture capture = captureSources(resolveSources(worldNames, options.includePlugins()),
+                resumeAutoSave, session)) {
+            writeSnapshot(snapshotName, options.getType().getName(), worldNames, capture.getSources(), manifest, session);
+        }
+        saveManifest(manifest);
+    }
+    
+    private void createFolderBackupWithOptions(File backupFolder, com.serverbackup.api.BackupOptions options,
+                                               BackupSessionManager.BackupSession session) throws IOException {
+        Set<String> worldNames = new LinkedHashSet<>(options.getWorldNames());
+        if (worldNames.isEmpty()) {
+            for (World world : plugin.getServer().getWorlds()) {
+                worldNames.add(world.getName());
             }
         }
         
-        if (options.includePlugins()) {
-            File pluginsFolder = plugin.getDataFolder().getParentFile();
-            copyFolder(pluginsFolder.toPath(), new File(backupFolder, "plugins").toPath());
-        }
+        BackupManifest.Builder manifest = BackupManifest.builder(backupFolder.getName(), options.getType().getName(),
+            BackupManifest.FORMAT_FOLDER, System.currentTimeMillis()).addMetadata(options.getMetadata());
+        writeFolderBackup(backupFolder, worldNames, options.includePlugins(), session, manifest);
+        saveManifest(manifest);
     }
 }
@@ -0,0 +1,188 @@
+package com.serverbackup.service;
+
+import com.serverbackup.ServerBackupPlugin;
+import com.serverbackup.archive.ArchiveRecompressor;
+import com.serverbackup.archive.codec.CompressionCodec;
+import com.serverbackup.archive.codec.CompressionCodecs;
+import com.serverbackup.catalog.BackupTier;
+import com.serverbackup.catalog.TierCatalog;
+import com.serverbackup.execution.BackupStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Second half of two-tier backups: recompresses fast-tier archives with the
+ * final codec while the server is idle
+ *
+ * A main-thread task checks every few seconds whether the server is idle (few
+ * enough players online, no backup running). Once it has been idle for the
+ * configured time the pending backups are recompressed one after another on a
+ * write-stage thread. The run stops as soon as the server is no longer idle; the
+ * half-written copy is discarded and the backup is retried at the next idle
+ * period. A finished copy is verified and then atomically renamed over the
+ * original, so readers only ever see the old or the new complete archive.
+ */
+class IdleRecompressor {
+    
+    /** Ticks between idle checks */
+    private static final long CHECK_INTERVAL_TICKS = 100L;
+    
+    private final ServerBackupPlugin plugin;
+    private final BackupService backupService;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean idle = false;
+    private volatile boolean stopped = false;
+    private long idleSince = -1;
+    private int taskId = -1;
+    
+    IdleRecompressor(ServerBackupPlugin plugin, BackupService backupService) {
+        this.plugin = plugin;
+        this.backupService = backupService;
+    }
+    
+    /**
+     * Start the idle check. Must be called on the main thread.
+     */
+    void start() {
+        stopped = false;
+        taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, this::checkIdle,
+            CHECK_INTERVAL_TICKS, CHECK_INTERVAL_TICKS);
+    }
+    
+    /**
+     * Stop the idle check and abandon a running recompression
+     */
+    void stop() {
+        stopped = true;
+        idle = false;
+        if (taskId != -1) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            taskId = -1;
+        }
+    }
+    
+    private void checkIdle() {
+        int maxPlayers = plugin.getConfig().getInt("backup.two-tier.idle-max-players", 0);
+        // Queued write jobs count too: a backup waiting for this job's thread must not wait for the whole run
+        idle = plugin.getServer().getOnlinePlayers().size() <= maxPlayers
+            && !backupService.getSessionManager().isBackupRunning()
+            && backupService.getExecutors().get(BackupStage.WRITE).getQueueDepth() == 0;
+        if (!idle) {
+            idleSince = -1;
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (idleSince < 0) {
+            idleSince = now;
+        }
+        long idleDelay = plugin.getConfig().getLong("backup.two-tier.idle-minutes", 5) * 60_000L;
+        if (now - idleSince < idleDelay || running.get()) {
+            return;
+        }
+        if (backupService.getTierCatalog().getPending().isEmpty()) {
+            return;
+        }
+        if (running.compareAndSet(false, true)) {
+            backupService.getExecutors().execute(BackupStage.WRITE, () -> {
+                try {
+                    recompressPending();
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+    
+    private boolean keepGoing() {
+        return idle && !stopped;
+    }
+    
+    private void recompressPending() {
+        String codecName = plugin.getConfig().getString("backup.two-tier.final-codec", "zstd");
+        CompressionCodec codec = CompressionCodecs.byName(codecName);
+        if (codec == null || !codec.isAvailable()) {
+            plugin.getLogger().warning("Final codec '" + codecName + "' is not available, using deflate");
+            codec = CompressionCodecs.DEFLATE;
+        }
+        int level = plugin.getConfig().getInt("backup.two-tier.final-level", -1);
+        ArchiveRecompressor recompressor = new ArchiveRecompressor(codec, level, this::keepGoing,
+            backupService.getIoLimiter());
+        TierCatalog catalog = backupService.getTierCatalog();
+        
+        List<String> pending = catalog.getPending();
+        for (String backupName : pending) {
+            if (!keepGoing()) {
+                plugin.getLogger().info("Server no longer idle, recompression paused");
+                return;
+            }
+            File archive = new File(backupService.getBackupDirectory(), backupName);
+            if (!archive.isFile()) {
+                catalog.remove(backupName);
+                continue;
+            }
+            File temp = new File(archive.getParentFile(), "." + backupName + ".recompress");
+            try {
+                long before = archive.length();
+                if (!recompressor.recompress(archive, temp)) {
+                    plugin.getLogger().info("Server no longer idle, recompression of " + backupName + " paused");
+                    return;
+                }
+                long after = temp.length();
+                boolean smaller = after < before;
+                swap(backupName, archive, temp, smaller);
+                if (smaller) {
+                    backupService.getManifestStore().updateArchive(backupName, codec.getName(), level, after);
+                    backupService.getCatalog().add(archive);
+                    backupService.fireBackupsChanged();
+                    plugin.getLogger().info("Recompressed " + backupName + " with " + codec.getName() + ": "
+                        + backupService.formatFileSize(before) + " -> " + backupService.formatFileSize(after));
+                } else {
+                    plugin.getLogger().info("Recompressing " + backupName + " did not make it smaller, kept as is");
+                }
+            } catch (IOException e) {
+                temp.delete();
+                plugin.getLogger().warning("Failed to recompress " + backupName + ": " + e.getMessage());
+                if (e instanceof java.util.zip.ZipException) {
+                    // Damaged source: retrying will not help
+                    setFinal(catalog, backupName);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Replace the archive with its recompressed copy, unless it was deleted meanwhile
+     *
+     * @param useCopy false keeps the original (recompression did not make it smaller)
+     */
+    private void swap(String backupName, File archive, File temp, boolean useCopy) throws IOException {
+        synchronized (backupService.getArchiveLock()) {
+            if (!archive.isFile()) {
+                temp.delete();
+                return;
+            }
+            if (useCopy) {
+                // Keep the date: backups are listed and rotated by modification time
+                temp.setLastModified(archive.lastModified());
+                Files.move(temp.toPath(), archive.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                temp.delete();
+            }
+            backupService.getTierCatalog().setTier(backupName, BackupTier.FINAL);
+        }
+    }
+    
+    private void setFinal(TierCatalog catalog, String backupName) {
+        try {
+            catalog.setTier(backupName, BackupTier.FINAL);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to update tier of " + backupName + ": " + e.getMessage());
+        }
+    }
+}
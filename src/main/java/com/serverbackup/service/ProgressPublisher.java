@@ -0,0 +1,225 @@
+package com.serverbackup.service;
+
+import com.serverbackup.api.BackupPhase;
+import com.serverbackup.api.BackupProgressEvent;
+import com.serverbackup.util.BackupSessionManager;
+import com.serverbackup.util.ProgressTracker;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the phase changes and progress of one backup as
+ * {@link BackupProgressEvent}s
+ *
+ * Every subscriber gets events only as far as it requested them. Phase
+ * changes are queued, which is at most one per phase. Progress is not queued
+ * at all: every interval a subscriber is marked due for an update, and the
+ * update is taken from the session's counters when it is delivered, so a
+ * subscriber that falls behind gets the latest progress once instead of every
+ * one it missed. The backup thread only adds phase changes to the queues;
+ * events are delivered on a virtual thread per subscriber, so a slow
+ * subscriber never holds up the backup or the other subscribers.
+ */
+class ProgressPublisher implements Flow.Publisher<BackupProgressEvent> {
+    
+    private static final ThreadFactory DELIVERY_THREADS = Thread.ofVirtual().name("ServerBackup-ProgressEvents-", 1).factory();
+    
+    private final BackupSessionManager.BackupSession session;
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMillis;
+    private final Logger logger;
+    
+    /**
+     * @param scheduler Marks subscribers due for a progress update
+     * @param intervalMillis Time between progress updates
+     */
+    ProgressPublisher(BackupSessionManager.BackupSession session, ScheduledExecutorService scheduler,
+                      long intervalMillis, Logger logger) {
+        this.session = session;
+        this.scheduler = scheduler;
+        this.intervalMillis = intervalMillis;
+        this.logger = logger;
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super BackupProgressEvent> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        new EventSubscription(subscriber).start();
+    }
+    
+    private BackupProgressEvent.Done done() {
+        boolean success = session.isSuccess();
+        return new BackupProgressEvent.Done(BackupAPIImpl.toProgress(session), success,
+            !success && session.getCancellation().isCancelled(), session.getError());
+    }
+    
+    private final class EventSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super BackupProgressEvent> subscriber;
+        private final Queue<BackupProgressEvent> phases = new ConcurrentLinkedQueue<>();
+        private final BiConsumer<BackupPhase, BackupPhase> listener = (previous, phase) -> phaseChanged(phase);
+        private final AtomicLong demand = new AtomicLong();
+        /** Signals not handled yet; whoever raises it from 0 delivers */
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean subscribed;
+        private volatile boolean cancelled;
+        private volatile boolean progressDue;
+        private volatile IllegalArgumentException invalidRequest;
+        
+        /** Last phase queued and the progress ticker; guarded by this */
+        private BackupPhase queuedPhase;
+        private ScheduledFuture<?> ticker;
+        
+        /** Progress last delivered; only used by the delivering thread */
+        private long deliveredFiles = -1;
+        private long deliveredBytes = -1;
+        
+        EventSubscription(Flow.Subscriber<? super BackupProgressEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        void start() {
+            synchronized (this) {
+                // Registered under the lock, so a phase change cannot be queued before the current phase
+                session.addPhaseListener(listener);
+                queuedPhase = session.getPhase();
+                phases.add(queuedPhase == BackupPhase.DONE ? done()
+                    : new BackupProgressEvent.PhaseChange(null, queuedPhase, BackupAPIImpl.toProgress(session)));
+            }
+            subscriber.onSubscribe(this);
+            subscribed = true;
+            synchronized (this) {
+                if (queuedPhase != BackupPhase.DONE && !cancelled) {
+                    try {
+                        ticker = scheduler.scheduleAtFixedRate(() -> {
+                            progressDue = true;
+                            signal();
+                        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        // Plugin is shutting down; phase changes are still delivered
+                    }
+                }
+            }
+            signal();
+        }
+        
+        private synchronized void phaseChanged(BackupPhase phase) {
+            if (phase == queuedPhase || queuedPhase == BackupPhase.DONE) {
+                return;
+            }
+            BackupPhase previous = queuedPhase;
+            queuedPhase = phase;
+            if (phase == BackupPhase.DONE) {
+                phases.add(done());
+                stopTicker();
+            } else {
+                phases.add(new BackupProgressEvent.PhaseChange(previous, phase, BackupAPIImpl.toProgress(session)));
+            }
+            signal();
+        }
+        
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " events, must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            detach();
+        }
+        
+        private void detach() {
+            session.removePhaseListener(listener);
+            synchronized (this) {
+                stopTicker();
+            }
+        }
+        
+        private void stopTicker() {
+            if (ticker != null) {
+                ticker.cancel(false);
+                ticker = null;
+            }
+        }
+        
+        private void signal() {
+            if (pending.getAndIncrement() == 0) {
+                DELIVERY_THREADS.newThread(this::drain).start();
+            }
+        }
+        
+        private void drain() {
+            int missed = 1;
+            do {
+                deliver();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+        
+        private void deliver() {
+            if (cancelled || !subscribed) {
+                return;
+            }
+            IllegalArgumentException invalid = invalidRequest;
+            if (invalid != null) {
+                cancel();
+                subscriber.onError(invalid);
+                return;
+            }
+            while (demand.get() > 0) {
+                BackupProgressEvent event = phases.poll();
+                if (event == null) {
+                    break;
+                }
+                if (!emit(event)) {
+                    return;
+                }
+                if (event instanceof BackupProgressEvent.Done) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+            if (progressDue && demand.get() > 0 && phases.isEmpty()) {
+                progressDue = false;
+                BackupPhase phase = session.getPhase();
+                ProgressTracker progress = session.getProgress();
+                if (phase != BackupPhase.DONE && (progress.getFilesDone() != deliveredFiles
+                        || progress.getBytesRead() != deliveredBytes)) {
+                    emit(new BackupProgressEvent.Update(phase, BackupAPIImpl.toProgress(session)));
+                }
+            }
+        }
+        
+        private boolean emit(BackupProgressEvent event) {
+            demand.decrementAndGet();
+            deliveredFiles = event.getProgress().getFilesDone();
+            deliveredBytes = event.getProgress().getBytesRead();
+            try {
+                subscriber.onNext(event);
+                return true;
+            } catch (Throwable e) {
+                cancel();
+                logger.warning("Progress event subscriber " + subscriber + " failed and was unsubscribed: " + e);
+                return false;
+            }
+        }
+    }
+}
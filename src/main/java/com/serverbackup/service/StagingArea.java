@@ -0,0 +1,161 @@
+package com.serverbackup.service;
+
+import com.serverbackup.folder.CopyEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Phase one of two-phase backups: a quick local copy of the folders being
+ * backed up, which the archive is then written from at leisure
+ *
+ * Every capture gets its own folder below the staging directory and is deleted
+ * once the archive is written. The copy clones files where the file system
+ * supports it (see {@link CopyEngine#setCloneFiles}), so on Btrfs, XFS or APFS
+ * capturing a large world takes seconds and hardly uses extra disk space.
+ *
+ * If the copier verifies its copies, files that kept changing while a folder
+ * was captured are handed to a {@link ChangedFiles} handler right after that
+ * folder, before the next one is captured.
+ */
+class StagingArea {
+    
+    private static final AtomicLong CAPTURE_COUNTER = new AtomicLong();
+    
+    private final File directory;
+    private final Logger logger;
+    
+    StagingArea(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+    
+    /**
+     * Deals with files that kept changing while a folder was captured
+     */
+    interface ChangedFiles {
+        /**
+         * @param name Name of the captured folder
+         * @param files Source and captured copy of each file
+         */
+        void settle(String name, Map<Path, Path> files) throws IOException;
+    }
+    
+    /**
+     * Copy the sources into a new capture folder
+     *
+     * @param sources Folders by their name inside the backup
+     * @param copier Copy engine to use; clone mode is switched on
+     * @param changed Handler for files that kept changing, or null if the copier does not verify
+     * @return Capture holding the copied folders under the same names
+     */
+    Capture capture(Map<String, File> sources, CopyEngine copier, ChangedFiles changed) throws IOException {
+        File captureDir = new File(directory, "capture-" + System.currentTimeMillis() + "-" + CAPTURE_COUNTER.incrementAndGet());
+        Files.createDirectories(captureDir.toPath());
+        Capture capture = new Capture(captureDir);
+        try {
+            copier.setCloneFiles(true);
+            for (Map.Entry<String, File> source : sources.entrySet()) {
+                copier.copy(source.getValue().toPath(), captureDir.toPath(), source.getKey());
+                capture.sources.put(source.getKey(), new File(captureDir, source.getKey()));
+                Map<Path, Path> changing = copier.takeChangedFiles();
+                if (changed != null && !changing.isEmpty()) {
+                    changed.settle(source.getKey(), changing);
+                }
+            }
+            return capture;
+        } catch (IOException | RuntimeException e) {
+            capture.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Delete captures left over from an interrupted backup
+     */
+    void clean() {
+        File[] leftovers = directory.listFiles();
+        if (leftovers == null) {
+            return;
+        }
+        for (File leftover : leftovers) {
+            try {
+                deleteTree(leftover.toPath());
+                logger.info("Removed leftover staging folder " + leftover.getName());
+            } catch (IOException e) {
+                logger.warning("Failed to remove staging folder " + leftover.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Sources read by a backup without staging: the live folders themselves
+     */
+    static Capture live(Map<String, File> sources) {
+        Capture capture = new Capture(null);
+        capture.sources.putAll(sources);
+        return capture;
+    }
+    
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    
+    /**
+     * One captured set of folders; closing it deletes the copy
+     */
+    static class Capture implements AutoCloseable {
+        private final File directory;
+        private final Map<String, File> sources = new LinkedHashMap<>();
+        
+        private Capture(File directory) {
+            this.directory = directory;
+        }
+        
+        /**
+         * Folders to back up, by their name inside the backup
+         */
+        Map<String, File> getSources() {
+            return Collections.unmodifiableMap(sources);
+        }
+        
+        boolean isStaged() {
+            return directory != null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (directory != null) {
+                deleteTree(directory.toPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.serverbackup.service;
+
+import com.serverbackup.ServerBackupPlugin;
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves worlds before a backup without freezing the main thread for all of
+ * them at once
+ *
+ * With performance.chunk-based-save enabled, worlds are saved one after
+ * another from a main-thread task. Each tick saves at least one world and
+ * starts further worlds only while the tick's time budget
+ * (performance.save-tick-budget-ms) is not used up. Bukkit can only save
+ * whole worlds, so one large world still takes a single save call; the
+ * budget only keeps several worlds from piling up in the same tick.
+ *
+ * With chunk-based-save disabled, all worlds are saved in one tick as before.
+ *
+ * A save can also pause autosave until the backup calls {@link #resumeAutoSave()},
+ * so the worlds do not change on disk while they are read. Pauses are counted,
+ * autosave comes back when the last overlapping backup is done. Single worlds
+ * can also be paused briefly (optimistic capture), counted separately.
+ */
+class WorldSaveScheduler {
+    
+    private final ServerBackupPlugin plugin;
+    /** Runs that have not finished yet */
+    private final Set<Run> running = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger autoSavePauses = new AtomicInteger();
+    private final Map<String, AtomicInteger> worldPauses = new ConcurrentHashMap<>();
+    
+    WorldSaveScheduler(ServerBackupPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Save the given worlds, starting on the next tick. Safe to call from any thread.
+     *
+     * @param worldNames Worlds to save
+     * @param pauseAutoSave Turn autosave off first; the caller must call {@link #resumeAutoSave()} afterwards
+     * @return Future completed on the main thread once every world has been saved
+     */
+    CompletableFuture<Void> save(Collection<String> worldNames, boolean pauseAutoSave) {
+        Run run = new Run(worldNames, pauseAutoSave, false);
+        running.add(run);
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            run.taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, run, 0L, 1L);
+        });
+        return run.future;
+    }
+    
+    /**
+     * Save the given worlds right away, for callers on the main thread that
+     * cannot wait for later ticks
+     *
+     * @param pauseAutoSave Turn autosave off first; the caller must call {@link #resumeAutoSave()} afterwards
+     */
+    void saveNow(Collection<String> worldNames, boolean pauseAutoSave) {
+        new Run(worldNames, pauseAutoSave, true).run();
+    }
+    
+    /**
+     * Undo the autosave pause of one save. Autosave is turned back on once no
+     * backup needs it off any more. Safe to call from any thread.
+     */
+    void resumeAutoSave() {
+        if (autoSavePauses.decrementAndGet() > 0 || !plugin.isEnabled()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (autoSavePauses.get() > 0) {
+                return;
+            }
+            for (World world : plugin.getServer().getWorlds()) {
+                if (!isWorldPaused(world.getName())) {
+                    world.setAutoSave(true);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Turn autosave of one world off, e.g. for the moment it takes to copy a
+     * few of its files again. Safe to call from any thread.
+     *
+     * @return Future completed on the main thread with true once paused, or false
+     *         if there is no such world; only after true must {@link #resumeAutoSave(String)} be called
+     */
+    CompletableFuture<Boolean> pauseAutoSave(String worldName) {
+        CompletableFuture<Boolean> paused = new CompletableFuture<>();
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            World world = plugin.getServer().getWorld(worldName);
+            if (world == null) {
+                paused.complete(false);
+                return;
+            }
+            worldPauses.computeIfAbsent(worldName, name -> new AtomicInteger()).incrementAndGet();
+            world.setAutoSave(false);
+            paused.complete(true);
+        });
+        return paused;
+    }
+    
+    /**
+     * Undo one {@link #pauseAutoSave(String)}. The world's autosave stays off
+     * while a backup still has all worlds paused. Safe to call from any thread.
+     */
+    void resumeAutoSave(String worldName) {
+        AtomicInteger pauses = worldPauses.get(worldName);
+        if (pauses == null || pauses.decrementAndGet() > 0 || !plugin.isEnabled()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (pauses.get() > 0 || autoSavePauses.get() > 0) {
+                return;
+            }
+            World world = plugin.getServer().getWorld(worldName);
+            if (world != null) {
+                world.setAutoSave(true);
+            }
+        });
+    }
+    
+    private boolean isWorldPaused(String worldName) {
+        AtomicInteger pauses = worldPauses.get(worldName);
+        return pauses != null && pauses.get() > 0;
+    }
+    
+    /**
+     * Action that undoes one autosave pause, however often it runs. Lets a
+     * backup resume autosave early and still call it again when it ends.
+     */
+    Runnable autoSaveResumer() {
+        AtomicBoolean resumed = new AtomicBoolean(false);
+        return () -> {
+            if (resumed.compareAndSet(false, true)) {
+                resumeAutoSave();
+            }
+        };
+    }
+    
+    /**
+     * Abandon all runs, failing their futures so nothing waits forever
+     */
+    void cancel() {
+        for (Run run : new ArrayList<>(running)) {
+            run.finish(new CancellationException("World save cancelled, plugin is shutting down"));
+        }
+    }
+    
+    private final class Run implements Runnable {
+        private final Deque<String> pending = new ArrayDeque<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final boolean immediate;
+        private volatile int taskId = -1;
+        private boolean autoSaveToPause;
+        
+        Run(Collection<String> worldNames, boolean pauseAutoSave, boolean immediate) {
+            pending.addAll(worldNames);
+            this.immediate = immediate;
+            if (pauseAutoSave) {
+                autoSavePauses.incrementAndGet();
+                autoSaveToPause = true;
+            }
+        }
+        
+        @Override
+        public void run() {
+            if (autoSaveToPause) {
+                autoSaveToPause = false;
+                for (World world : plugin.getServer().getWorlds()) {
+                    world.setAutoSave(false);
+                }
+            }
+            boolean spread = !immediate && plugin.getConfig().getBoolean("performance.chunk-based-save", true);
+            long budget = TimeUnit.MILLISECONDS.toNanos(plugin.getConfig().getLong("performance.save-tick-budget-ms", 20));
+            
+            long start = System.nanoTime();
+            while (!pending.isEmpty()) {
+                World world = plugin.getServer().getWorld(pending.poll());
+                if (world == null) {
+                    continue; // Unloaded meanwhile, nothing to save
+                }
+                try {
+                    world.save();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning("Failed to save world " + world.getName() + ": " + e.getMessage());
+                }
+                if (spread && System.nanoTime() - start >= budget) {
+                    break;
+                }
+            }
+            
+            if (pending.isEmpty()) {
+                finish(null);
+            }
+        }
+        
+        void finish(Throwable error) {
+            if (taskId != -1) {
+                plugin.getServer().getScheduler().cancelTask(taskId);
+            }
+            running.remove(this);
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.serverbackup.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by backup writers once their backup was cancelled (see {@link CancellationSignal})
+ */
+public class BackupCancelledException extends IOException {
+    
+    public BackupCancelledException(String reason) {
+        super(reason);
+    }
+}
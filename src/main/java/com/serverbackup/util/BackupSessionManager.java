@@ -1,15 +1,48 @@
 package com.serverbackup.util;
 
+import com.serverbackup.api.BackupPhase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Tracks active backup sessions to prevent conflicts and provide progress information
+ *
+ * Running sessions are counted, so checking whether a backup runs is a single
+ * read. Finished sessions move to a fixed-size ring buffer, where they stay
+ * available for status queries for {@link #RETENTION_MILLIS}. One daemon thread,
+ * started with the first finished session, drops them after that.
  */
 public class BackupSessionManager {
     
+    /** How long finished sessions stay available for status queries */
+    private static final long RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /** Finished sessions kept at most, however recent */
+    private static final int HISTORY_SIZE = 32;
+    private static final long EVICT_INTERVAL_SECONDS = 30;
+    
     private final Map<UUID, BackupSession> activeSessions = new ConcurrentHashMap<>();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    
+    /** Finished sessions, oldest at historyStart; guarded by itself */
+    private final BackupSession[] history = new BackupSession[HISTORY_SIZE];
+    private int historyStart;
+    private int historySize;
+    private ScheduledExecutorService evictor;
+    /** Set by {@link #shutdown()}; no evictor is started afterwards. Guarded by history. */
+    private boolean shutdown;
     
     /**
      * Start a new backup session
@@ -20,6 +53,7 @@ public class BackupSessionManager {
         UUID sessionId = UUID.randomUUID();
         BackupSession session = new BackupSession(sessionId, type, System.currentTimeMillis());
         activeSessions.put(sessionId, session);
+        activeCount.incrementAndGet();
         return sessionId;
     }
     
@@ -29,13 +63,22 @@ public class BackupSessionManager {
      * @param success Whether backup completed successfully
      */
     public void endSession(UUID sessionId, boolean success) {
-        BackupSession session = activeSessions.get(sessionId);
+        endSession(sessionId, success, null);
+    }
+    
+    /**
+     * End a backup session
+     * @param sessionId Session UUID
+     * @param success Whether backup completed successfully
+     * @param error Why it failed or was cancelled, or null
+     */
+    public void endSession(UUID sessionId, boolean success, String error) {
+        BackupSession session = activeSessions.remove(sessionId);
         if (session != null) {
-            session.setCompleted(true);
-            session.setSuccess(success);
-            session.setEndTime(System.currentTimeMillis());
+            session.finish(success, error, System.currentTimeMillis());
+            activeCount.decrementAndGet();
             // Keep session for 5 minutes for status queries
-            scheduleSessionCleanup(sessionId);
+            record(session);
         }
     }
     
@@ -44,8 +87,7 @@ public class BackupSessionManager {
      * @return true if a backup is in progress
      */
     public boolean isBackupRunning() {
-        return activeSessions.values().stream()
-            .anyMatch(session -> !session.isCompleted());
+        return activeCount.get() > 0;
     }
     
     /**
@@ -53,9 +95,19 @@ public class BackupSessionManager {
      * @return Number of active backups
      */
     public int getActiveSessionCount() {
-        return (int) activeSessions.values().stream()
-            .filter(session -> !session.isCompleted())
-            .count();
+        return activeCount.get();
+    }
+    
+    /**
+     * The backup currently running, if any
+     * @return Running session or null
+     */
+    public BackupSession getRunningSession() {
+        if (activeCount.get() == 0) {
+            return null;
+        }
+        Iterator<BackupSession> sessions = activeSessions.values().iterator();
+        return sessions.hasNext() ? sessions.next() : null;
     }
     
     /**
@@ -64,31 +116,117 @@ public class BackupSessionManager {
      * @return BackupSession or null if not found
      */
     public BackupSession getSession(UUID sessionId) {
-        return activeSessions.get(sessionId);
+        BackupSession session = activeSessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        synchronized (history) {
+            for (int i = 0; i < historySize; i++) {
+                BackupSession finished = history[(historyStart + i) % HISTORY_SIZE];
+                if (finished.getId().equals(sessionId)) {
+                    return finished.getEndTime() >= cutoff ? finished : null;
+                }
+            }
+        }
+        return null;
     }
     
-    private void scheduleSessionCleanup(UUID sessionId) {
-        // Remove session after 5 minutes
-        new Thread(() -> {
-            try {
-                Thread.sleep(300000); // 5 minutes
-                activeSessions.remove(sessionId);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    /**
+     * Sessions finished within the last five minutes, newest first
+     */
+    public List<BackupSession> getRecentSessions() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        List<BackupSession> recent = new ArrayList<>();
+        synchronized (history) {
+            for (int i = historySize - 1; i >= 0; i--) {
+                BackupSession finished = history[(historyStart + i) % HISTORY_SIZE];
+                if (finished.getEndTime() >= cutoff) {
+                    recent.add(finished);
+                }
             }
-        }).start();
+        }
+        return recent;
+    }
+    
+    /**
+     * Stop the evictor. Called when the plugin is disabled.
+     */
+    public void shutdown() {
+        synchronized (history) {
+            shutdown = true;
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+        }
+    }
+    
+    private void record(BackupSession session) {
+        synchronized (history) {
+            if (historySize == HISTORY_SIZE) {
+                // Full: overwrite the oldest
+                history[historyStart] = session;
+                historyStart = (historyStart + 1) % HISTORY_SIZE;
+            } else {
+                history[(historyStart + historySize) % HISTORY_SIZE] = session;
+                historySize++;
+            }
+            // A backup ending during or after onDisable must not start a thread that outlives the plugin
+            if (evictor == null && !shutdown) {
+                ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                    Thread thread = new Thread(runnable, "ServerBackup-SessionEvictor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.scheduleWithFixedDelay(this::evictExpired,
+                    EVICT_INTERVAL_SECONDS, EVICT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                evictor = executor;
+            }
+        }
+    }
+    
+    /**
+     * Drop finished sessions older than the retention time
+     */
+    private void evictExpired() {
+        long cutoff = System.currentTimeMillis() - RETENTION_MILLIS;
+        synchronized (history) {
+            // Sessions are recorded in the order they ended, so expired ones are at the start
+            while (historySize > 0 && history[historyStart].getEndTime() < cutoff) {
+                history[historyStart] = null;
+                historyStart = (historyStart + 1) % HISTORY_SIZE;
+                historySize--;
+            }
+        }
     }
     
     /**
      * Represents a backup session
      */
     public static class BackupSession {
+        /** Failures kept for status queries; further ones are only counted */
+        private static final int MAX_RECORDED_FAILURES = 100;
+        
         private final UUID id;
         private final String type;
         private final long startTime;
-        private long endTime;
-        private boolean completed;
-        private boolean success;
+        private volatile long endTime;
+        private volatile boolean completed;
+        private volatile boolean success;
+        private volatile String error;
+        /** Written under this, read without */
+        private volatile BackupPhase phase = BackupPhase.SAVING;
+        private final List<BiConsumer<BackupPhase, BackupPhase>> phaseListeners = new CopyOnWriteArrayList<>();
+        private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger failureCount = new AtomicInteger();
+        private final ProgressTracker progress = new ProgressTracker();
+        private final CancellationSignal cancellation = new CancellationSignal();
+        private volatile IoLimiter limiter;
+        /** Published by the volatile write of limiter */
+        private long readBaseline;
+        private long writeBaseline;
+        private long waitBaseline;
         
         public BackupSession(UUID id, String type, long startTime) {
             this.id = id;
@@ -109,8 +247,183 @@ public class BackupSessionManager {
         public void setCompleted(boolean completed) { this.completed = completed; }
         public void setSuccess(boolean success) { this.success = success; }
         
+        /**
+         * Why the backup failed or was cancelled, or null
+         */
+        public String getError() { return error; }
+        
+        /**
+         * Mark the session finished. Completed is written last, so a thread
+         * that sees it also sees the outcome and end time.
+         */
+        void finish(boolean success, String error, long endTime) {
+            this.success = success;
+            this.error = error;
+            this.endTime = endTime;
+            this.completed = true;
+            setPhase(BackupPhase.DONE);
+        }
+        
+        /**
+         * Step the backup is in; starts as {@link BackupPhase#SAVING}
+         */
+        public BackupPhase getPhase() { return phase; }
+        
+        /**
+         * Move the backup to another phase and tell the listeners. Nothing
+         * happens if it already is in that phase or is done.
+         */
+        public void setPhase(BackupPhase phase) {
+            BackupPhase previous;
+            synchronized (this) {
+                previous = this.phase;
+                if (previous == phase || previous == BackupPhase.DONE) {
+                    return;
+                }
+                this.phase = phase;
+            }
+            for (BiConsumer<BackupPhase, BackupPhase> listener : phaseListeners) {
+                listener.accept(previous, phase);
+            }
+        }
+        
+        /**
+         * Call a listener with the previous and the new phase on every phase
+         * change, on the thread running the backup. Listeners must return quickly.
+         */
+        public void addPhaseListener(BiConsumer<BackupPhase, BackupPhase> listener) {
+            phaseListeners.add(listener);
+        }
+        
+        public void removePhaseListener(BiConsumer<BackupPhase, BackupPhase> listener) {
+            phaseListeners.remove(listener);
+        }
+        
+        /**
+         * Record a file that could not be backed up. Safe to call from worker threads.
+         * 
+         * @param path File path
+         * @param reason Why it failed
+         */
+        public void addFailure(String path, String reason) {
+            if (failureCount.incrementAndGet() <= MAX_RECORDED_FAILURES) {
+                failures.add(path + ": " + reason);
+            }
+        }
+        
+        /**
+         * Number of files that could not be backed up
+         */
+        public int getFailureCount() { return failureCount.get(); }
+        
+        /**
+         * Recorded failures ("path: reason"), at most the first 100
+         */
+        public List<String> getFailures() { return new ArrayList<>(failures); }
+        
+        /**
+         * Files and bytes done so far, reported by the backup writers
+         */
+        public ProgressTracker getProgress() { return progress; }
+        
+        /**
+         * Cancellation flag the backup writers check
+         */
+        public CancellationSignal getCancellation() { return cancellation; }
+        
+        /**
+         * Ask the backup to stop. It stops at the next file or block and
+         * discards what it wrote so far.
+         *
+         * @param reason Why the backup is cancelled
+         * @return true if cancelled now, false if it already finished or was cancelled
+         */
+        public boolean cancel(String reason) {
+            return !completed && cancellation.cancel(reason);
+        }
+        
         public long getDuration() {
-            return completed ? (endTime - startTime) : (System.currentTimeMillis() - startTime);
+            long end = completed ? endTime : System.currentTimeMillis();
+            return end - startTime;
+        }
+        
+        /**
+         * Report I/O of this session from the given limiter. The limiter is shared,
+         * so its counters are taken relative to the moment it was attached.
+         */
+        public void attachIoLimiter(IoLimiter limiter) {
+            this.readBaseline = limiter.getReadBucket().getTotalBytes();
+            this.writeBaseline = limiter.getWriteBucket().getTotalBytes();
+            this.waitBaseline = limiter.getReadBucket().getWaitedMillis() + limiter.getWriteBucket().getWaitedMillis();
+            this.limiter = limiter;
+        }
+        
+        /**
+         * Bytes read from disk since the session started
+         */
+        public long getBytesRead() {
+            IoLimiter current = limiter;
+            return current == null ? 0 : current.getReadBucket().getTotalBytes() - readBaseline;
+        }
+        
+        /**
+         * Bytes written to disk since the session started
+         */
+        public long getBytesWritten() {
+            IoLimiter current = limiter;
+            return current == null ? 0 : current.getWriteBucket().getTotalBytes() - writeBaseline;
+        }
+        
+        /**
+         * Average read throughput in bytes per second
+         */
+        public long getReadBytesPerSecond() {
+            return perSecond(getBytesRead());
+        }
+        
+        /**
+         * Average write throughput in bytes per second
+         */
+        public long getWriteBytesPerSecond() {
+            return perSecond(getBytesWritten());
+        }
+        
+        /**
+         * Time spent waiting on the bandwidth caps, in milliseconds
+         */
+        public long getThrottledMillis() {
+            IoLimiter current = limiter;
+            return current == null ? 0
+                : current.getReadBucket().getWaitedMillis() + current.getWriteBucket().getWaitedMillis() - waitBaseline;
+        }
+        
+        /**
+         * Whether the bandwidth caps are slowing this backup down right now
+         */
+        public boolean isThrottled() {
+            IoLimiter current = limiter;
+            return !completed && current != null && current.isThrottling();
+        }
+        
+        /**
+         * Read cap in bytes per second, 0 if unlimited
+         */
+        public long getReadLimit() {
+            IoLimiter current = limiter;
+            return current == null ? 0 : current.getReadBucket().getRate();
+        }
+        
+        /**
+         * Write cap in bytes per second, 0 if unlimited
+         */
+        public long getWriteLimit() {
+            IoLimiter current = limiter;
+            return current == null ? 0 : current.getWriteBucket().getRate();
+        }
+        
+        private long perSecond(long bytes) {
+            long millis = getDuration();
+            return millis <= 0 ? 0 : bytes * 1000 / millis;
         }
     }
 }
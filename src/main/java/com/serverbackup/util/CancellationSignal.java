@@ -0,0 +1,76 @@
+package com.serverbackup.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cooperative cancellation of one backup
+ *
+ * Cancelling only sets a flag and runs the registered actions, such as
+ * turning autosave back on. The code writing the backup checks the flag
+ * between files and between blocks of large files and stops by throwing
+ * {@link BackupCancelledException}.
+ */
+public class CancellationSignal {
+    
+    private volatile String reason;
+    /** Actions to run on cancel; guarded by this */
+    private final List<Runnable> actions = new ArrayList<>();
+    
+    /**
+     * Request cancellation. Safe to call from any thread.
+     *
+     * @param reason Why the backup is cancelled, shown to players and API callers
+     * @return true if this call cancelled, false if it was cancelled before
+     */
+    public boolean cancel(String reason) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason != null ? reason : "Cancelled";
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        }
+        for (Runnable action : toRun) {
+            action.run();
+        }
+        return true;
+    }
+    
+    /**
+     * Run an action as soon as cancellation is requested, or right away if it
+     * already was. The action runs on the thread that cancels.
+     */
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (reason == null) {
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+    
+    public boolean isCancelled() {
+        return reason != null;
+    }
+    
+    /**
+     * Why the backup was cancelled, or null if it was not
+     */
+    public String getReason() {
+        return reason;
+    }
+    
+    /**
+     * Stop the current work if cancellation was requested
+     */
+    public void throwIfCancelled() throws BackupCancelledException {
+        String current = reason;
+        if (current != null) {
+            throw new BackupCancelledException(current);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.serverbackup.util;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Shared disk bandwidth caps for reading and writing backup data
+ *
+ * One instance is shared by every backup, restore and copy so that together they
+ * stay under the configured rates and leave the disk to the server's own chunk
+ * loading and saving. Code that does its own I/O calls {@link #acquireRead(long)}
+ * / {@link #acquireWrite(long)}; streams can be wrapped instead.
+ */
+public class IoLimiter {
+    
+    /** Limiter that never waits, for callers without one */
+    public static final IoLimiter UNLIMITED = new IoLimiter(0, 0);
+    
+    private final TokenBucket readBucket;
+    private final TokenBucket writeBucket;
+    
+    /**
+     * @param readBytesPerSecond Read cap, 0 for unlimited
+     * @param writeBytesPerSecond Write cap, 0 for unlimited
+     */
+    public IoLimiter(long readBytesPerSecond, long writeBytesPerSecond) {
+        this.readBucket = new TokenBucket(readBytesPerSecond);
+        this.writeBucket = new TokenBucket(writeBytesPerSecond);
+    }
+    
+    public TokenBucket getReadBucket() {
+        return readBucket;
+    }
+    
+    public TokenBucket getWriteBucket() {
+        return writeBucket;
+    }
+    
+    public void acquireRead(long bytes) throws IOException {
+        readBucket.acquire(bytes);
+    }
+    
+    public void acquireWrite(long bytes) throws IOException {
+        writeBucket.acquire(bytes);
+    }
+    
+    /**
+     * Whether either cap made a caller wait within the last second
+     */
+    public boolean isThrottling() {
+        return readBucket.isThrottling() || writeBucket.isThrottling();
+    }
+    
+    /**
+     * Wrap a stream so that reading from it is charged to the read cap
+     */
+    public InputStream throttle(InputStream in) {
+        if (this == UNLIMITED) return in;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) readBucket.acquire(1);
+                return b;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                readBucket.acquire(n);
+                return n;
+            }
+        };
+    }
+    
+    /**
+     * Wrap a stream so that writing to it is charged to the write cap
+     */
+    public OutputStream throttle(OutputStream out) {
+        if (this == UNLIMITED) return out;
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                writeBucket.acquire(1);
+                out.write(b);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeBucket.acquire(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+}
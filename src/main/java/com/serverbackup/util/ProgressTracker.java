@@ -0,0 +1,135 @@
+package com.serverbackup.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live progress of one backup
+ *
+ * The threads writing a backup report every finished file into
+ * {@link LongAdder}s, so reporting never contends however many workers there
+ * are; readers sum the counters up. The current throughput is measured between
+ * two reads at least a second apart, and the ETA derived from it. The expected
+ * total is only an estimate, set before writing starts (see {@link #setEstimate}).
+ */
+public class ProgressTracker {
+    
+    /** Shortest time between two throughput samples */
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+    
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final long startTime = System.currentTimeMillis();
+    private volatile long estimatedFiles = -1;
+    private volatile long estimatedBytes = -1;
+    
+    /** Last throughput sample; guarded by this */
+    private long sampleTime = startTime;
+    private long sampleBytes;
+    private long bytesPerSecond = -1;
+    
+    /**
+     * Set the expected size of the backup
+     *
+     * @param files Files expected
+     * @param bytes Bytes of source data expected
+     */
+    public void setEstimate(long files, long bytes) {
+        this.estimatedFiles = files;
+        this.estimatedBytes = bytes;
+    }
+    
+    /**
+     * Record a finished file. Safe to call from any thread.
+     *
+     * @param read Bytes of source data the file had
+     * @param written Bytes it added to the backup (0 if unchanged, linked or deduplicated)
+     */
+    public void fileDone(long read, long written) {
+        filesDone.increment();
+        bytesRead.add(read);
+        if (written > 0) {
+            bytesWritten.add(written);
+        }
+    }
+    
+    public long getFilesDone() {
+        return filesDone.sum();
+    }
+    
+    /**
+     * Bytes of source data processed so far, including unchanged files
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+    
+    /**
+     * Bytes added to the backup so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+    
+    /**
+     * Expected number of files, -1 if not estimated
+     */
+    public long getEstimatedFiles() {
+        return estimatedFiles;
+    }
+    
+    /**
+     * Expected bytes of source data, -1 if not estimated
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+    
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    /**
+     * Share of the expected bytes processed, 0-100, or -1 without an estimate
+     */
+    public double getPercent() {
+        long total = estimatedBytes;
+        if (total < 0) {
+            return -1;
+        }
+        if (total == 0) {
+            return 100;
+        }
+        return Math.min(100.0, getBytesRead() * 100.0 / total);
+    }
+    
+    /**
+     * Source bytes processed per second, measured since the previous sample,
+     * or the average so far until a second has passed
+     */
+    public synchronized long getBytesPerSecond() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - sampleTime;
+        if (elapsed >= SAMPLE_INTERVAL_MILLIS) {
+            long read = getBytesRead();
+            bytesPerSecond = (read - sampleBytes) * 1000 / elapsed;
+            sampleTime = now;
+            sampleBytes = read;
+        } else if (bytesPerSecond < 0) {
+            return elapsed <= 0 ? 0 : getBytesRead() * 1000 / elapsed;
+        }
+        return bytesPerSecond;
+    }
+    
+    /**
+     * Estimated milliseconds until the backup is done, or -1 if unknown
+     */
+    public long getEtaMillis() {
+        long total = estimatedBytes;
+        long rate = getBytesPerSecond();
+        if (total < 0 || rate <= 0) {
+            return -1;
+        }
+        return Math.max(0, total - getBytesRead()) * 1000 / rate;
+    }
+}
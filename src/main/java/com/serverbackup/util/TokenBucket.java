@@ -0,0 +1,109 @@
+package com.serverbackup.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Rate limiter handing out bytes per second to any number of threads
+ *
+ * Tokens refill continuously up to one second's worth, so short bursts pass
+ * at full speed. A caller that takes more than is available goes into debt and
+ * sleeps until the debt is paid off. The average rate holds however requests are
+ * sized, and one large read does not starve later callers.
+ */
+public class TokenBucket {
+    
+    /** A bucket that waited within this window counts as throttling */
+    private static final long THROTTLE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private volatile long rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong waitedNanos = new AtomicLong();
+    private volatile long lastWait = System.nanoTime() - 2 * THROTTLE_WINDOW_NANOS;
+    
+    /**
+     * @param bytesPerSecond Rate limit, 0 or less for unlimited
+     */
+    public TokenBucket(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+    
+    /**
+     * Change the rate; takes effect for the next request
+     *
+     * @param bytesPerSecond Rate limit, 0 or less for unlimited
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        this.rate = Math.max(0, bytesPerSecond);
+        this.tokens = Math.min(tokens, rate);
+    }
+    
+    public long getRate() {
+        return rate;
+    }
+    
+    public boolean isLimited() {
+        return rate > 0;
+    }
+    
+    /**
+     * Take tokens for the given number of bytes, sleeping if the bucket is in debt
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (bytes <= 0) return;
+        totalBytes.addAndGet(bytes);
+        if (rate <= 0) return;
+        
+        long waitNanos;
+        synchronized (this) {
+            long limit = rate;
+            if (limit <= 0) return;
+            long now = System.nanoTime();
+            tokens = Math.min(limit, tokens + (now - lastRefill) * (double) limit / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            tokens -= bytes;
+            if (tokens >= 0) return;
+            waitNanos = (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / limit);
+        }
+        
+        lastWait = System.nanoTime();
+        waitedNanos.addAndGet(waitNanos);
+        long deadline = System.nanoTime() + waitNanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+    
+    /**
+     * Bytes passed through this bucket since it was created
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+    
+    /**
+     * Total time callers were made to wait, in milliseconds
+     */
+    public long getWaitedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitedNanos.get());
+    }
+    
+    /**
+     * Whether a caller had to wait within the last second
+     */
+    public boolean isThrottling() {
+        return rate > 0 && System.nanoTime() - lastWait < THROTTLE_WINDOW_NANOS;
+    }
+}